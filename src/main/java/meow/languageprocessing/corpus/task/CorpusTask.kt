@@ -21,7 +21,10 @@ import greycat.Tasks.*
 import greycat.struct.Relation
 import meow.languageprocessing.corpus.CorpusConstants.*
 import meow.languageprocessing.corpus.actions.CorpusActions
+import meow.languageprocessing.ngram.task.NgramFeatureTask
 import meow.tokens.TokensConstants.*
+import meow.tokens.task.QueryTask
+import meow.tokens.task.RankingTask
 import meow.utils.UtilTask.checkNodesType
 import mylittleplugin.MyLittleActions.*
 
@@ -136,5 +139,42 @@ object CorpusTask {
                 )
     }
 
+    /**
+     * Phrase query restricted to the tokenized contents of a corpus, see QueryTask.phraseQuery
+     */
+    @JvmStatic
+    fun phraseQueryInCorpus(corpusName: String, tokenizer: String, preprocessor: String?, phrase: String): Task {
+        return newTask()
+                .then(CorpusActions.retrieveCorpusMainNode())
+                .traverse(CORPUS_RELATION, CORPUS_NAME, corpusName)
+                .traverse(CORPUS_TO_TOKENIZEDCONTENTS_RELATION)
+                .defineAsVar("corpusContents")
+                .pipe(QueryTask.phraseQuery(tokenizer, preprocessor, phrase, "corpusContents"))
+    }
+
+    /**
+     * BM25 top-k restricted to the tokenized contents of a corpus, see RankingTask.topKBm25
+     */
+    @JvmStatic
+    fun topKBm25InCorpus(corpusName: String, tokenizer: String, preprocessor: String?, query: String, k: Int): Task {
+        return newTask()
+                .then(CorpusActions.retrieveCorpusMainNode())
+                .traverse(CORPUS_RELATION, CORPUS_NAME, corpusName)
+                .traverse(CORPUS_TO_TOKENIZEDCONTENTS_RELATION)
+                .defineAsVar("corpusContents")
+                .pipe(RankingTask.topKBm25(tokenizer, preprocessor, query, k, "corpusContents"))
+    }
 
-}
\ No newline at end of file
+    /**
+     * Binary export of the hashed ngram features of the tokenized contents of a corpus, see NgramFeatureTask.exportFeatures
+     */
+    @JvmStatic
+    fun exportFeaturesOfCorpus(corpusName: String, maxOrder: Int, bits: Int, tfIdf: Boolean, path: String): Task {
+        return newTask()
+                .then(CorpusActions.retrieveCorpusMainNode())
+                .traverse(CORPUS_RELATION, CORPUS_NAME, corpusName)
+                .traverse(CORPUS_TO_TOKENIZEDCONTENTS_RELATION)
+                .defineAsVar("corpusContents")
+                .pipe(NgramFeatureTask.exportFeatures("corpusContents", maxOrder, bits, tfIdf, path))
+    }
+}
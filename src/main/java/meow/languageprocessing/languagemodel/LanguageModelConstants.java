@@ -20,4 +20,20 @@ public class LanguageModelConstants {
     public final static String NGRAM_CORPUS_NODE_TYPE = "NgramCorpusNode";
 
     public final static String NGRAM_CORPUS_NODE_CORPUS = "corpus";
+
+    /**
+     * Number of added tokenized contents from which learn updates their ngrams in parallel
+     */
+    public final static int NGRAM_CORPUS_PARALLEL_LEARN_THRESHOLD = 16;
+
+    /**
+     * Count-Min Sketch of the windows of the orders above the eager order of the ngrams, see NgramCorpusNode.configureSketch
+     */
+    public final static String NGRAM_CORPUS_SKETCH = "ngramSketch";
+    public final static String NGRAM_CORPUS_SKETCH_WIDTH = "sketchWidth";
+    public final static String NGRAM_CORPUS_SKETCH_DEPTH = "sketchDepth";
+    public final static String NGRAM_CORPUS_SKETCH_TOTAL = "sketchTotal";
+    public final static String NGRAM_CORPUS_SKETCH_FROM_ORDER = "sketchFromOrder";
+    public final static String NGRAM_CORPUS_SKETCH_TO_ORDER = "sketchToOrder";
+    public final static String NGRAM_CORPUS_SKETCHED_VERSIONS = "sketchedVersions";
 }
@@ -21,94 +21,45 @@ import greycat.base.BaseNode
 import greycat.chunk.TimeTreeChunk
 import greycat.struct.*
 import meow.languageprocessing.corpus.CorpusConstants.CORPUS_TO_TOKENIZEDCONTENTS_RELATION
-import meow.languageprocessing.languagemodel.LanguageModelConstants.NGRAM_CORPUS_NODE_CORPUS
+import meow.languageprocessing.languagemodel.LanguageModelConstants.*
 import meow.languageprocessing.ngram.NgramConstants.*
 import meow.languageprocessing.ngram.actions.NgramActions.*
+import meow.languageprocessing.ngram.task.NgramKeyIndex
+import meow.languageprocessing.ngram.task.NgramSentinels
+import meow.languageprocessing.ngram.task.NgramTask
 import meow.tokens.TokensConstants.II_TC
+import meow.tokens.TokensConstants.NODE_TYPE
+import meow.tokens.task.TokenizedContentVersions
+import meow.utils.CountMinSketch
 import meow.utils.GreyCatUtilitary.keyOfLongToLongArrayMap
+import meow.utils.PositionPostingList
 import mylittleplugin.MyLittleActions.traverseDedup
 
 
 class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) : BaseNode(p_world, p_time, p_id, p_graph) {
 
 
+    /**
+     * Occurrences in the corpus of each ngram (or skip-gram) id, summed over its inverted indexes at the time of the node
+     */
     fun count(ngramIds: LongArray, result: Callback<IntArray>) {
         val ngToII = getNgramToNgramInvertedIndex()
-        val resultArray: IntArray = IntArray(ngramIds.size, { 0 })
-
-        if (ngToII.size() != 0) {
-            newTask()
-                    .travelInWorld("${world()}")
-                    .travelInTime("${time()}")
-            loopPar("0", "${ngramIds.size - 1}",
-
-                    thenDo { ctx ->
-                        val i = ctx.variable("i") as Int
-                        ctx.setVariable("iter", i)
-                        val ngramId = ngramIds[i]
-                        val iingram = ngToII[ngramId]
-                        if (iingram.isNotEmpty()) {
-                            ctx.setVariable("iingrams", iingram.joinToString(prefix = "[", separator = ",", postfix = "]"))
-                            ctx.continueWith(ctx.wrap(true))
-                        } else {
-                            ctx.continueWith(ctx.wrap(false))
-                        }
-                    }.ifThen({ ctx -> ctx.result()[0] as Boolean },
-                            newTask()
-                                    .lookupAll("{{iingrams}}")
-                                    .map(
-                                            thenDo { ctx ->
-
-                                                val ngramII = ctx.resultAsNodes()[0]
-                                                val pos = ngramII.get("position") as IntArray
-                                                ctx.continueWith(ctx.wrap(pos.size))
-                                            }
-                                    )
-                                    .thenDo { ctx ->
-                                        val i = ctx.variable("iter")[0] as Int
-                                        resultArray[i] = ctx.result().asArray().map { pos -> pos as Int }.sum()
-                                        ctx.continueTask()
-                                    }
-                    )
-            ).execute(graph(),
-                    {
-                        taskresult ->
-                        result.on(resultArray)
-                    }
-            )
-            /**for (i in 0..doubleArray.size - 1) {
-
-            val ngramId = doubleArray[i]
-            val arrayOfTCContainingNgram = ngToII[ngramId]
-
-            if (arrayOfTCContainingNgram.isNotEmpty()) {
-            val counter = IntArray(arrayOfTCContainingNgram.size, { 0 })
-            newTask()
-            .lookupAll(arrayOfTCContainingNgram.joinToString(prefix = "[", separator = ",", postfix = "]"))
-            .forEach(
-            thenDo { ctx ->
-            val ngramII = ctx.resultAsNodes()[0]
-            val index = ctx.variable("i")[0] as Int
-            val pos = ngramII.get("position") as IntArray
-            counter[index] = pos.size
-            ctx.continueTask()
-            }
-            )
-            .execute(graph(), {
-            taskresult ->
-            resultArray[i] = counter.sum().toDouble()
-            waiter.count()
-            })
+        if (ngToII.size() == 0) throw RuntimeException("Trying to predic on a empty ngramCorpus")
+        val resultArray = IntArray(ngramIds.size)
+        val counter = graph().newCounter(ngramIds.size)
+        for (i in 0..ngramIds.size - 1) {
+            val iingrams = ngToII[ngramIds[i]]
+            if (iingrams.isEmpty()) {
+                counter.count()
             } else {
-            waiter.count()
+                graph().lookupAll(world(), time(), iingrams, Callback<Array<Node>> { invertedIndexes ->
+                    resultArray[i] = invertedIndexes.sumBy { PositionPostingList.count(it) }
+                    invertedIndexes.forEach(Node::free)
+                    counter.count()
+                })
             }
-            }
-            waiter.then { result.on(resultArray) }*/
-
-        } else {
-            throw RuntimeException("Trying to predic on a empty ngramCorpus")
         }
-
+        counter.then { result.on(resultArray) }
     }
 
     fun learn(done: Callback<Boolean>) {
@@ -143,6 +94,9 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                     .then(retrieveNgramMainNode())
                                     .traverse(NGRAM_INDEX)
                                     .setAsVar("ngram") // retrieve all Ngram
+                                    .then(retrieveNgramMainNode())
+                                    .traverse(NGRAM_SKIPGRAM_RELATION)
+                                    .addToVar("ngram") // and all skip-grams
                                     .inject(removedContents.toLongArray())// inject content to remove
                                     .map(//for each tokenize content
                                             newTask()
@@ -183,7 +137,7 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                                     result ->
                                                     val node = result as Node
                                                     val nodeId = node.id()
-                                                    if (ngToII.get(nodeId).isEmpty()) {
+                                                    if (ngToII.get(nodeId).isEmpty() && node.get(NODE_TYPE) != NODE_TYPE_SKIPGRAM) {
                                                         val order = node.get("order") as Int
                                                         ngramOrder.delete(order.toLong(), nodeId)
                                                     }
@@ -196,7 +150,9 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                     .lookupAll(addedContents.joinToString(prefix = "[", separator = ",", postfix = "]")) //retrieve all the new tc
                                     .setAsVar("tc")
 
-                                    .then(updateNgramTokenizedContentFromVar("tc")) //update their Ngram
+                                    .ifThenElse({ addedContents.size >= NGRAM_CORPUS_PARALLEL_LEARN_THRESHOLD },
+                                            newTask().then(updateNgramTokenizedContentFromVarPar("tc", Runtime.getRuntime().availableProcessors())),
+                                            newTask().then(updateNgramTokenizedContentFromVar("tc"))) //update their Ngram
 
                                     .readVar("tc")
                                     .forEach(// for each tc retrieve their magic numbers and add them to the map of magic number
@@ -218,6 +174,9 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                     .then(retrieveNgramMainNode()) // then retrieve all ngram
                                     .traverse(NGRAM_INDEX)
                                     .setAsVar("ngram")
+                                    .then(retrieveNgramMainNode())
+                                    .traverse(NGRAM_SKIPGRAM_RELATION)
+                                    .addToVar("ngram")
 
                                     .inject(addedContents.toLongArray())
                                     .map(// for each tc
@@ -254,7 +213,8 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                                     val node = result as Node
                                                     val nodeId = node.id()
                                                     val order = node.get("order") as Int
-                                                    if (!ngramOrder.contains(order.toLong(), nodeId))
+                                                    // the order to ngram map only holds contiguous ngrams, for the language model
+                                                    if (node.get(NODE_TYPE) != NODE_TYPE_SKIPGRAM && !ngramOrder.contains(order.toLong(), nodeId))
                                                         ngramOrder.put(order.toLong(), nodeId)
                                                 }
                                         ctx.continueTask()
@@ -266,6 +226,9 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                     .then(retrieveNgramMainNode())
                                     .traverse(NGRAM_INDEX)
                                     .setAsVar("ngram") //retrieve all ngram
+                                    .then(retrieveNgramMainNode())
+                                    .traverse(NGRAM_SKIPGRAM_RELATION)
+                                    .addToVar("ngram") // and all skip-grams
 
                                     .lookupAll(addedContents.joinToString(prefix = "[", separator = ",", postfix = "]")) //retrieve all tokenize content
                                     .declareVar("tcToUpdate")
@@ -371,19 +334,199 @@ class NgramCorpusNode(p_world: Long, p_time: Long, p_id: Long, p_graph: Graph) :
                                                     val node = result as Node
                                                     val nodeId = node.id()
                                                     val order = node.get("order") as Int
-                                                    if (!ngramOrder.contains(order.toLong(), nodeId))
+                                                    // the order to ngram map only holds contiguous ngrams, for the language model
+                                                    if (node.get(NODE_TYPE) != NODE_TYPE_SKIPGRAM && !ngramOrder.contains(order.toLong(), nodeId))
                                                         ngramOrder.put(order.toLong(), nodeId)
                                                 }
                                         ctx.continueTask()
                                     }
                     )
                     .execute(graph(), {
-                        this.graph().resolver().externalUnlock(this)
-                        done.on(true)
+                        learnSketch(tcCorpus, Callback<Boolean> {
+                            this.graph().resolver().externalUnlock(this)
+                            done.on(true)
+                        })
                     })
         })
     }
 
+    /**
+     * Count the ngrams of the orders above the eager order of the ngram main node, up to its maximum order,
+     * in a Count-Min Sketch instead of ngram nodes and NgramToII entries.
+     * The sketch is sized from the error bounds: an estimate is never below the true count and exceeds it
+     * by more than epsilon times the number of counted windows with a probability of at most delta.
+     * Clears the sketch, the next learn counts every tokenized content of the corpus again.
+     */
+    fun configureSketch(epsilon: Double, delta: Double) {
+        val width = CountMinSketch.width(epsilon)
+        val depth = CountMinSketch.depth(delta)
+        set(NGRAM_CORPUS_SKETCH_WIDTH, Type.INT, width)
+        set(NGRAM_CORPUS_SKETCH_DEPTH, Type.INT, depth)
+        set(NGRAM_CORPUS_SKETCH, Type.INT_ARRAY, IntArray(width * depth))
+        set(NGRAM_CORPUS_SKETCH_TOTAL, Type.LONG, 0L)
+        remove(NGRAM_CORPUS_SKETCHED_VERSIONS)
+    }
+
+    fun isSketched(order: Int): Boolean {
+        if (get(NGRAM_CORPUS_SKETCH) == null) return false
+        val fromOrder = get(NGRAM_CORPUS_SKETCH_FROM_ORDER) as Int? ?: return false
+        val toOrder = get(NGRAM_CORPUS_SKETCH_TO_ORDER) as Int? ?: return false
+        return order in fromOrder..toOrder
+    }
+
+    /**
+     * Approximate number of occurrences of the ngram made of the token ids, BOS and EOS included, in the corpus
+     */
+    fun estimate(tokenIds: LongArray): Int {
+        if (!isSketched(tokenIds.size)) throw RuntimeException("The order ${tokenIds.size} is not counted by the sketch")
+        return sketch().estimate(NgramKeyIndex.hash(tokenIds, 0, tokenIds.size))
+    }
+
+    /**
+     * Counts of the ngrams made of each token id sequence, the orders counted by the sketch being estimated,
+     * the stored ones looked up in the ngram index then counted like count(ngramIds),
+     * and the others counted on query over the contents of the corpus, see NgramTask.countFromTokens.
+     * error is called instead of result if a sequence can not be counted
+     */
+    fun count(tokenSequences: Array<LongArray>, result: Callback<IntArray>, error: Callback<Exception>) {
+        val counts = IntArray(tokenSequences.size)
+        val exact = mutableListOf<Int>()
+        for (i in 0..tokenSequences.size - 1) {
+            if (isSketched(tokenSequences[i].size)) counts[i] = estimate(tokenSequences[i]) else exact.add(i)
+        }
+        if (exact.isEmpty()) {
+            result.on(counts)
+            return
+        }
+        newTask()
+                .travelInWorld("${world()}")
+                .travelInTime("${time()}")
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    val eagerOrder = NgramTask.eagerOrder(ngramMain)
+                    if (exact.any { tokenSequences[it].size > eagerOrder && !NgramTask.countableFromTokens(ngramMain, tokenSequences[it]) })
+                        ctx.endTask(ctx.result(), RuntimeException("Ngrams with BOS or EOS above the eager order can only be counted with the ${NgramSentinels.CONTENT} sentinel strategy"))
+                    else
+                        ctx.continueTask()
+                }
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    val eagerOrder = NgramTask.eagerOrder(ngramMain)
+                    val stored = exact.filter { tokenSequences[it].size <= eagerOrder }
+                    val onQuery = exact.filter { tokenSequences[it].size > eagerOrder }
+                    val contents = keyOfLongToLongArrayMap(getTCToNgramInvertedIndex())
+                    val ngramIds = LongArray(stored.size, { Constants.NULL_LONG })
+                    val counter = graph().newCounter(stored.size + onQuery.size)
+                    for (k in 0..stored.size - 1) {
+                        val tokenIds = tokenSequences[stored[k]]
+                        NgramKeyIndex.lookup(ngramMain, tokenIds, 0, tokenIds.size, Callback<Node?> { ngram ->
+                            if (ngram != null) {
+                                ngramIds[k] = ngram.id()
+                                ngram.free()
+                            }
+                            counter.count()
+                        })
+                    }
+                    for (i in onQuery) {
+                        NgramTask.countFromTokens(ctx, ngramMain, tokenSequences[i], contents, Callback<Int> { count ->
+                            counts[i] = count
+                            counter.count()
+                        })
+                    }
+                    counter.then {
+                        if (stored.isEmpty()) {
+                            ctx.continueTask()
+                        } else {
+                            count(ngramIds, Callback<IntArray> { storedCounts ->
+                                for (k in 0..stored.size - 1) counts[stored[k]] = storedCounts[k]
+                                ctx.continueTask()
+                            })
+                        }
+                    }
+                }
+                .execute(graph(), { res ->
+                    if (res != null && res.exception() != null) error.on(res.exception())
+                    else result.on(counts)
+                })
+    }
+
+    /**
+     * Contents added to the corpus are counted incrementally, as conservative update can not remove occurrences
+     * a removed or modified content, or a change of the ngram orders, rebuilds the whole sketch
+     */
+    private fun learnSketch(tcCorpus: List<Long>, done: Callback<Boolean>) {
+        if (get(NGRAM_CORPUS_SKETCH) == null) {
+            done.on(true)
+            return
+        }
+        newTask()
+                .travelInWorld("${world()}")
+                .travelInTime("${time()}")
+                .pipe(NgramSentinels.resolve())
+                .defineAsVar("ngramMain")
+                .lookupAll(tcCorpus.joinToString(prefix = "[", separator = ",", postfix = "]"))
+                .thenDo { ctx ->
+                    val ngramMain = ctx.variable("ngramMain")[0] as Node
+                    val contents = ctx.resultAsNodes()
+                    val fromOrder = NgramTask.eagerOrder(ngramMain) + 1
+                    val toOrder = NgramTask.maximumOrder(ngramMain)
+
+                    var rebuild = get(NGRAM_CORPUS_SKETCH_FROM_ORDER) as Int? != fromOrder || get(NGRAM_CORPUS_SKETCH_TO_ORDER) as Int? != toOrder
+                    val inCorpus = tcCorpus.toHashSet()
+                    val sketched = getOrCreate(NGRAM_CORPUS_SKETCHED_VERSIONS, Type.LONG_TO_LONG_MAP) as LongLongMap
+                    sketched.each { tc, version -> if (!inCorpus.contains(tc)) rebuild = true }
+                    for (i in 0..contents.size() - 1) {
+                        val version = sketched.get(contents[i].id())
+                        if (version != Constants.NULL_LONG && version != TokenizedContentVersions.version(contents[i]).toLong()) rebuild = true
+                    }
+
+                    val sketch = sketch()
+                    val versions: LongLongMap
+                    if (rebuild) {
+                        sketch.clear()
+                        remove(NGRAM_CORPUS_SKETCHED_VERSIONS)
+                        versions = getOrCreate(NGRAM_CORPUS_SKETCHED_VERSIONS, Type.LONG_TO_LONG_MAP) as LongLongMap
+                    } else {
+                        versions = sketched
+                    }
+                    val toAdd = (0..contents.size() - 1).map { contents[it] }.filter { versions.get(it.id()) == Constants.NULL_LONG }
+                    val counter = ctx.graph().newCounter(toAdd.size)
+                    for (tokenizedContent in toAdd) {
+                        TokenizedContentVersions.materialize(tokenizedContent, Callback { tokens ->
+                            val windows = NgramSentinels.surround(tokens, ngramMain)
+                            for (start in 0..windows.ids.size - 1) {
+                                var hash = NgramKeyIndex.SEED
+                                for (order in 1..windows.maxOrderAt(start, toOrder)) {
+                                    hash = NgramKeyIndex.extend(hash, windows.ids[start + order - 1])
+                                    if (order >= fromOrder) sketch.add(hash)
+                                }
+                            }
+                            versions.put(tokenizedContent.id(), TokenizedContentVersions.version(tokenizedContent).toLong())
+                            counter.count()
+                        })
+                    }
+                    counter.then {
+                        // the counters were updated in place, writing the total marks the node to be saved with them
+                        set(NGRAM_CORPUS_SKETCH_TOTAL, Type.LONG, sketch.total)
+                        set(NGRAM_CORPUS_SKETCH_FROM_ORDER, Type.INT, fromOrder)
+                        set(NGRAM_CORPUS_SKETCH_TO_ORDER, Type.INT, toOrder)
+                        ctx.continueTask()
+                    }
+                }
+                .execute(graph(), { done.on(true) })
+    }
+
+    /**
+     * sketch over the counters of the node themselves, never copied: learn updates them in place holding the external lock of the node
+     */
+    private fun sketch(): CountMinSketch {
+        val counters = get(NGRAM_CORPUS_SKETCH) as IntArray
+        val sketch = CountMinSketch(get(NGRAM_CORPUS_SKETCH_WIDTH) as Int, get(NGRAM_CORPUS_SKETCH_DEPTH) as Int, counters)
+        sketch.total = get(NGRAM_CORPUS_SKETCH_TOTAL) as Long? ?: 0L
+        return sketch
+    }
+
     private fun getTCToNgramInvertedIndex(): LongLongArrayMap {
         return getOrCreate("tcToII", Type.LONG_TO_LONG_ARRAY_MAP) as LongLongArrayMap
     }
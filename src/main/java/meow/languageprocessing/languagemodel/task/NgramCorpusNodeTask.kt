@@ -52,6 +52,27 @@ object NgramCorpusNodeTask {
                 .traverse(CORPUS_PLUGIN, CORPUS_PLUGIN_INDEX, NGRAM_CORPUS_NODE_TYPE)
     }
 
+    /**
+     * Count the orders above the eager order of the ngrams of the corpus in a Count-Min Sketch, see NgramCorpusNode.configureSketch
+     */
+    fun configureNgramCorpusSketch(corpusName: String, epsilon: Double, delta: Double): Task {
+        return newTask()
+                .then(getOrCreateCorpus(corpusName))
+                .defineAsVar("corpus")
+                .traverse(CORPUS_PLUGIN, CORPUS_PLUGIN_INDEX, NGRAM_CORPUS_NODE_TYPE)
+                .then(ifEmptyThen(
+                        createNgramCorpus()
+                ))
+                .thenDo { ctx ->
+                    val node = ctx.resultAsNodes()[0] as NgramCorpusNode
+                    node.configureSketch(epsilon, delta)
+                    node.learn(Callback {
+                        ctx.continueTask()
+                    }
+                    )
+                }
+    }
+
     fun countNgramOccurenceInCorpus(ngramCorpusVar: String, nGramToCount: String): Task {
         //todo
         return newTask()
@@ -19,6 +19,19 @@ public class NgramConstants {
     public final static String NGRAM_NODE_NAME = "Ngram";
 
     public final static String NGRAM_INDEX = "ngramIndex";
+    /**
+     * hash of the token ids to ngram ids, see NgramKeyIndex
+     */
+    public final static String NGRAM_HASH_INDEX = "ngramHashIndex";
+    public final static String NGRAM_HASH_INDEXED = "hashIndexed";
+    /**
+     * token id to ngram id map of the ngram trie, see NgramTrie
+     */
+    public final static String NGRAM_CHILDREN = "children";
+    /**
+     * Attribute of the ngram main node, true once every ngram is linked in the trie, see NgramTrie.backfill
+     */
+    public final static String NGRAM_TRIE_LINKED = "trieLinked";
 
     public final static String GRAMS_TOKENS ="gram";
 
@@ -26,9 +39,42 @@ public class NgramConstants {
 
 
     public final static String NODE_TYPE_NGRAM_TOKENIZED_CONTENT = "ngramtc";
+    /**
+     * Attribute of the ngram main node, tokenized content id to ngram tokenized content id of every content processed
+     */
+    public final static String NGRAM_TOKENIZED_CONTENTS = "ngramTokenizedContents";
+    /**
+     * last timepoint of the tokenized content processed by its ngram tokenized content, later ones only are fetched on update
+     */
+    public final static String NGRAM_TC_WATERMARK = "processedUpTo";
+    /**
+     * prefix of the attributes of an ngram tokenized content holding, for segmented windows (LINE or SENTENCE strategies),
+     * the start position of every ngram of the relation of the same order, see NgramWindows.starts
+     */
+    public final static String NGRAM_STARTS = "starts";
     public final static String NODE_TYPE_NGRAM = "ngram";
 
     public final static int MAXIMUM_ORDER_OF_N = 10;
+    /**
+     * Attributes of the ngram main node, MAXIMUM_ORDER_OF_N by default: ngrams are stored up to NGRAM_EAGER_ORDER,
+     * higher orders up to NGRAM_MAXIMUM_ORDER are only counted on query, from the positions of their tokens
+     */
+    public final static String NGRAM_MAXIMUM_ORDER = "maximumOrder";
+    public final static String NGRAM_EAGER_ORDER = "eagerOrder";
+    /**
+     * Beyond this number of edits between two versions of the ngrams of an order,
+     * their relation is rebuilt and everything between the common prefix and suffix rewritten instead of diffed
+     */
+    public final static int NGRAM_MAXIMUM_EDIT_DISTANCE = 1000;
+
+    /**
+     * k-skip-n-grams, see SkipGrams: their nodes are reached from the ngram main node through NGRAM_SKIPGRAM_RELATION
+     * and NGRAM_SKIPGRAM_HASH_INDEX, and from an ngram tokenized content through a relation named by SkipGrams.relationName
+     */
+    public final static String NODE_TYPE_SKIPGRAM = "skipgram";
+    public final static String NGRAM_SKIP = "skip";
+    public final static String NGRAM_SKIPGRAM_RELATION = "skipGrams";
+    public final static String NGRAM_SKIPGRAM_HASH_INDEX = "skipGramHashIndex";
 
     public final static String NGRAM_INVERTED_INDEX_RELATION = "invertedIndex";
     public final static String INVERTED_NGRAM_INDEX_RELATION = "ngram";
@@ -36,4 +82,11 @@ public class NgramConstants {
     public final static boolean ADD_BOS_EOS_TO_NGRAM = true;
     public final static String BOS = "<~B.O.S~>";
     public final static String EOS = "<~E.O.S~>";
+    /**
+     * Attributes of the ngram main node: ids of the BOS and EOS tokens, resolved once, and what they surround, see NgramSentinels
+     */
+    public final static String NGRAM_BOS = "bos";
+    public final static String NGRAM_EOS = "eos";
+    public final static String NGRAM_SENTINEL_STRATEGY = "sentinelStrategy";
+    public final static String NGRAM_SENTINEL_BOUNDARIES = "sentinelBoundaries";
 }
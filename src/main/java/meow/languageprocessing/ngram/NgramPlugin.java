@@ -84,6 +84,52 @@ public class NgramPlugin implements Plugin {
                     }
                 });
 
+        graph.actionRegistry()
+                .declaration(NgramActionNames.UPDATE_NGRAM_TC_FROM_VAR_PAR)
+                .setParams(Type.STRING, Type.INT)
+                .setDescription("create or update for all time, in parallel over the given number of workers, the ngram version of tokenized content present in var")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return updateNgramTokenizedContentFromVarPar((String) params[0], (int) params[1]);
+                    }
+                });
+
+        graph.actionRegistry()
+                .declaration(NgramActionNames.CONFIGURE_NGRAM)
+                .setParams(Type.INT, Type.INT)
+                .setDescription("set the maximum order of the ngrams and the one up to which they are stored")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return configureNgram((int) params[0], (int) params[1]);
+                    }
+                });
+
+        graph.actionRegistry()
+                .declaration(NgramActionNames.COUNT_NGRAM)
+                .setParams(Type.STRING_ARRAY)
+                .setDescription("count the occurrences of the n gram corresponding to the gram given, without creating it")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        if (params[0] != null)
+                            return countNgram((String[]) params[0]);
+                        else return null;
+                    }
+                });
+
+        graph.actionRegistry()
+                .declaration(NgramActionNames.CONFIGURE_NGRAM_SENTINELS)
+                .setParams(Type.STRING)
+                .setDescription("set what the BOS and EOS tokens surround: the whole content, every line or every sentence")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return configureNgramSentinels((String) params[0]);
+                    }
+                });
+
 
     }
 
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.actions;
+
+import greycat.*;
+import greycat.internal.task.TaskHelper;
+import greycat.plugin.SchedulerAffinity;
+import greycat.struct.Buffer;
+import meow.languageprocessing.ngram.task.RelationTask;
+
+
+public class ActionUpdateNgramTokenizeContentFromVarPar implements Action {
+
+    private final String _var;
+    private final int _workers;
+
+    public ActionUpdateNgramTokenizeContentFromVarPar(final String p_var, final int p_workers) {
+        this._var = p_var;
+        this._workers = p_workers;
+    }
+
+    @Override
+    public void eval(TaskContext ctx) {
+        RelationTask.updateNgramTokenizeContentVarPar(_var, _workers)
+                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD,
+                        new Callback<TaskResult>() {
+                            public void on(TaskResult res) {
+                                Exception exceptionDuringTask = null;
+                                if (res != null) {
+                                    if (res.output() != null) {
+                                        ctx.append(res.output());
+                                    }
+                                    if (res.exception() != null) {
+                                        exceptionDuringTask = res.exception();
+                                    }
+                                }
+                                if (exceptionDuringTask != null) {
+                                    ctx.endTask(res, exceptionDuringTask);
+                                } else {
+                                    ctx.continueWith(res);
+                                }
+                            }
+                        });
+    }
+
+    @Override
+    public void serialize(Buffer builder) {
+        builder.writeString(NgramActionNames.UPDATE_NGRAM_TC_FROM_VAR_PAR);
+        builder.writeChar(Constants.TASK_PARAM_OPEN);
+        TaskHelper.serializeString(_var, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        builder.writeString(Integer.toString(_workers));
+        builder.writeChar(Constants.TASK_PARAM_CLOSE);
+    }
+
+}
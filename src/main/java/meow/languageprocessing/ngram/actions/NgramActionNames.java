@@ -21,4 +21,8 @@ public class NgramActionNames {
     public static String GET_OR_CREATE_NGRAM_FROM_STRING = "getOrCreateNgramFromString";
     public static String GET_OR_CREATE_NGRAM_FROM_VAR = "getOrCreateNgramFromVar";
     public static String UPDATE_NGRAM_TC_FROM_VAR = "updateNgramTCFromVar";
+    public static String UPDATE_NGRAM_TC_FROM_VAR_PAR = "updateNgramTCFromVarPar";
+    public static String CONFIGURE_NGRAM = "configureNgram";
+    public static String COUNT_NGRAM = "countNgram";
+    public static String CONFIGURE_NGRAM_SENTINELS = "configureNgramSentinels";
 }
\ No newline at end of file
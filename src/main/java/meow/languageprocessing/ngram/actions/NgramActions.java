@@ -39,5 +39,21 @@ public class NgramActions {
         return new ActionUpdateNgramTokenizeContentFromVar(var);
     }
 
+    public static Action updateNgramTokenizedContentFromVarPar(String var, int workers) {
+        return new ActionUpdateNgramTokenizeContentFromVarPar(var, workers);
+    }
+
+    public static Action configureNgram(int maximumOrder, int eagerOrder) {
+        return new ActionConfigureNgram(maximumOrder, eagerOrder);
+    }
+
+    public static Action countNgram(String... grams) {
+        return new ActionCountNgram(grams);
+    }
+
+    public static Action configureNgramSentinels(String strategy) {
+        return new ActionConfigureNgramSentinels(strategy);
+    }
+
 
 }
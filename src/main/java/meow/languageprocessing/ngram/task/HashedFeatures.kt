@@ -0,0 +1,152 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+/**
+ * Hashing trick over the ngrams of a token id sequence: every window of order 1 to maxOrder is hashed
+ * (NgramKeyIndex hash then the murmur3 finalizer) into one of 2^bits buckets, with a sign taken from another bit of the hash
+ * so that collisions cancel out in expectation. No ngram node is needed: each of the n * maxOrder windows of n tokens is hashed
+ * once, then the buckets are sorted to sum the windows falling in the same one, in O(n * maxOrder * log(n * maxOrder)).
+ */
+object HashedFeatures {
+
+    const val MAXIMUM_BITS = 30
+
+    /**
+     * Sparse vector, indexes sorted in increasing order and values without zeros
+     */
+    class SparseVector(val indexes: IntArray, val values: DoubleArray) {
+        fun size(): Int {
+            return indexes.size
+        }
+    }
+
+    @JvmStatic
+    fun termFrequencies(tokens: LongArray, maxOrder: Int, bits: Int): SparseVector {
+        return termFrequencies(tokens, IntArray(tokens.size, { tokens.size }), maxOrder, bits)
+    }
+
+    /**
+     * Only the windows ending before the segmentEnds of their start are hashed, see NgramSentinels.Sequence
+     */
+    @JvmStatic
+    fun termFrequencies(tokens: LongArray, segmentEnds: IntArray, maxOrder: Int, bits: Int): SparseVector {
+        if (maxOrder <= 0) throw IllegalArgumentException("The maximum order should be positive")
+        if (bits <= 0 || bits > MAXIMUM_BITS) throw IllegalArgumentException("The number of bits should be between 1 and $MAXIMUM_BITS")
+        val mask = (1 shl bits) - 1
+        var nbWindows = 0
+        for (start in 0..tokens.size - 1) nbWindows += Math.min(maxOrder, segmentEnds[start] - start)
+        // bucket shifted left with the sign in the lowest bit, sorted so that the windows of a bucket are contiguous
+        val signedBuckets = LongArray(nbWindows)
+        var w = 0
+        for (start in 0..tokens.size - 1) {
+            var hash = NgramKeyIndex.SEED
+            for (order in 1..Math.min(maxOrder, segmentEnds[start] - start)) {
+                hash = NgramKeyIndex.extend(hash, tokens[start + order - 1])
+                val mixed = mix(hash)
+                signedBuckets[w] = ((mixed.toInt() and mask).toLong() shl 1) or ((mixed ushr 63) and 1)
+                w++
+            }
+        }
+        java.util.Arrays.sort(signedBuckets)
+        val indexes = IntArray(nbWindows)
+        val values = DoubleArray(nbWindows)
+        var size = 0
+        var i = 0
+        while (i < nbWindows) {
+            val bucket = (signedBuckets[i] ushr 1).toInt()
+            var value = 0.0
+            while (i < nbWindows && (signedBuckets[i] ushr 1).toInt() == bucket) {
+                value += if (signedBuckets[i] and 1L == 0L) 1.0 else -1.0
+                i++
+            }
+            if (value != 0.0) {
+                indexes[size] = bucket
+                values[size] = value
+                size++
+            }
+        }
+        return SparseVector(indexes.copyOf(size), values.copyOf(size))
+    }
+
+    /**
+     * finalizer of murmur3, the NgramKeyIndex hashes not having low bits uniform enough on their own
+     */
+    private fun mix(key: Long): Long {
+        var k = key
+        k = k xor (k ushr 33)
+        k *= -0xae502812aa7333L
+        k = k xor (k ushr 33)
+        k *= -0x3b314601e57a13adL
+        k = k xor (k ushr 33)
+        return k
+    }
+
+    /**
+     * Number of vectors having a non zero value in each bucket, only the buckets met being kept
+     */
+    @JvmStatic
+    fun documentFrequencies(vectors: List<SparseVector>): Map<Int, Int> {
+        val frequencies = HashMap<Int, Int>()
+        for (vector in vectors) addDocument(frequencies, vector)
+        return frequencies
+    }
+
+    /**
+     * Count the vector in the document frequencies, for them to be gathered one vector after the other
+     */
+    @JvmStatic
+    fun addDocument(frequencies: MutableMap<Int, Int>, vector: SparseVector) {
+        for (index in vector.indexes) frequencies.put(index, (frequencies[index] ?: 0) + 1)
+    }
+
+    /**
+     * tf * (ln((1 + N) / (1 + df)) + 1), the smoothed idf never being zero
+     */
+    @JvmStatic
+    fun tfIdf(tf: SparseVector, documentFrequencies: Map<Int, Int>, nbDocuments: Int): SparseVector {
+        val values = DoubleArray(tf.size(), {
+            tf.values[it] * (Math.log((1.0 + nbDocuments) / (1.0 + (documentFrequencies[tf.indexes[it]] ?: 0))) + 1)
+        })
+        return SparseVector(tf.indexes, values)
+    }
+
+    /**
+     * Binary libsvm-like row: the id of the row (long), the number of entries (int), then the indexes (int) and the values (float)
+     */
+    @JvmStatic
+    fun writeRow(out: DataOutputStream, id: Long, vector: SparseVector) {
+        out.writeLong(id)
+        out.writeInt(vector.size())
+        for (index in vector.indexes) out.writeInt(index)
+        for (value in vector.values) out.writeFloat(value.toFloat())
+    }
+
+    /**
+     * Read back a row written by writeRow, the id is stored in the first cell of id
+     */
+    @JvmStatic
+    fun readRow(input: DataInputStream, id: LongArray): SparseVector {
+        id[0] = input.readLong()
+        val size = input.readInt()
+        val indexes = IntArray(size, { input.readInt() })
+        val values = DoubleArray(size, { input.readFloat().toDouble() })
+        return SparseVector(indexes, values)
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Callback
+import greycat.Node
+import greycat.Task
+import greycat.TaskContext
+import greycat.TaskResult
+import greycat.Tasks.newTask
+import meow.tokens.task.TokenizedContentVersions
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Hashed ngram features of tokenized contents, see HashedFeatures, read from their tokens without creating any ngram
+ */
+object NgramFeatureTask {
+
+    /**
+     * Replace the tokenized contents of the result by the term frequencies of their hashed ngrams of order 1 to maxOrder,
+     * the sentinels included if ADD_BOS_EOS_TO_NGRAM (see NgramSentinels), at the time of the context.
+     * The ngram main node should be initialized
+     */
+    @JvmStatic
+    fun hashedFeatures(maxOrder: Int, bits: Int): Task {
+        return newTask()
+                .defineAsVar("featureContents")
+                .pipe(NgramSentinels.resolve())
+                .defineAsVar("ngramMain")
+                .readVar("featureContents")
+                .thenDo { ctx ->
+                    val contents = ctx.resultAsNodes()
+                    val vectors = arrayOfNulls<HashedFeatures.SparseVector>(contents.size())
+                    eachVector(ctx, contents, ctx.variable("ngramMain")[0] as Node, maxOrder, bits,
+                            { i, vector -> vectors[i] = vector },
+                            { ctx.continueWith(ctx.wrap(vectors)) })
+                }
+    }
+
+    /**
+     * Write the hashed features of the tokenized contents in contentsVar to the file at path: the number of bits (int)
+     * and of rows (int), then one HashedFeatures.writeRow per content with its id as row id.
+     * Rows are written as soon as their content is read, no vector being kept: with tfIdf, a first pass over the contents
+     * gathers the document frequencies of the buckets, and the second one weights the frequencies by them.
+     * The result is the number of rows written.
+     */
+    @JvmStatic
+    fun exportFeatures(contentsVar: String, maxOrder: Int, bits: Int, tfIdf: Boolean, path: String): Task {
+        return newTask()
+                .pipe(NgramSentinels.resolve())
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    val contents = ctx.variable(contentsVar)
+                    if (tfIdf) {
+                        val frequencies = HashMap<Int, Int>()
+                        eachVector(ctx, contents, ngramMain, maxOrder, bits,
+                                { i, vector -> synchronized(frequencies) { HashedFeatures.addDocument(frequencies, vector) } },
+                                { writeFeatures(ctx, contents, ngramMain, maxOrder, bits, path, frequencies) })
+                    } else {
+                        writeFeatures(ctx, contents, ngramMain, maxOrder, bits, path, null)
+                    }
+                }
+    }
+
+    private fun writeFeatures(ctx: TaskContext, contents: TaskResult<*>, ngramMain: Node, maxOrder: Int, bits: Int, path: String,
+                              frequencies: Map<Int, Int>?) {
+        val out = try {
+            val stream = DataOutputStream(BufferedOutputStream(FileOutputStream(path)))
+            stream.writeInt(bits)
+            stream.writeInt(contents.size())
+            stream
+        } catch (e: IOException) {
+            ctx.endTask(ctx.result(), e)
+            return
+        }
+        val failure = arrayOfNulls<IOException>(1)
+        eachVector(ctx, contents, ngramMain, maxOrder, bits, { i, tf ->
+            val vector = if (frequencies != null) HashedFeatures.tfIdf(tf, frequencies, contents.size()) else tf
+            synchronized(out) {
+                try {
+                    if (failure[0] == null) HashedFeatures.writeRow(out, (contents[i] as Node).id(), vector)
+                } catch (e: IOException) {
+                    failure[0] = e
+                }
+            }
+        }, {
+            try {
+                out.close()
+            } catch (e: IOException) {
+                if (failure[0] == null) failure[0] = e
+            }
+            val error = failure[0]
+            if (error != null) ctx.endTask(ctx.result(), error) else ctx.continueWith(ctx.wrap(contents.size()))
+        })
+    }
+
+    /**
+     * Hash the ngrams of every tokenized content, each vector being handed to each with the index of its content
+     * as soon as the content is read, then call done
+     */
+    private fun eachVector(ctx: TaskContext, contents: TaskResult<*>, ngramMain: Node, maxOrder: Int, bits: Int,
+                           each: (Int, HashedFeatures.SparseVector) -> Unit, done: () -> Unit) {
+        val counter = ctx.graph().newCounter(contents.size())
+        for (i in 0..contents.size() - 1) {
+            TokenizedContentVersions.materialize(contents[i] as Node, Callback { tokens ->
+                val windows = NgramSentinels.surround(tokens, ngramMain)
+                each(i, HashedFeatures.termFrequencies(windows.ids, windows.segmentEnds, maxOrder, bits))
+                counter.count()
+            })
+        }
+        counter.then { done() }
+    }
+}
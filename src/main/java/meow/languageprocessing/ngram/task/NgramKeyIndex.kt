@@ -0,0 +1,101 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Callback
+import greycat.Node
+import greycat.Type
+import greycat.struct.LongLongArrayMap
+import greycat.struct.Relation
+import meow.languageprocessing.ngram.NgramConstants.*
+
+/**
+ * Index of the ngrams on the ngram main node, keyed by a 64-bit hash of their token ids.
+ * Colliding ngrams share the same key, the candidates being checked against their GRAMS_TOKENS relation.
+ * The hash of a sequence is built token by token (extend), so that all the orders starting at a position
+ * are hashed in a single pass.
+ */
+object NgramKeyIndex {
+
+    const val SEED = 0x2545F4914F6CDD1DL
+    private const val PRIME = 0x100000001B3L
+
+    @JvmStatic
+    fun extend(hash: Long, tokenId: Long): Long {
+        var mixed = tokenId * -0x61c8864680b583ebL
+        mixed = mixed xor (mixed ushr 29)
+        return (hash + mixed) * PRIME
+    }
+
+    @JvmStatic
+    fun hash(tokens: LongArray, offset: Int, length: Int): Long {
+        var hash = SEED
+        for (i in offset..offset + length - 1) hash = extend(hash, tokens[i])
+        return hash
+    }
+
+    /**
+     * Ngram main nodes created before this index only have NGRAM_INDEX
+     */
+    @JvmStatic
+    fun isHashIndexed(ngramMain: Node): Boolean {
+        return ngramMain.get(NGRAM_HASH_INDEXED) == true
+    }
+
+    @JvmStatic
+    fun index(ngramMain: Node, ngram: Node, hash: Long) {
+        val index = ngramMain.getOrCreate(NGRAM_HASH_INDEX, Type.LONG_TO_LONG_ARRAY_MAP) as LongLongArrayMap
+        index.put(hash, ngram.id())
+    }
+
+    /**
+     * Ngram ids sharing the hash, colliding ones included
+     */
+    @JvmStatic
+    fun candidates(ngramMain: Node, hash: Long): LongArray {
+        val index = ngramMain.get(NGRAM_HASH_INDEX) as LongLongArrayMap? ?: return LongArray(0)
+        return index.get(hash) ?: LongArray(0)
+    }
+
+    @JvmStatic
+    fun sameTokens(ngram: Node, tokens: LongArray, offset: Int, length: Int): Boolean {
+        val grams = ngram.get(GRAMS_TOKENS) as Relation? ?: return false
+        if (grams.size() != length) return false
+        for (i in 0..length - 1) {
+            if (grams.get(i) != tokens[offset + i]) return false
+        }
+        return true
+    }
+
+    /**
+     * Ngram made of tokens[offset, offset + length), null if it does not exist yet
+     */
+    @JvmStatic
+    fun lookup(ngramMain: Node, tokens: LongArray, offset: Int, length: Int, done: Callback<Node?>) {
+        val candidates = candidates(ngramMain, hash(tokens, offset, length))
+        if (candidates.isEmpty()) {
+            done.on(null)
+            return
+        }
+        ngramMain.graph().lookupAll(ngramMain.world(), ngramMain.time(), candidates, Callback<Array<Node>> { ngrams ->
+            var found: Node? = null
+            for (ngram in ngrams) {
+                if (found == null && sameTokens(ngram, tokens, offset, length)) found = ngram else ngram.free()
+            }
+            done.on(found)
+        })
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Constants
+import greycat.TaskContext
+import java.util.Arrays
+
+/**
+ * Ngram ids resolved during one task, keyed by their token ids, hashed with NgramKeyIndex.
+ * Creating an ngram recursively resolves its history and its backoff, so within a content (or a batch of contents)
+ * the same lower orders are looked up again and again; the memo answers them without probing the index.
+ * As the key holds the token ids themselves, a hit is exact and is not checked against the ngram again.
+ * Ngrams are never removed, so a memoized id stays valid for the whole task.
+ * Only the capacity most recently used keys are kept, so that a bulk learn or a pipeline run does not hold
+ * every ngram it ever resolved until its task ends; the lower orders a batch keeps meeting stay in.
+ * The memo is shared by the branches of the parallel ngram update, hence synchronized.
+ */
+class NgramMemo(val capacity: Int) {
+
+    private class Key(val tokens: LongArray, val hash: Long) {
+
+        override fun equals(other: Any?): Boolean {
+            return other is Key && other.hash == hash && Arrays.equals(other.tokens, tokens)
+        }
+
+        override fun hashCode(): Int {
+            return (hash xor (hash ushr 32)).toInt()
+        }
+    }
+
+    private val ids = object : LinkedHashMap<Key, Long>(Math.min(capacity, 1024), 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Long>?): Boolean {
+            return size > capacity
+        }
+    }
+    private var probes = 0
+
+    constructor() : this(MAX_KEYS)
+
+    fun get(tokens: LongArray, hash: Long): Long {
+        return synchronized(ids) { ids[Key(tokens, hash)] } ?: Constants.NULL_LONG
+    }
+
+    fun put(tokens: LongArray, hash: Long, ngramId: Long) {
+        synchronized(ids) { ids.put(Key(tokens, hash), ngramId) }
+    }
+
+    fun size(): Int {
+        return synchronized(ids) { ids.size }
+    }
+
+    /**
+     * count a lookup the memo could not answer, done in the index
+     */
+    fun probed() {
+        synchronized(ids) { probes++ }
+    }
+
+    /**
+     * number of index lookups made on misses since the memo was declared
+     */
+    fun probes(): Int {
+        return synchronized(ids) { probes }
+    }
+
+    companion object {
+
+        const val MEMO_VAR = "ngramMemo"
+        const val MAX_KEYS = 65536
+
+        /**
+         * Memo visible from the context, null if no enclosing task declared one
+         */
+        @JvmStatic
+        fun of(ctx: TaskContext): NgramMemo? {
+            val variable = ctx.variable(MEMO_VAR) ?: return null
+            return if (variable.size() == 0) null else variable[0] as NgramMemo?
+        }
+
+        /**
+         * Memo of the context, declared as a global variable if none is visible yet,
+         * so that it lasts until the end of the enclosing task
+         */
+        @JvmStatic
+        fun getOrDeclare(ctx: TaskContext): NgramMemo {
+            val existing = of(ctx)
+            if (existing != null) return existing
+            val memo = NgramMemo()
+            ctx.setVariable(MEMO_VAR, memo)
+            return memo
+        }
+    }
+}
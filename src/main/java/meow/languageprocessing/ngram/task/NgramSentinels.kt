@@ -0,0 +1,198 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Node
+import greycat.Task
+import greycat.Tasks.newTask
+import greycat.Type
+import greycat.plugin.SchedulerAffinity
+import meow.languageprocessing.ngram.NgramConstants.*
+import meow.languageprocessing.ngram.actions.NgramActions.retrieveNgramMainNode
+import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+
+/**
+ * BOS and EOS sentinels surrounding the token sequences ngrams are extracted from.
+ * Their token ids are stored on the ngram main node, so the vocabulary is only traversed once to find them.
+ * NGRAM_SENTINEL_STRATEGY sets what they surround: the whole content (CONTENT), every line (LINE, the newline tokens
+ * being replaced by the sentinels) or every sentence (SENTENCE, closed after each terminator). No ngram spans two segments.
+ */
+object NgramSentinels {
+
+    const val CONTENT = "content"
+    const val LINE = "line"
+    const val SENTENCE = "sentence"
+
+    const val BOS_SOURCE = -1
+    const val EOS_SOURCE = -2
+
+    @JvmField
+    val LINE_BOUNDARIES = arrayOf("\n")
+    @JvmField
+    val SENTENCE_BOUNDARIES = arrayOf(".", "!", "?")
+
+    /**
+     * Token ids surrounded by the sentinels. sources holds the index of every id in the original tokens, or BOS_SOURCE
+     * and EOS_SOURCE, and segmentEnds the exclusive end of the segment of every position, the windows starting there
+     * being at most segmentEnds[i] - i long.
+     */
+    class Sequence(val ids: LongArray, val sources: IntArray, val segmentEnds: IntArray) {
+
+        fun maxOrderAt(start: Int, maxOrder: Int): Int {
+            return Math.min(maxOrder, segmentEnds[start] - start)
+        }
+    }
+
+    @JvmStatic
+    fun strategy(ngramMain: Node): String {
+        return ngramMain.get(NGRAM_SENTINEL_STRATEGY) as String? ?: CONTENT
+    }
+
+    @JvmStatic
+    fun isResolved(ngramMain: Node): Boolean {
+        return ngramMain.get(NGRAM_BOS) != null && ngramMain.get(NGRAM_EOS) != null
+    }
+
+    @JvmStatic
+    fun bos(ngramMain: Node): Long {
+        return ngramMain.get(NGRAM_BOS) as Long
+    }
+
+    @JvmStatic
+    fun eos(ngramMain: Node): Long {
+        return ngramMain.get(NGRAM_EOS) as Long
+    }
+
+    /**
+     * The tokens surrounded according to the strategy of the ngram main node, left as is without ADD_BOS_EOS_TO_NGRAM.
+     * The sentinels have to be resolved beforehand, see resolve
+     */
+    @JvmStatic
+    fun surround(tokens: LongArray, ngramMain: Node): Sequence {
+        if (!ADD_BOS_EOS_TO_NGRAM) return Sequence(tokens, IntArray(tokens.size, { it }), IntArray(tokens.size, { tokens.size }))
+        val strategy = strategy(ngramMain)
+        val boundaries = if (strategy == CONTENT) LongArray(0) else ngramMain.get(NGRAM_SENTINEL_BOUNDARIES) as LongArray? ?: LongArray(0)
+        return surround(tokens, bos(ngramMain), eos(ngramMain), boundaries, strategy == LINE)
+    }
+
+    /**
+     * Every segment of the tokens, ended by a boundary token (dropped if dropBoundaries) or by the end of the tokens,
+     * between bos and eos. Empty segments are skipped, unless the tokens are empty
+     */
+    @JvmStatic
+    fun surround(tokens: LongArray, bos: Long, eos: Long, boundaries: LongArray, dropBoundaries: Boolean): Sequence {
+        val ids = mutableListOf<Long>()
+        val sources = mutableListOf<Int>()
+        var open = false
+        for (i in 0..tokens.size - 1) {
+            val boundary = boundaries.contains(tokens[i])
+            if (boundary && dropBoundaries) {
+                if (open) {
+                    ids.add(eos)
+                    sources.add(EOS_SOURCE)
+                    open = false
+                }
+                continue
+            }
+            if (!open) {
+                ids.add(bos)
+                sources.add(BOS_SOURCE)
+                open = true
+            }
+            ids.add(tokens[i])
+            sources.add(i)
+            if (boundary) {
+                ids.add(eos)
+                sources.add(EOS_SOURCE)
+                open = false
+            }
+        }
+        if (ids.isEmpty()) {
+            ids.add(bos)
+            sources.add(BOS_SOURCE)
+            open = true
+        }
+        if (open) {
+            ids.add(eos)
+            sources.add(EOS_SOURCE)
+        }
+        val segmentEnds = IntArray(ids.size)
+        var end = ids.size
+        for (k in ids.size - 1 downTo 0) {
+            if (sources[k] == EOS_SOURCE) end = k + 1
+            segmentEnds[k] = end
+        }
+        return Sequence(ids.toLongArray(), sources.toIntArray(), segmentEnds)
+    }
+
+    /**
+     * Result: the ngram main node, its sentinels being resolved from the vocabulary and stored on it if they were not yet
+     */
+    @JvmStatic
+    fun resolve(): Task {
+        return newTask()
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    if (!ADD_BOS_EOS_TO_NGRAM || isResolved(ngramMain)) {
+                        ctx.continueTask()
+                    } else {
+                        newTask()
+                                .then(getOrCreateTokensFromString(BOS, EOS))
+                                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                                    if (res != null && res.exception() != null) {
+                                        ctx.endTask(res, res.exception())
+                                    } else {
+                                        ngramMain.set(NGRAM_BOS, Type.LONG, (res[0] as Node).id())
+                                        ngramMain.set(NGRAM_EOS, Type.LONG, (res[1] as Node).id())
+                                        ctx.continueTask()
+                                    }
+                                }
+                    }
+                }
+    }
+
+    /**
+     * Set the strategy of the ngram main node, resolving its boundary tokens and the sentinels.
+     * It should be set before the ngrams of any content are extracted, as they are not extracted again when it changes
+     */
+    @JvmStatic
+    fun configure(strategy: String): Task {
+        val boundaries = when (strategy) {
+            LINE -> LINE_BOUNDARIES
+            SENTENCE -> SENTENCE_BOUNDARIES
+            else -> arrayOf<String>()
+        }
+        return newTask()
+                .thenDo { ctx ->
+                    if (strategy != CONTENT && strategy != LINE && strategy != SENTENCE)
+                        ctx.endTask(ctx.result(), RuntimeException("Unknown sentinel strategy: $strategy"))
+                    else
+                        ctx.continueTask()
+                }
+                .pipe(resolve())
+                .defineAsVar("ngramMain")
+                .ifThenElse({ boundaries.isNotEmpty() },
+                        newTask().then(getOrCreateTokensFromString(*boundaries)),
+                        newTask().thenDo { ctx -> ctx.continueWith(ctx.newResult()) })
+                .thenDo { ctx ->
+                    val ngramMain = ctx.variable("ngramMain")[0] as Node
+                    ngramMain.set(NGRAM_SENTINEL_STRATEGY, Type.STRING, strategy)
+                    ngramMain.set(NGRAM_SENTINEL_BOUNDARIES, Type.LONG_ARRAY, LongArray(ctx.result().size(), { (ctx.result()[it] as Node).id() }))
+                    ctx.continueWith(ctx.variable("ngramMain"))
+                }
+    }
+}
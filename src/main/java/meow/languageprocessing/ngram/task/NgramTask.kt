@@ -19,11 +19,18 @@ import greycat.*
 import greycat.Constants.BEGINNING_OF_TIME
 import greycat.Tasks.newTask
 import greycat.plugin.SchedulerAffinity
+import greycat.struct.LongLongMap
 import meow.languageprocessing.ngram.NgramConstants.*
 import meow.languageprocessing.ngram.actions.NgramActions
 import meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromVar
 import meow.tokens.TokensConstants.*
 import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
+import meow.tokens.task.CollectionStatistics
+import meow.tokens.task.VocabularyTask.retrieveVocabulary
+import meow.utils.EncodedPostings
+import meow.utils.InvertedIndexCache
+import meow.utils.PostingIntersection
 import mylittleplugin.MyLittleActions.*
 
 
@@ -41,11 +48,41 @@ object NgramTask {
                                 newTask()
                                         .createNode()
                                         .setAttribute(ENTRY_POINT_NODE_NAME, Type.STRING, NGRAM_NODE_NAME)
+                                        .setAttribute(NGRAM_HASH_INDEXED, Type.BOOL, "true")
+                                        .setAttribute(NGRAM_TRIE_LINKED, Type.BOOL, "true")
+                                        .thenDo { ctx ->
+                                            ctx.resultAsNodes()[0].getOrCreate(NGRAM_TOKENIZED_CONTENTS, Type.LONG_TO_LONG_MAP)
+                                            ctx.continueTask()
+                                        }
+                                        .setAttribute(NGRAM_MAXIMUM_ORDER, Type.INT, "$MAXIMUM_ORDER_OF_N")
+                                        .setAttribute(NGRAM_EAGER_ORDER, Type.INT, "$MAXIMUM_ORDER_OF_N")
                                         .timeSensitivity("-1", "0")
                                         .addToGlobalIndex(ENTRY_POINT_INDEX, ENTRY_POINT_NODE_NAME)
                         ))
                 )
                 )
+                .thenDo { ctx ->
+                    newTask()
+                            .pipe(NgramTrie.backfill())
+                            .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                                if (res != null && res.exception() != null)
+                                    ctx.endTask(res, res.exception())
+                                else
+                                    ctx.continueTask()
+                            }
+                }
+                .thenDo { ctx ->
+                    // the sentinels are resolved once here if the vocabulary exists, on their first use otherwise
+                    newTask()
+                            .then(retrieveVocabulary())
+                            .ifThen({ subCtx -> ADD_BOS_EOS_TO_NGRAM && subCtx.result().size() != 0 }, NgramSentinels.resolve())
+                            .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                                if (res != null && res.exception() != null)
+                                    ctx.endTask(res, res.exception())
+                                else
+                                    ctx.continueTask()
+                            }
+                }
 
     }
 
@@ -70,18 +107,7 @@ object NgramTask {
     @JvmStatic
     fun getOrCreateNgramFromTokenVar(tokensVar: String): Task {
         return newTask()
-                .readVar(tokensVar)
-                .thenDo { ctx ->
-                    val listOfId = ctx.resultAsNodes().asArray()
-                            .map { (it as Node).id() }
-                            .joinToString(separator = ",", prefix = "[", postfix = "]")
-
-                    ctx.continueWith(ctx.wrap(listOfId))
-                }
-                .defineAsVar("tokensId")
-                .then(NgramActions.retrieveNgramMainNode())
-                .defineAsVar("ngramMain")
-                .traverse(NGRAM_INDEX, GRAMS_TOKENS, "{{tokensId}}")
+                .pipe(lookupNgram(tokensVar))
                 .then(
                         ifEmptyThen(
                                 createNgramFromToken(tokensVar)
@@ -89,6 +115,284 @@ object NgramTask {
                 )
     }
 
+    /**
+     * Maximum order of the ngrams, stored or counted on query
+     */
+    @JvmStatic
+    fun maximumOrder(ngramMain: Node): Int {
+        return ngramMain.get(NGRAM_MAXIMUM_ORDER) as Int? ?: MAXIMUM_ORDER_OF_N
+    }
+
+    /**
+     * Maximum order of the ngrams stored with their inverted indexes, higher ones are counted from the positions of their tokens
+     */
+    @JvmStatic
+    fun eagerOrder(ngramMain: Node): Int {
+        return ngramMain.get(NGRAM_EAGER_ORDER) as Int? ?: MAXIMUM_ORDER_OF_N
+    }
+
+    /**
+     * Set the orders of the ngrams, refused once an ngram tokenized content exists: its stored orders would no longer
+     * match the eager one. Ngram main nodes created before NGRAM_TOKENIZED_CONTENTS can not tell, they are never reconfigured
+     */
+    @JvmStatic
+    fun configureNgram(maximumOrder: Int, eagerOrder: Int): Task {
+        return newTask()
+                .then(NgramActions.retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    val contents = ngramContents(ctx.resultAsNodes()[0])
+                    if (eagerOrder < 1 || eagerOrder > maximumOrder) {
+                        ctx.endTask(ctx.result(), RuntimeException("The eager order should be between 1 and the maximum order"))
+                    } else if (contents == null || contents.isNotEmpty()) {
+                        ctx.endTask(ctx.result(), RuntimeException("The orders can not be changed once ngram tokenized contents exist"))
+                    } else {
+                        val ngramMain = ctx.resultAsNodes()[0]
+                        ngramMain.set(NGRAM_MAXIMUM_ORDER, Type.INT, maximumOrder)
+                        ngramMain.set(NGRAM_EAGER_ORDER, Type.INT, eagerOrder)
+                        ctx.continueTask()
+                    }
+                }
+    }
+
+    /**
+     * Number of occurrences of the ngram made of the grams in all the ngram tokenized contents, without creating anything.
+     * Stored orders are counted from the ngram inverted indexes, higher ones by merging the positions of their tokens (see countFromTokens),
+     * a leading BOS or a trailing EOS anchoring the phrase to the start or the end of the content. Under the LINE and SENTENCE
+     * strategies the word positions do not tell where the segments start, so higher orders with BOS or EOS are refused.
+     */
+    @JvmStatic
+    fun countNgram(grams: Array<String>): Task {
+        return newTask()
+                .then(NgramActions.retrieveNgramMainNode())
+                .defineAsVar("ngramMain")
+                .then(retrieveVocabularyNode())
+                .defineAsVar("Vocabulary")
+                .declareVar("countTokens")
+                .inject(grams)
+                .forEach(
+                        newTask()
+                                .defineAsVar("gram")
+                                .readVar("Vocabulary")
+                                .traverse(VOCABULARY_TOKEN_INDEX, TOKEN_NAME, "{{gram}}")
+                                .addToVar("countTokens")
+                )
+                .readVar("ngramMain")
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    if (grams.size > maximumOrder(ngramMain)) {
+                        ctx.endTask(ctx.result(), RuntimeException("The order of the ngram is higher than the maximum one"))
+                    } else if (ctx.variable("countTokens").size() != grams.size) {
+                        ctx.continueWith(ctx.wrap(0))
+                    } else if (grams.size > eagerOrder(ngramMain) && !countableFromTokens(ngramMain, tokenIdsOf(ctx.variable("countTokens")))) {
+                        ctx.endTask(ctx.result(), RuntimeException("Ngrams with BOS or EOS above the eager order can only be counted with the ${NgramSentinels.CONTENT} sentinel strategy"))
+                    } else if (grams.size <= eagerOrder(ngramMain)) {
+                        newTask()
+                                .pipe(lookupNgram("countTokens"))
+                                .pipe(InvertedIndexCache.readPostings(NGRAM_INVERTED_INDEX_RELATION))
+                                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                                    ctx.continueWith(ctx.wrap((res[0] as InvertedIndexCache.Postings).count()))
+                                }
+                    } else {
+                        countFromTokens(ctx, ngramMain, tokenIdsOf(ctx.variable("countTokens")), null, Callback { count ->
+                            ctx.continueWith(ctx.wrap(count))
+                        })
+                    }
+                }
+    }
+
+    /**
+     * Number of occurrences of the phrase made of the token ids, BOS and EOS included, counted by merging the positions
+     * of its tokens: the way orders above the eager one are counted on query. Only the given tokenized contents are counted,
+     * or all the ngram tokenized contents if contents is null, so that the result matches the one of a stored order.
+     * On an ngram main node created before NGRAM_TOKENIZED_CONTENTS, the ngram plugin of every candidate is checked instead,
+     * and the contents made of sentinels only are counted over all the tokenized contents.
+     * Phrases spanning a segment boundary of the LINE or SENTENCE strategies are never stored, thus count 0,
+     * and the ones with BOS or EOS under these strategies end the task with an exception, see countableFromTokens
+     */
+    @JvmStatic
+    fun countFromTokens(ctx: TaskContext, ngramMain: Node, tokenIds: LongArray, contents: LongArray?, done: Callback<Int>) {
+        if (!countableFromTokens(ngramMain, tokenIds)) {
+            ctx.endTask(ctx.result(), RuntimeException("Ngrams with BOS or EOS above the eager order can only be counted with the ${NgramSentinels.CONTENT} sentinel strategy"))
+            return
+        }
+        val resolved = ADD_BOS_EOS_TO_NGRAM && NgramSentinels.isResolved(ngramMain)
+        val bos = if (resolved) NgramSentinels.bos(ngramMain) else Constants.NULL_LONG
+        val eos = if (resolved) NgramSentinels.eos(ngramMain) else Constants.NULL_LONG
+        val fromStart = resolved && tokenIds.first() == bos
+        val toEnd = resolved && tokenIds.size > 1 && tokenIds.last() == eos
+        val phraseStart = if (fromStart) 1 else 0
+        val phraseEnd = if (toEnd) tokenIds.size - 1 else tokenIds.size
+        for (j in phraseStart..phraseEnd - 1) {
+            if (tokenIds[j] == bos || tokenIds[j] == eos) {
+                done.on(0)
+                return
+            }
+        }
+        // a segment ends on a dropped newline (LINE) or after a terminator (SENTENCE), which is then the last token it can hold
+        val strategy = NgramSentinels.strategy(ngramMain)
+        if (resolved && strategy != NgramSentinels.CONTENT) {
+            val boundaries = ngramMain.get(NGRAM_SENTINEL_BOUNDARIES) as LongArray? ?: LongArray(0)
+            val spanEnd = if (strategy == NgramSentinels.LINE) phraseEnd else phraseEnd - 1
+            for (j in phraseStart..spanEnd - 1) {
+                if (boundaries.contains(tokenIds[j])) {
+                    done.on(0)
+                    return
+                }
+            }
+        }
+        val restriction = contents ?: ngramContents(ngramMain)
+        if (phraseStart == phraseEnd) {
+            // only the sentinels, the contents without any token
+            if (restriction != null) {
+                withLengths(ctx, restriction, Callback { lengths -> done.on(lengths.values.count { it == 0 }) })
+            } else {
+                newTask()
+                        .pipe(CollectionStatistics.retrieveStatisticsNode())
+                        .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                            done.on(if (res.size() == 0) 0 else CollectionStatistics.emptyContents(res[0] as Node).toInt())
+                        }
+            }
+            return
+        }
+        ctx.graph().lookupAll(ctx.world(), ctx.time(), tokenIds.copyOfRange(phraseStart, phraseEnd), Callback<Array<Node>> { tokens ->
+            val postings = arrayOfNulls<InvertedIndexCache.Postings>(tokens.size)
+            val readAll = newTask()
+            for (j in 0..tokens.size - 1) {
+                readAll
+                        .thenDo { subCtx -> subCtx.continueWith(subCtx.wrap(tokens[j])) }
+                        .pipe(InvertedIndexCache.readPostings(WORD_INVERTED_INDEX_RELATION))
+                        .thenDo { subCtx ->
+                            postings[j] = subCtx.result()[0] as InvertedIndexCache.Postings
+                            subCtx.continueTask()
+                        }
+            }
+            readAll.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) {
+                tokens.forEach(Node::free)
+                val candidates = PostingIntersection.intersect(postings.map { it!!.ids() })
+                val count = Callback<LongArray> { counted ->
+                    val occurrencesIn = { lengths: Map<Long, Int> ->
+                        var occurrences = 0
+                        for (tc in counted) {
+                            val iterators = Array(postings.size, { EncodedPostings.iterator(postings[it]!!.byContent[tc]!!) })
+                            val positions = PostingIntersection.phrasePositions(iterators)
+                            val length = lengths[tc]
+                            occurrences += positions.count { position ->
+                                (!fromStart || position == 0) && (!toEnd || (length != null && position + postings.size == length))
+                            }
+                        }
+                        occurrences
+                    }
+                    // the lengths of the contents at the current time, to anchor the phrase to their end
+                    if (!toEnd || counted.isEmpty()) done.on(occurrencesIn(emptyMap()))
+                    else withLengths(ctx, counted, Callback { lengths -> done.on(occurrencesIn(lengths)) })
+                }
+                if (restriction != null) {
+                    val allowed = restriction.toHashSet()
+                    count.on(candidates.filter { allowed.contains(it) }.toLongArray())
+                } else {
+                    processedByNgram(ctx, candidates, count)
+                }
+            }
+        })
+    }
+
+    /**
+     * Whether countFromTokens can count the phrase: with the LINE and SENTENCE strategies the sentinels open and close
+     * every segment, which the word positions do not tell, so phrases holding BOS or EOS can not be counted that way
+     */
+    @JvmStatic
+    fun countableFromTokens(ngramMain: Node, tokenIds: LongArray): Boolean {
+        if (!ADD_BOS_EOS_TO_NGRAM || !NgramSentinels.isResolved(ngramMain) || NgramSentinels.strategy(ngramMain) == NgramSentinels.CONTENT) return true
+        val bos = NgramSentinels.bos(ngramMain)
+        val eos = NgramSentinels.eos(ngramMain)
+        return tokenIds.none { it == bos || it == eos }
+    }
+
+    private fun tokenIdsOf(tokens: TaskResult<*>): LongArray {
+        return LongArray(tokens.size(), { (tokens[it] as Node).id() })
+    }
+
+    /**
+     * Ids of the tokenized contents having an ngram tokenized content, null if the ngram main node does not register them
+     */
+    @JvmStatic
+    fun ngramContents(ngramMain: Node): LongArray? {
+        val registered = ngramMain.get(NGRAM_TOKENIZED_CONTENTS) as LongLongMap? ?: return null
+        val ids = LongArray(registered.size())
+        var i = 0
+        registered.each { tc, ngramTc -> ids[i++] = tc }
+        return ids
+    }
+
+    private fun withLengths(ctx: TaskContext, contents: LongArray, done: Callback<Map<Long, Int>>) {
+        if (contents.isEmpty()) {
+            done.on(emptyMap())
+            return
+        }
+        ctx.graph().lookupAll(ctx.world(), ctx.time(), contents, Callback<Array<Node>> { nodes ->
+            val lengths = HashMap<Long, Int>()
+            for (node in nodes) {
+                if (node == null) continue
+                val length = CollectionStatistics.contentLength(node)
+                if (length != null) lengths.put(node.id(), length)
+                node.free()
+            }
+            done.on(lengths)
+        })
+    }
+
+    private fun processedByNgram(ctx: TaskContext, candidates: LongArray, done: Callback<LongArray>) {
+        if (candidates.isEmpty()) {
+            done.on(candidates)
+            return
+        }
+        ctx.graph().lookupAll(ctx.world(), ctx.time(), candidates, Callback<Array<Node>> { nodes ->
+            newTask()
+                    .traverse(TOKENIZE_CONTENT_PLUGIN, NODE_TYPE, NODE_TYPE_NGRAM_TOKENIZED_CONTENT)
+                    .traverse(TOKENIZED_CONTENT_FATHER)
+                    .executeFrom(ctx, ctx.wrap(nodes.filterNotNull().toTypedArray()), SchedulerAffinity.SAME_THREAD) { res ->
+                        val processed = LongArray(res.size(), { (res[it] as Node).id() })
+                        processed.sort()
+                        done.on(candidates.filter { java.util.Arrays.binarySearch(processed, it) >= 0 }.toLongArray())
+                    }
+        })
+    }
+
+    private fun lookupNgram(tokensVar: String): Task {
+        return newTask()
+                .then(NgramActions.retrieveNgramMainNode())
+                .defineAsVar("ngramMain")
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    val tokens = ctx.variable(tokensVar)
+                    val ids = LongArray(tokens.size(), { (tokens[it] as Node).id() })
+                    if (NgramKeyIndex.isHashIndexed(ngramMain)) {
+                        val hash = NgramKeyIndex.hash(ids, 0, ids.size)
+                        val memo = NgramMemo.of(ctx)
+                        val memoized = memo?.get(ids, hash) ?: Constants.NULL_LONG
+                        if (memoized != Constants.NULL_LONG) {
+                            // the memo is keyed by the token ids, the node is only resolved
+                            ctx.graph().lookup(ctx.world(), ctx.time(), memoized, Callback<Node> { ngram -> ctx.continueWith(ctx.wrap(ngram)) })
+                        } else {
+                            memo?.probed()
+                            lookupIndexed(ctx, ngramMain, ids, hash, memo)
+                        }
+                    } else {
+                        ctx.defineVariable("tokensId", ids.joinToString(separator = ",", prefix = "[", postfix = "]"))
+                        newTask()
+                                .traverse(NGRAM_INDEX, GRAMS_TOKENS, "{{tokensId}}")
+                                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res -> ctx.continueWith(res) }
+                    }
+                }
+    }
+
+    private fun lookupIndexed(ctx: TaskContext, ngramMain: Node, ids: LongArray, hash: Long, memo: NgramMemo?) {
+        NgramKeyIndex.lookup(ngramMain, ids, 0, ids.size, Callback<Node?> { ngram ->
+            if (ngram != null) memo?.put(ids, hash, ngram.id())
+            ctx.continueWith(if (ngram == null) ctx.newResult() else ctx.wrap(ngram))
+        })
+    }
+
     private fun createNgramFromToken(tokensVar: String): Task {
         return newTask().then(executeAtWorldAndTime("0", "$BEGINNING_OF_TIME",
                 newTask()
@@ -110,16 +414,19 @@ object NgramTask {
                                         .defineAsVar("history")
                                         .then(getOrCreateNgramFromVar("history"))
                                         .defineAsVar("historyNgram")
-                                        .addVarToRelation("historyTo", "newNgram")
+                                        // the ngrams a history extends to are its NgramTrie children, not a relation
                                         .readVar("newNgram")
                                         .addVarToRelation("history", "historyNgram")
+                                        .thenDo { subCtx ->
+                                            NgramTrie.addChild(subCtx.variable("historyNgram")[0] as Node, (tokens.last() as Node).id(), node.id())
+                                            subCtx.continueTask()
+                                        }
 
 
                                         .inject(tokens.takeLast(tokens.size - 1).toTypedArray())
                                         .defineAsVar("backoff")
                                         .then(getOrCreateNgramFromVar("backoff"))
                                         .defineAsVar("backOffNgram")
-                                        .addVarToRelation("backoffTo", "newNgram")
                                         .readVar("newNgram")
                                         .addVarToRelation("backOff", "backOffNgram")
                                         .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
@@ -132,6 +439,19 @@ object NgramTask {
                         }
                         .readVar("ngramMain")
                         .addVarToRelation(NGRAM_INDEX, "newNgram", GRAMS_TOKENS)
+                        .thenDo { ctx ->
+                            val tokens = ctx.variable(tokensVar)
+                            val ids = LongArray(tokens.size(), { (tokens[it] as Node).id() })
+                            val hash = NgramKeyIndex.hash(ids, 0, ids.size)
+                            val ngramMain = ctx.resultAsNodes()[0]
+                            val newNgram = ctx.variable("newNgram")[0] as Node
+                            NgramKeyIndex.index(ngramMain, newNgram, hash)
+                            NgramMemo.of(ctx)?.put(ids, hash, newNgram.id())
+                            if (tokens.size() == 1) {
+                                NgramTrie.addChild(ngramMain, (tokens[0] as Node).id(), newNgram.id())
+                            }
+                            ctx.continueTask()
+                        }
                         .readVar("newNgram")
         ))
     }
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Callback
+import greycat.Constants
+import greycat.Node
+import greycat.Task
+import greycat.TaskContext
+import greycat.Tasks.newTask
+import greycat.Type
+import greycat.struct.LongLongMap
+import greycat.struct.Relation
+import meow.languageprocessing.ngram.NgramConstants.*
+import meow.languageprocessing.ngram.actions.NgramActions.retrieveNgramMainNode
+
+/**
+ * Trie over the ngrams, stored as token id to ngram id maps on the nodes: the children of an ngram are the ngrams
+ * extending it by one token on the right (it is their history), the ngram main node being the root, its children the unigrams.
+ * It is an index over the ngram nodes, not their store: ngrams stay graph nodes, registered in NGRAM_INDEX and the hash index,
+ * with their single history and backOff relations, as the corpus and the language model read them.
+ * The map replaces the historyTo and backoffTo relations ngrams had to their extensions, one map entry taking
+ * the place of one relation entry per ngram, so the trie comes at no extra storage.
+ */
+object NgramTrie {
+
+    @JvmStatic
+    fun addChild(context: Node, tokenId: Long, ngram: Long) {
+        (context.getOrCreate(NGRAM_CHILDREN, Type.LONG_TO_LONG_MAP) as LongLongMap).put(tokenId, ngram)
+    }
+
+    /**
+     * id of the ngram made of the context followed by the token, Constants.NULL_LONG if it does not exist
+     */
+    @JvmStatic
+    fun child(context: Node, tokenId: Long): Long {
+        val children = context.get(NGRAM_CHILDREN) as LongLongMap? ?: return Constants.NULL_LONG
+        return children.get(tokenId)
+    }
+
+    /**
+     * Ngram made of tokens[offset, offset + length), walked down from the main node, null if it does not exist
+     */
+    @JvmStatic
+    fun lookup(ngramMain: Node, tokens: LongArray, offset: Int, length: Int, done: Callback<Node?>) {
+        descend(ngramMain, tokens, offset, offset + length, false, done)
+    }
+
+    private fun descend(context: Node, tokens: LongArray, from: Int, to: Int, freeContext: Boolean, done: Callback<Node?>) {
+        if (from == to) {
+            done.on(context)
+            return
+        }
+        val next = child(context, tokens[from])
+        val graph = context.graph()
+        val world = context.world()
+        val time = context.time()
+        if (freeContext) context.free()
+        if (next == Constants.NULL_LONG) {
+            done.on(null)
+            return
+        }
+        graph.lookup(world, time, next, Callback<Node> { ngram ->
+            descend(ngram, tokens, from + 1, to, true, done)
+        })
+    }
+
+    @JvmStatic
+    fun isLinked(ngramMain: Node): Boolean {
+        return ngramMain.get(NGRAM_TRIE_LINKED) == true
+    }
+
+    /**
+     * Link in the trie the ngrams of a main node created before it, from their history relation.
+     * Done once, initializeNgram calling it on every main node not marked as NGRAM_TRIE_LINKED yet
+     */
+    @JvmStatic
+    fun backfill(): Task {
+        return newTask()
+                .then(retrieveNgramMainNode())
+                .ifThen({ ctx -> !isLinked(ctx.resultAsNodes()[0]) },
+                        newTask()
+                                .defineAsVar("trieRoot")
+                                .traverse(NGRAM_INDEX)
+                                .forEach(newTask().thenDo { ctx -> link(ctx, ctx.variable("trieRoot")[0] as Node, ctx.resultAsNodes()[0]) })
+                                .readVar("trieRoot")
+                                .setAttribute(NGRAM_TRIE_LINKED, Type.BOOL, "true")
+                )
+    }
+
+    private fun link(ctx: TaskContext, ngramMain: Node, ngram: Node) {
+        val grams = ngram.get(GRAMS_TOKENS) as Relation
+        if (grams.size() == 1) {
+            addChild(ngramMain, grams.get(0), ngram.id())
+            ctx.continueTask()
+            return
+        }
+        ctx.graph().lookup(ngram.world(), ngram.time(), (ngram.get("history") as Relation).get(0), Callback<Node> { history ->
+            addChild(history, grams.get(grams.size() - 1), ngram.id())
+            history.free()
+            ctx.continueTask()
+        })
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.ActionFunction
+import greycat.Callback
+import greycat.Constants
+import greycat.Node
+import greycat.Task
+import greycat.TaskContext
+import greycat.Tasks.newTask
+import greycat.plugin.SchedulerAffinity
+import meow.languageprocessing.ngram.NgramConstants.*
+import meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromVar
+import java.util.IdentityHashMap
+
+/**
+ * Ngram ids of every window of a token sequence, for all the orders up to maxOrder, resolved in a single pass over the tokens.
+ * The ngrams of an order are found by extending the ones of the previous order through NgramTrie, with one bulk lookup per order.
+ * Windows that are still unknown are deduplicated by their rolling hash, then each distinct one is created once,
+ * the histories and backoffs met while creating them being shared through an NgramMemo.
+ * Windows running over the end of their segment, see NgramSentinels.Sequence, are neither resolved nor returned:
+ * once resolved, the windows of every order are compacted into ids and their start positions in the sequence.
+ * With segmented set (LINE or SENTENCE strategies), the start of a window may differ from its index among the windows
+ * of its order, and may change from a version of the content to the next without the window moving in that list.
+ */
+class NgramWindows(private var tokens: Array<Node>, val maxOrder: Int, private val segmentEnds: IntArray, val segmented: Boolean) {
+
+    private val tokenIds = LongArray(tokens.size, { tokens[it].id() })
+    private val windows = Array(maxOrder, { LongArray(Math.max(0, tokens.size - it)) })
+    private val hashes = LongArray(tokens.size, { NgramKeyIndex.SEED })
+    private val compactedIds = Array(maxOrder, { LongArray(0) })
+    private val compactedStarts = Array(maxOrder, { IntArray(0) })
+
+    constructor(tokens: Array<Node>, maxOrder: Int) : this(tokens, maxOrder, IntArray(tokens.size, { tokens.size }), false)
+
+    /**
+     * ngram ids of the windows of this order within their segment, in increasing start position
+     */
+    fun ids(order: Int): LongArray {
+        return if (order in 1..maxOrder) compactedIds[order - 1] else LongArray(0)
+    }
+
+    /**
+     * start position in the sequence of each window of ids(order), the position its inverted index holds
+     */
+    fun starts(order: Int): IntArray {
+        return if (order in 1..maxOrder) compactedStarts[order - 1] else IntArray(0)
+    }
+
+    /**
+     * free the token nodes the windows were resolved from, once ids and starts are no longer read from them;
+     * a sentinel repeated at every segment is the same node, freed once
+     */
+    fun free() {
+        val freed = IdentityHashMap<Node, Boolean>()
+        for (token in tokens) {
+            if (freed.put(token, true) == null) token.free()
+        }
+        tokens = arrayOf()
+    }
+
+    private fun compact() {
+        for (order in 1..maxOrder) {
+            val current = windows[order - 1]
+            var size = 0
+            for (i in 0..current.size - 1) {
+                if (inSegment(i, order)) size++
+            }
+            val orderIds = LongArray(size)
+            val orderStarts = IntArray(size)
+            var k = 0
+            for (i in 0..current.size - 1) {
+                if (inSegment(i, order)) {
+                    orderIds[k] = current[i]
+                    orderStarts[k] = i
+                    k++
+                }
+            }
+            compactedIds[order - 1] = orderIds
+            compactedStarts[order - 1] = orderStarts
+        }
+    }
+
+    private fun inSegment(start: Int, order: Int): Boolean {
+        return start + order <= segmentEnds[start]
+    }
+
+    private fun sameWindow(first: Int, second: Int, order: Int): Boolean {
+        for (k in 0..order - 1) {
+            if (tokenIds[first + k] != tokenIds[second + k]) return false
+        }
+        return true
+    }
+
+    private fun resolveOrder(ctx: TaskContext, ngramMain: Node, order: Int, done: () -> Unit) {
+        if (order > maxOrder || windows[order - 1].isEmpty()) {
+            done()
+            return
+        }
+        val current = windows[order - 1]
+        for (i in 0..current.size - 1) hashes[i] = NgramKeyIndex.extend(hashes[i], tokenIds[i + order - 1])
+        if (order == 1) {
+            for (i in 0..current.size - 1) current[i] = NgramTrie.child(ngramMain, tokenIds[i])
+            createMissing(ctx, ngramMain, order, emptyMap(), { resolveOrder(ctx, ngramMain, order + 1, done) })
+        } else {
+            val previous = windows[order - 2]
+            val contextIds = (0..current.size - 1).filter { inSegment(it, order) }.map { previous[it] }.distinct().toLongArray()
+            if (contextIds.isEmpty()) {
+                done()
+                return
+            }
+            ctx.graph().lookupAll(ctx.world(), ctx.time(), contextIds, Callback<Array<Node>> { contexts ->
+                val byId = HashMap<Long, Node>()
+                contexts.forEach { byId.put(it.id(), it) }
+                for (i in 0..current.size - 1) {
+                    if (inSegment(i, order)) current[i] = NgramTrie.child(byId[previous[i]]!!, tokenIds[i + order - 1])
+                }
+                createMissing(ctx, ngramMain, order, byId, {
+                    contexts.forEach(Node::free)
+                    resolveOrder(ctx, ngramMain, order + 1, done)
+                })
+            })
+        }
+    }
+
+    private fun createMissing(ctx: TaskContext, ngramMain: Node, order: Int, contexts: Map<Long, Node>, done: () -> Unit) {
+        val current = windows[order - 1]
+        val previous = if (order == 1) null else windows[order - 2]
+        val owners = IntArray(current.size, { -1 })
+        val byHash = HashMap<Long, MutableList<Int>>()
+        val missing = mutableListOf<Int>()
+        for (i in 0..current.size - 1) {
+            if (current[i] != Constants.NULL_LONG || !inSegment(i, order)) continue
+            val sameHash = byHash[hashes[i]]
+            val first = sameHash?.firstOrNull { sameWindow(it, i, order) }
+            if (first != null) {
+                owners[i] = first
+            } else {
+                missing.add(i)
+                if (sameHash == null) byHash.put(hashes[i], mutableListOf(i)) else sameHash.add(i)
+            }
+        }
+        if (missing.isEmpty()) {
+            done()
+            return
+        }
+        val creation = newTask()
+        for (first in missing) {
+            creation
+                    .thenDo { subCtx ->
+                        subCtx.defineVariable(windowTokensVar, tokens.copyOfRange(first, first + order))
+                        subCtx.continueTask()
+                    }
+                    .then(getOrCreateNgramFromVar(windowTokensVar))
+                    .thenDo { subCtx ->
+                        val ngram = subCtx.resultAsNodes()[0]
+                        current[first] = ngram.id()
+                        // ngrams of a main node not backfilled yet (see NgramTrie.backfill) are linked on their first use
+                        if (previous == null) {
+                            NgramTrie.addChild(ngramMain, tokenIds[first], ngram.id())
+                        } else {
+                            NgramTrie.addChild(contexts[previous[first]]!!, tokenIds[first + order - 1], ngram.id())
+                        }
+                        subCtx.continueTask()
+                    }
+        }
+        creation.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) {
+            for (i in 0..current.size - 1) {
+                if (owners[i] != -1) current[i] = current[owners[i]]
+            }
+            done()
+        }
+    }
+
+    companion object {
+
+        const val WINDOWS_VAR = "ngramWindows"
+        const val EAGER_ORDER_VAR = "eagerOrder"
+        private val windowTokensVar = "windowTokens"
+
+        /**
+         * Resolve, creating them if needed, the ngrams of all the stored orders (up to NgramTask.eagerOrder) of the tokens in tokensVar,
+         * surrounded by the sentinels if ADD_BOS_EOS_TO_NGRAM (see NgramSentinels), and return them as an NgramWindows.
+         * An NgramMemo is declared for the rest of the task if none is visible yet.
+         * The ngrams are got or created holding the external lock of the ngram main node, so that parallel updates
+         * neither read a trie another one is extending nor create the same ngram twice; the windows are compacted after it is released
+         */
+        @JvmStatic
+        fun resolve(tokensVar: String): Task {
+            return newTask()
+                    .pipe(NgramSentinels.resolve())
+                    .thenDo { ctx ->
+                        val ngramMain = ctx.resultAsNodes()[0]
+                        if (ADD_BOS_EOS_TO_NGRAM) {
+                            val sentinelIds = longArrayOf(NgramSentinels.bos(ngramMain), NgramSentinels.eos(ngramMain))
+                            ctx.graph().lookupAll(ctx.world(), ctx.time(), sentinelIds, Callback<Array<Node>> { sentinels ->
+                                resolveWithSentinels(ctx, ngramMain, tokensVar, sentinels)
+                            })
+                        } else {
+                            resolveWithSentinels(ctx, ngramMain, tokensVar, arrayOf())
+                        }
+                    }
+        }
+
+        private fun resolveWithSentinels(ctx: TaskContext, ngramMain: Node, tokensVar: String, sentinels: Array<Node>) {
+            val content = ctx.variable(tokensVar)
+            val contentIds = LongArray(content.size(), { (content[it] as Node).id() })
+            val sequence = NgramSentinels.surround(contentIds, ngramMain)
+            val tokens = Array(sequence.ids.size, {
+                when (sequence.sources[it]) {
+                    NgramSentinels.BOS_SOURCE -> sentinels[0]
+                    NgramSentinels.EOS_SOURCE -> sentinels[1]
+                    else -> content[sequence.sources[it]] as Node
+                }
+            })
+            sentinels.filter { sentinel -> tokens.none { it === sentinel } }.forEach(Node::free)
+            val eagerOrder = NgramTask.eagerOrder(ngramMain)
+            val segmented = ADD_BOS_EOS_TO_NGRAM && NgramSentinels.strategy(ngramMain) != NgramSentinels.CONTENT
+            val windows = NgramWindows(tokens, eagerOrder, sequence.segmentEnds, segmented)
+            NgramMemo.getOrDeclare(ctx)
+            val resolver = ctx.graph().resolver()
+            resolver.externalLock(ngramMain)
+            windows.resolveOrder(ctx, ngramMain, 1, {
+                resolver.externalUnlock(ngramMain)
+                windows.compact()
+                ctx.continueWith(ctx.wrap(windows))
+            })
+        }
+
+        /**
+         * Define, in the current context, the NgramWindows in result as WINDOWS_VAR and its order as EAGER_ORDER_VAR
+         */
+        @JvmStatic
+        fun defineAsVars(): ActionFunction {
+            return ActionFunction { ctx ->
+                val windows = ctx.result()[0] as NgramWindows
+                ctx.defineVariable(WINDOWS_VAR, windows)
+                ctx.defineVariable(EAGER_ORDER_VAR, windows.maxOrder)
+                ctx.continueTask()
+            }
+        }
+    }
+}
@@ -18,15 +18,19 @@ package meow.languageprocessing.ngram.task
 import greycat.*
 import greycat.Constants.*
 import greycat.Tasks.*
-import greycat.plugin.SchedulerAffinity
+import greycat.struct.LongLongMap
 import greycat.struct.Relation
-import meow.languageprocessing.ngram.NgramConstants
 import meow.languageprocessing.ngram.NgramConstants.*
-import meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromVar
+import meow.languageprocessing.ngram.actions.NgramActions.retrieveNgramMainNode
 import meow.tokens.TokensConstants.*
-import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+import meow.tokens.task.TokenizedContentVersions.traverseTokens
 import meow.utils.MinimunEditDistance
+import meow.utils.MyersDiff
+import meow.utils.PositionPostingBuffer
+import meow.utils.ScriptReplay
 import meow.utils.UtilTask.checkNodesType
+import meow.utils.UtilTask.flushPostings
+import meow.utils.UtilTask.lookupOrCreateInvertedIndexLocked
 import mylittleplugin.MyLittleActions.*
 
 
@@ -48,22 +52,99 @@ object RelationTask {
                 )
     }
 
+    /**
+     * Parallel variant of updateNgramTokenizeContentVar, the tokenized contents are split into at most workers partitions,
+     * updated concurrently, each one content after the other.
+     * Each branch reads the tokens of its contents, resolves their windows and writes their inverted indexes itself,
+     * one timepoint at a time; only the get or create of the ngrams, shared by all the contents, is serialized
+     * (see NgramWindows.resolve), through an NgramMemo common to the branches.
+     */
+    @JvmStatic
+    fun updateNgramTokenizeContentVarPar(tokenizeContentVar: String, workers: Int): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    if (workers <= 0)
+                        ctx.endTask(ctx.result(), RuntimeException("The number of workers should be positive"))
+                    else
+                        ctx.continueTask()
+                }
+                .pipe(checkNodesType(tokenizeContentVar, NODE_TYPE_TOKENIZE_CONTENT))
+                .thenDo { ctx ->
+                    NgramMemo.getOrDeclare(ctx) // declared before the branches so that they all share it
+                    val nbPartitions = Math.min(workers, ctx.variable(tokenizeContentVar).size())
+                    ctx.continueWith(ctx.wrap(Array(nbPartitions, { it })))
+                }
+                .forEachPar(
+                        newTask()
+                                .thenDo { ctx ->
+                                    val partition = ctx.result()[0] as Int
+                                    val contents = ctx.variable(tokenizeContentVar)
+                                    val nbPartitions = Math.min(workers, contents.size())
+                                    val nodes = (partition..contents.size() - 1 step nbPartitions).map { contents[it] as Node }
+                                    ctx.continueWith(ctx.wrap(nodes.toTypedArray()))
+                                }
+                                .forEach(
+                                        updateNgramTokenizeContent()
+                                )
+                )
+                .readVar(tokenizeContentVar)
+    }
+
+    /**
+     * Timepoints of the tc the ngram plugin has not processed yet, in increasing order: all of them without plugin,
+     * the ones after its watermark otherwise, or, for a plugin created before the watermark, the ones it does not have,
+     * the watermark being set if it has them all
+     */
+    private fun pendingTimepoints(ctx: TaskContext, tc: Node, ngramTc: Node?, done: (LongArray) -> Unit) {
+        if (ngramTc == null) {
+            tc.timepoints(BEGINNING_OF_TIME, END_OF_TIME, {
+                timePoints ->
+                timePoints.reverse()
+                done(timePoints)
+            })
+            return
+        }
+        ctx.graph().lookup(ngramTc.world(), END_OF_TIME, ngramTc.id(), Callback<Node> { latest ->
+            val watermark = latest.get(NGRAM_TC_WATERMARK) as Long?
+            latest.free()
+            if (watermark != null) {
+                tc.timepoints(watermark + 1, END_OF_TIME, {
+                    timePoints ->
+                    timePoints.reverse()
+                    done(timePoints)
+                })
+            } else {
+                tc.timepoints(BEGINNING_OF_TIME, END_OF_TIME, {
+                    tcTimePoints ->
+                    ngramTc.timepoints(BEGINNING_OF_TIME, END_OF_TIME, {
+                        timePoints ->
+                        val known = timePoints.toHashSet()
+                        val toStudy = tcTimePoints.filter { !known.contains(it) }.toLongArray()
+                        if (toStudy.isEmpty() && tcTimePoints.isNotEmpty() && timePoints.isNotEmpty()) {
+                            // nothing missing, the watermark is set to the last timepoint so that later updates skip this diff
+                            ctx.graph().lookup(ngramTc.world(), timePoints[0], ngramTc.id(), Callback<Node> { last ->
+                                last.set(NGRAM_TC_WATERMARK, Type.LONG, tcTimePoints[0])
+                                last.free()
+                                done(toStudy)
+                            })
+                        } else {
+                            toStudy.reverse()
+                            done(toStudy)
+                        }
+                    })
+                })
+            }
+        })
+    }
+
     private fun updateNgramTokenizeContent(): Task {
         return newTask()
                 .defineAsVar(tokenizedContent) // tc in var
                 .thenDo { ctx -> //storing the type and the id of tc
-                    ctx.setVariable(tokenizedContentId, ctx.resultAsNodes()[0].id())
-                    ctx.setVariable(tokenizedContentType, ctx.resultAsNodes()[0].get("type") as String)
+                    ctx.defineVariable(tokenizedContentId, ctx.resultAsNodes()[0].id())
+                    ctx.defineVariable(tokenizedContentType, ctx.resultAsNodes()[0].get("type") as String)
                     ctx.continueTask()
                 }
-                .thenDo { ctx -> //then retrieve all timepoints of the tc //TODO children world
-                    ctx.resultAsNodes().get(0).timepoints(BEGINNING_OF_TIME, END_OF_TIME, {
-                        timePoints ->
-                        timePoints.reverse()
-                        ctx.setVariable(tokenizedContentTimepoints, timePoints)
-                        ctx.continueTask()
-                    })
-                }
 
                 .traverse(TOKENIZE_CONTENT_PLUGIN, NODE_TYPE, NODE_TYPE_NGRAM_TOKENIZED_CONTENT) // traverse plugin ngram
 
@@ -72,23 +153,21 @@ object RelationTask {
                                 createFirstNgramTokenizedContent()
                         )
                 )
-                .setAsVar(ngramtokenizedContent) // and store it in a var
+                .defineAsVar(ngramtokenizedContent) // and store it in a var
 
-                .thenDo { ctx -> // find all timepoints of the tc that are not existing for the ngram plugin TODO children word
-                    ctx.resultAsNodes().get(0).timepoints(BEGINNING_OF_TIME, END_OF_TIME, {
-                        timePoints ->
-                        val toStudy = ctx.variable(tokenizedContentTimepoints).asArray().map { id -> id as Long }.toMutableList()
-                        toStudy.removeAll(timePoints.asList())
-                        toStudy.reverse()
-                        ctx.continueWith(ctx.wrap(toStudy.toLongArray()))
+                .thenDo { ctx -> // find the timepoints of the tc not processed by the ngram plugin yet TODO children world
+                    pendingTimepoints(ctx, ctx.variable(tokenizedContent)[0] as Node, ctx.resultAsNodes()[0], { timePoints ->
+                        ctx.continueWith(ctx.wrap(timePoints))
                     })
                 }
 
-                .forEach( // for each not existing timepoints update Ngram plugin node
+                .forEach( // for each not existing timepoints update Ngram plugin node, then move the watermark to it
                         newTask()
-                                .setAsVar("timepoint")
+                                .defineAsVar("timepoint")
                                 .travelInTime("{{timepoint}}")
                                 .pipe(updateNgramsRelation())
+                                .then(readUpdatedTimeVar(ngramtokenizedContent))
+                                .setAttribute(NGRAM_TC_WATERMARK, Type.LONG, "{{timepoint}}")
                 )
         //.readVar(tokenizedContent) //return the
 
@@ -97,27 +176,47 @@ object RelationTask {
 
     private fun createFirstNgramTokenizedContent(): Task {
         return newTask()
-                .thenDo { ctx -> // retrieve the first timepoint
-                    ctx.setVariable("ft", ctx.variable(tokenizedContentTimepoints).get(0))
-                    ctx.continueTask()
+                .thenDo { ctx -> // retrieve all timepoints of the tc, and the first one
+                    (ctx.variable(tokenizedContent)[0] as Node).timepoints(BEGINNING_OF_TIME, END_OF_TIME, {
+                        timePoints ->
+                        timePoints.reverse()
+                        ctx.defineVariable(tokenizedContentTimepoints, timePoints)
+                        ctx.defineVariable("ft", timePoints[0])
+                        ctx.continueTask()
+                    })
                 }
                 .travelInTime("{{ft}}") //travel to it
 
                 .createNode() //create the ngramNode plugin
                 .addVarToRelation("$TOKENIZED_CONTENT_FATHER", "$tokenizedContent") // add relation to the tc
                 .setAttribute(NODE_TYPE, Type.STRING, NODE_TYPE_NGRAM_TOKENIZED_CONTENT) //set its type
-                .setAsVar(ngramtokenizedContent)
+                .setAttribute(NGRAM_TC_WATERMARK, Type.LONG, "{{ft}}") // only the first timepoint is processed here
+                .defineAsVar(ngramtokenizedContent)
                 .pipe(
                         createNgramsRelation() //create the ngramRelation
                 )
                 .readVar(tokenizedContentTimepoints)
                 .forEach(
                         newTask()
-                                .setAsVar("time")
+                                .defineAsVar("time")
                                 .travelInTime("{{time}}")
                                 .then(readUpdatedTimeVar(tokenizedContent))
                                 .addVarToRelation(TOKENIZE_CONTENT_PLUGIN, ngramtokenizedContent, NODE_TYPE)
                 )
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    // registered on main nodes created with the registry only, older ones not listing their previous contents
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    val resolver = ctx.graph().resolver()
+                    resolver.externalLock(ngramMain)
+                    try {
+                        (ngramMain.get(NGRAM_TOKENIZED_CONTENTS) as LongLongMap?)
+                                ?.put(ctx.variable(tokenizedContentId)[0] as Long, (ctx.variable(ngramtokenizedContent)[0] as Node).id())
+                    } finally {
+                        resolver.externalUnlock(ngramMain)
+                    }
+                    ctx.continueTask()
+                }
                 .readVar(ngramtokenizedContent)
 
 
@@ -125,46 +224,29 @@ object RelationTask {
 
     private fun createNgramsRelation(): Task {
         return newTask()
-                .then(readUpdatedTimeVar(tokenizedContent)) //read tc at the good time
-                .traverse(TOKENIZE_CONTENT_TOKENS) //traverse to get the tokens
-                .setAsVar("tokens")
-                .loop("1", "$MAXIMUM_ORDER_OF_N",
+                .pipe(windowsOfContent()) //all the ngrams at once
+                .thenDo(NgramWindows.defineAsVars())
+                .thenDo { ctx ->
+                    ctx.defineVariable("postings", PositionPostingBuffer())
+                    ctx.continueTask()
+                }
+                .loop("1", "{{${NgramWindows.EAGER_ORDER_VAR}}}",
 
                         thenDo { ctx ->
-                            ctx.setVariable("order", ctx.variable("i")[0])
+                            ctx.defineVariable("order", ctx.variable("i")[0])
                             ctx.continueTask()
                         }
                                 .pipe(retrieveNgram())
                                 .forEach(
                                         newTask()
                                                 .defineAsVar("ngram")
-                                                .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "{{$tokenizedContentId}}")
-                                                .then(
-                                                        ifEmptyThenElse(
-                                                                newTask()
-                                                                        .then(
-                                                                                executeAtWorldAndTime("0", "$BEGINNING_OF_TIME",
-                                                                                        newTask()
-                                                                                                .createNode()
-                                                                                                .setAttribute(II_TC, Type.LONG, "{{$tokenizedContentId}}")
-                                                                                                .setAttribute(NODE_TYPE, Type.STRING, NODE_TYPE_INVERTED_INDEX)
-                                                                                                .setAttribute("type", Type.STRING, "{{$tokenizedContentType}}")
-                                                                                                .defineAsVar("invertedIndex")
-                                                                                                .addVarToRelation(INVERTED_NGRAM_INDEX_RELATION, "ngram")
-                                                                                                .readVar("ngram")
-                                                                                                .addVarToRelation(NGRAM_INVERTED_INDEX_RELATION, "invertedIndex", II_TC)
-                                                                                                .readVar("invertedIndex")
-                                                                                )
-                                                                        )
-                                                                ,
-                                                                newTask().then(checkForFuture())
-                                                        )
-                                                )
+                                                .thenDo(lookupOrCreateInvertedIndexLocked(tokenizedContentId, tokenizedContentType, INVERTED_NGRAM_INDEX_RELATION, NGRAM_INVERTED_INDEX_RELATION))
+                                                .then(checkForFuture())
                                                 .thenDo { ctx ->
                                                     val node = ctx.resultAsNodes()[0]
-                                                    val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: mutableListOf<Int>()
-                                                    position.add(ctx.variable("i")[0] as Int)
-                                                    node.set("position", Type.INT_ARRAY, position.toIntArray())
+                                                    val postings = ctx.variable("postings")[0] as PositionPostingBuffer
+                                                    val windows = ctx.variable(NgramWindows.WINDOWS_VAR)[0] as NgramWindows
+                                                    postings.of(node).add(windows.starts(ctx.variable("order")[0] as Int)[ctx.variable("i")[0] as Int])
                                                     ctx.continueTask()
                                                 }
 
@@ -173,155 +255,113 @@ object RelationTask {
                                                 .addVarToRelation("{{order}}", "ngram")
                                 )
                 )
+                .pipe(flushPostings("postings", INVERTED_NGRAM_INDEX_RELATION))
+                .thenDo { ctx ->
+                    val windows = ctx.variable(NgramWindows.WINDOWS_VAR)[0] as NgramWindows
+                    for (n in 1..windows.maxOrder) storeStarts(ctx.variable(ngramtokenizedContent)[0] as Node, windows, n)
+                    ctx.continueTask()
+                }
+                .thenDo(freeWindows())
+    }
+
+    /**
+     * Store, for segmented windows only, the starts of the windows of order n with the relation of their ids,
+     * so that the next update can tell which ones moved
+     */
+    private fun storeStarts(node: Node, windows: NgramWindows, n: Int) {
+        if (windows.segmented) node.set("$NGRAM_STARTS$n", Type.INT_ARRAY, windows.starts(n))
     }
 
+    /**
+     * ngrams of order i, by position, from the NgramWindows resolved beforehand
+     */
     private fun retrieveNgram(): Task {
         return newTask()
-                .declareVar("tokensfinal")
-                .ifThenElse({NgramConstants.ADD_BOS_EOS_TO_NGRAM},
-                        newTask()
-                                .then(getOrCreateTokensFromString(BOS))
-                                .addToVar("tokensfinal")
-                                .readVar("tokens")
-                                .addToVar("tokensfinal")
-                                .then(getOrCreateTokensFromString(EOS))
-                                .addToVar("tokensfinal")
-                        ,
-                        newTask()
-                                .readVar("tokens")
-                                .addToVar("tokensfinal")
-                )
                 .thenDo { ctx ->
                     val n = ctx.variable("i").get(0) as Int
-                    ctx.setVariable("n", n)
-                    val nbtokens = ctx.variable("tokensfinal").size()
-                    ctx.setVariable("totalNgram", nbtokens - n)
-                    ctx.continueTask()
+                    val windows = ctx.variable(NgramWindows.WINDOWS_VAR)[0] as NgramWindows
+                    val ids = windows.ids(n)
+                    if (ids.isEmpty()) {
+                        ctx.continueWith(ctx.newResult())
+                    } else {
+                        ctx.graph().lookupAll(ctx.world(), ctx.time(), ids, Callback<Array<Node>> { ngrams ->
+                            ctx.continueWith(ctx.wrap(ngrams))
+                        })
+                    }
                 }
-                .declareVar("ngramTokens")
-                .loop(
-                        "0",
-                        "{{totalNgram}}",
-                        newTask()
-                                .thenDo { ctx ->
-                                    val n = ctx.variable("n").get(0) as Int
-                                    val i = ctx.variable("i").get(0) as Int
-                                    val tokens = ctx.variable("tokensfinal").asArray().map { node -> node as Node }.toTypedArray()
-                                    ctx.setVariable("tokensVar", tokens.sliceArray(i..i + n - 1))
-                                    ctx.continueTask()
-                                }
-                                .then(getOrCreateNgramFromVar("tokensVar"))
-                                .addToVar("ngramTokens")
-                )
-                .readVar("ngramTokens")
     }
 
     private fun updateNgramsRelation(): Task {
         return newTask()
-                .then(readUpdatedTimeVar(tokenizedContent))
-                .traverse(TOKENIZE_CONTENT_TOKENS)
-                .setAsVar("tokens")
-                .loop("1", "$MAXIMUM_ORDER_OF_N",
-                        retrieveNgram()
-                                .setAsVar("newNgram")
+                .pipe(windowsOfContent())
+                .thenDo(NgramWindows.defineAsVars())
+                .loop("1", "{{${NgramWindows.EAGER_ORDER_VAR}}}",
+                        newTask()
                                 .then(readUpdatedTimeVar(ngramtokenizedContent))
                                 .thenDo { ctx ->
                                     val n = ctx.variable("i").get(0) as Int
                                     val node = ctx.resultAsNodes()[0]
                                     node.rephase()
                                     val relation = node.getOrCreate("$n", Type.RELATION) as Relation
-                                    val relationsId = relation.all().take(relation.size())
-                                    val newContent = ctx.variable("newNgram").asArray()
-                                    val newContentId = mutableListOf<Long>()
-                                    newContent.mapTo(newContentId) { (it as Node).id() }
-                                    val med = MinimunEditDistance(relationsId.toTypedArray(), newContentId.toTypedArray())
-                                    val path = med.path().toTypedArray()
-                                    ctx.setVariable("formerIndex", 0)
-                                    ctx.setVariable("newIndex", 0)
-                                    ctx.setVariable("relation", relation)
-                                    ctx.continueWith(ctx.wrap(path))
+                                    val relationsId = LongArray(relation.size(), { relation.get(it) })
+                                    val windows = ctx.variable(NgramWindows.WINDOWS_VAR)[0] as NgramWindows
+                                    val newContentId = windows.ids(n)
+                                    // the common prefix leaves relation and positions untouched, only the operations after it are replayed;
+                                    // segmented windows may move without their ids, the ones that did are found from the starts stored with them,
+                                    // all the positions being rewritten if these are missing (contents indexed before them) or the script over budget
+                                    val stored = if (windows.segmented) node.get("$NGRAM_STARTS$n") as IntArray? else null
+                                    val formerStarts = if (stored != null && stored.size == relationsId.size) stored else null
+                                    val bounded = if (windows.segmented && formerStarts == null) null
+                                    else MyersDiff.boundedScript(relationsId, newContentId, NGRAM_MAXIMUM_EDIT_DISTANCE)
+                                    val script = if (bounded == null || (windows.segmented && bounded.rewritten)) MyersDiff.rewriteScript(relationsId, newContentId)
+                                    else bounded
+                                    if (script.rewritten) {
+                                        // over budget, the relation is rebuilt at once rather than shifted op by op
+                                        node.remove("$n")
+                                        val rewritten = node.getOrCreate("$n", Type.RELATION) as Relation
+                                        for (id in newContentId) rewritten.add(id)
+                                    } else {
+                                        var newIndex = script.prefix
+                                        for (step in 0..script.size - 1) {
+                                            when (script.op(step)) {
+                                                MinimunEditDistance.Modification.Suppression -> relation.delete(newIndex)
+                                                MinimunEditDistance.Modification.Insertion -> relation.insert(newIndex++, script.id(step))
+                                                else -> newIndex++
+                                            }
+                                        }
+                                    }
+                                    storeStarts(node, windows, n)
+                                    val postings = PositionPostingBuffer()
+                                    val newStarts = if (windows.segmented) windows.starts(n) else null
+                                    ScriptReplay.replay(ctx, script, ctx.variable(tokenizedContentId)[0] as Long, ctx.variable(tokenizedContentType)[0] as String,
+                                            INVERTED_NGRAM_INDEX_RELATION, NGRAM_INVERTED_INDEX_RELATION, postings, null, formerStarts, newStarts) {
+                                        ctx.defineVariable("postings", postings)
+                                        ctx.continueTask()
+                                    }
                                 }
-                                .map(
-                                        thenDo {
-                                            ctx ->
-                                            val action = ctx.result()[0] as Pair<Long, MinimunEditDistance.Modification>
-                                            val relation = ctx.variable("relation")[0] as Relation
-                                            val newIndex = ctx.variable("newIndex")[0] as Int
-                                            val formerIndex = ctx.variable("formerIndex")[0] as Int
-                                            val relationNodeId = ctx.variable(tokenizedContentId)[0] as Long
-                                            val type = ctx.variable(tokenizedContentType)[0] as String
-                                            when (action.second) {
-                                                MinimunEditDistance.Modification.Suppression -> {
-                                                    relation.delete(newIndex)
-                                                    newTask().lookup("${action.first}")
-                                                            .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "$relationNodeId")
-                                                            .thenDo {
-                                                                ctx ->
-                                                                val node = ctx.resultAsNodes()[0]
-                                                                val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: throw RuntimeException("no position while delete")
-                                                                position.remove(formerIndex)
-                                                                node.set("position", Type.INT_ARRAY, position.toIntArray())
-                                                                ctx.continueTask()
-                                                            }.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
-                                                        ctx.setVariable("formerIndex", formerIndex + 1)
-                                                        ctx.continueTask()
-                                                    })
+                                .pipe(flushPostings("postings", INVERTED_NGRAM_INDEX_RELATION))
+                )
+                .thenDo(freeWindows())
+    }
 
-                                                }
-                                                MinimunEditDistance.Modification.Insertion -> {
-                                                    relation.insert(newIndex, action.first)
-                                                    newTask().lookup("${action.first}")
-                                                            .defineAsVar("token")
-                                                            .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "$relationNodeId")
-                                                            .then(
-                                                                    ifEmptyThen(
-                                                                            newTask()
-                                                                                    .then(
-                                                                                            executeAtWorldAndTime("0", "$BEGINNING_OF_TIME",
-                                                                                                    newTask()
-                                                                                                            .createNode()
-                                                                                                            .setAttribute(II_TC, Type.LONG, "$relationNodeId")
-                                                                                                            .setAttribute("type", Type.STRING, "$type")
-                                                                                                            .defineAsVar("invertedIndex")
-                                                                                                            .addVarToRelation(INVERTED_NGRAM_INDEX_RELATION, "token")
-                                                                                                            .readVar("token")
-                                                                                                            .addVarToRelation(NGRAM_INVERTED_INDEX_RELATION, "invertedIndex", II_TC)
-                                                                                                            .readVar("invertedIndex")
-                                                                                            )
-                                                                                    )
-                                                                    )
-                                                            )
-                                                            .thenDo {
-                                                                ctx ->
-                                                                val node = ctx.resultAsNodes()[0]
-                                                                val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: mutableListOf<Int>()
-                                                                position.add(newIndex)
-                                                                node.set("position", Type.INT_ARRAY, position.toIntArray())
-                                                                ctx.continueTask()
-                                                            }.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
-                                                        ctx.setVariable("newIndex", newIndex + 1)
-                                                        ctx.continueTask()
-                                                    })
-                                                }
-                                                MinimunEditDistance.Modification.Keep -> {
-                                                    newTask().lookup("${action.first}")
-                                                            .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "$relationNodeId")
-                                                            .thenDo { ctx ->
-                                                                val node = ctx.resultAsNodes()[0]
-                                                                val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: mutableListOf<Int>()
-                                                                position.remove(formerIndex)
-                                                                position.add(newIndex)
-                                                                node.set("position", Type.INT_ARRAY, position.toIntArray())
-                                                                ctx.continueTask()
-                                                            }.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
-                                                        ctx.setVariable("formerIndex", formerIndex + 1)
-                                                        ctx.setVariable("newIndex", newIndex + 1)
-                                                        ctx.continueTask()
-                                                    })
+    /**
+     * NgramWindows of the tc at the current time, resolved from its tokens
+     */
+    private fun windowsOfContent(): Task {
+        return newTask()
+                .then(readUpdatedTimeVar(tokenizedContent)) //read tc at the good time
+                .pipe(traverseTokens()) //traverse to get the tokens
+                .defineAsVar("tokens")
+                .pipe(NgramWindows.resolve("tokens"))
+    }
 
-                                                }
-                                            }
-                                        })
-                )
+    /**
+     * free the tokens of the NgramWindows in WINDOWS_VAR, once its ids and starts are written
+     */
+    private fun freeWindows(): ActionFunction {
+        return ActionFunction { ctx ->
+            (ctx.variable(NgramWindows.WINDOWS_VAR)[0] as NgramWindows).free()
+            ctx.continueTask()
+        }
     }
-}
\ No newline at end of file
+}
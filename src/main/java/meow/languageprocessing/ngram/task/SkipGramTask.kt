@@ -0,0 +1,223 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.*
+import greycat.Constants.BEGINNING_OF_TIME
+import greycat.Tasks.newTask
+import greycat.plugin.SchedulerAffinity
+import greycat.struct.Relation
+import meow.languageprocessing.ngram.NgramConstants.*
+import meow.languageprocessing.ngram.actions.NgramActions
+import meow.tokens.TokensConstants.*
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
+import meow.tokens.task.TokenizedContentVersions
+import meow.utils.EncodedPostings
+import meow.utils.InvertedIndexCache
+import meow.utils.PositionPostingBuffer
+import meow.utils.PositionPostingList
+import meow.utils.PostingIntersection
+import meow.utils.UtilTask.addVarToRelationLocked
+import meow.utils.UtilTask.checkNodesType
+import meow.utils.UtilTask.flushPostings
+import mylittleplugin.MyLittleActions.*
+
+/**
+ * k-skip-n-grams, see SkipGrams, either counted on the fly from the positions of their tokens or stored for a tokenized content
+ */
+object SkipGramTask {
+
+    /**
+     * Number of occurrences of the k-skip-n-gram made of the grams in all the tokenized contents,
+     * computed from the positions of the tokens without creating anything (BOS and EOS are not indexed, thus never found)
+     */
+    @JvmStatic
+    fun countSkipGram(grams: Array<String>, skip: Int): Task {
+        return newTask()
+                .pipe(retrieveTokens(grams, "skipTokens"))
+                .thenDo { ctx ->
+                    if (grams.isEmpty() || skip < 0) {
+                        ctx.endTask(ctx.result(), RuntimeException("A skip-gram has at least one gram and a positive or null skip"))
+                    } else if (ctx.variable("skipTokens").size() != grams.size) {
+                        ctx.continueWith(ctx.wrap(0))
+                    } else {
+                        val postings = arrayOfNulls<InvertedIndexCache.Postings>(grams.size)
+                        val readAll = newTask()
+                        for (j in 0..grams.size - 1) {
+                            readAll
+                                    .thenDo { subCtx -> subCtx.continueWith(subCtx.wrap(ctx.variable("skipTokens")[j])) }
+                                    .pipe(InvertedIndexCache.readPostings(WORD_INVERTED_INDEX_RELATION))
+                                    .thenDo { subCtx ->
+                                        postings[j] = subCtx.result()[0] as InvertedIndexCache.Postings
+                                        subCtx.continueTask()
+                                    }
+                        }
+                        readAll.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) {
+                            var count = 0
+                            for (tc in PostingIntersection.intersect(postings.map { it!!.ids() })) {
+                                val positions = Array(grams.size, { EncodedPostings.decode(postings[it]!!.byContent[tc]!!) })
+                                count += PostingIntersection.skipGramOccurrences(positions, skip)
+                            }
+                            ctx.continueWith(ctx.wrap(count))
+                        }
+                    }
+                }
+    }
+
+    /**
+     * Stored k-skip-n-gram made of the grams, empty result if it does not exist
+     */
+    @JvmStatic
+    fun retrieveSkipGram(grams: Array<String>, skip: Int): Task {
+        return newTask()
+                .pipe(retrieveTokens(grams, "skipTokens"))
+                .then(NgramActions.retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    val tokens = ctx.variable("skipTokens")
+                    if (tokens.size() != grams.size || ctx.result().size() == 0) {
+                        ctx.continueWith(ctx.newResult())
+                    } else {
+                        val ids = LongArray(tokens.size(), { (tokens[it] as Node).id() })
+                        SkipGrams.lookup(ctx.resultAsNodes()[0], ids, skip, Callback<Node?> { skipGram ->
+                            ctx.continueWith(if (skipGram == null) ctx.newResult() else ctx.wrap(skipGram))
+                        })
+                    }
+                }
+    }
+
+    /**
+     * Store the k-skip-n-grams of the tokenized contents in var at the time of the context, their ngrams being already updated.
+     * The positions of the skip-grams of each content are rewritten, the ones that disappeared since the previous update
+     * being emptied, and the ngram tokenized content keeps them in its SkipGrams.relationName relation.
+     */
+    @JvmStatic
+    fun updateSkipGramsFromVar(tokenizeContentVar: String, n: Int, skip: Int): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    if (n < 2 || skip < 0)
+                        ctx.endTask(ctx.result(), RuntimeException("A skip-gram has at least two tokens and a positive or null skip"))
+                    else
+                        ctx.continueTask()
+                }
+                .pipe(checkNodesType(tokenizeContentVar, NODE_TYPE_TOKENIZE_CONTENT))
+                .then(NgramActions.retrieveNgramMainNode())
+                .defineAsVar("skipMain")
+                .readVar(tokenizeContentVar)
+                .forEach(
+                        newTask()
+                                .defineAsVar("skipContent")
+                                .traverse(TOKENIZE_CONTENT_PLUGIN, NODE_TYPE, NODE_TYPE_NGRAM_TOKENIZED_CONTENT)
+                                .thenDo { ctx ->
+                                    if (ctx.result().size() == 0)
+                                        ctx.endTask(ctx.result(), RuntimeException("The ngrams of a tokenized content should be updated before its skip-grams"))
+                                    else
+                                        ctx.continueTask()
+                                }
+                                .defineAsVar("skipNgramTc")
+                                .thenDo { ctx -> updateSkipGrams(ctx, n, skip) }
+                )
+                .readVar(tokenizeContentVar)
+    }
+
+    private fun updateSkipGrams(ctx: TaskContext, n: Int, skip: Int) {
+        val ngramMain = ctx.variable("skipMain")[0] as Node
+        val content = ctx.variable("skipContent")[0] as Node
+        val ngramTc = ctx.variable("skipNgramTc")[0] as Node
+        TokenizedContentVersions.materialize(content, Callback { tokens ->
+            val occurrences = SkipGrams.extract(tokens, n, skip)
+            val ids = LongArray(occurrences.size)
+            val counter = ctx.graph().newCounter(occurrences.size)
+            for (i in 0..occurrences.size - 1) {
+                SkipGrams.lookup(ngramMain, occurrences[i].tokens, skip, Callback<Node?> { found ->
+                    val skipGram = found ?: SkipGrams.create(ngramMain, occurrences[i].tokens, skip)
+                    ids[i] = skipGram.id()
+                    skipGram.free()
+                    counter.count()
+                })
+            }
+            counter.then {
+                val relation = ngramTc.getOrCreate(SkipGrams.relationName(n, skip), Type.RELATION) as Relation
+                val current = ids.toHashSet()
+                val removed = relation.all().take(relation.size()).filter { !current.contains(it) }
+                relation.clear()
+                for (id in ids) relation.add(id)
+                val touched = ids + removed.toLongArray()
+                val contentId = content.id()
+                val type = content.get("type") as String? ?: NO_TYPE_TOKENIZE
+                newTask()
+                        .thenDo { subCtx ->
+                            subCtx.defineVariable("skipPostings", PositionPostingBuffer())
+                            subCtx.continueWith(subCtx.wrap(Array(touched.size, { it })))
+                        }
+                        .forEach(
+                                newTask()
+                                        .defineAsVar("skipIndex")
+                                        .thenDo { subCtx ->
+                                            subCtx.graph().lookup(subCtx.world(), subCtx.time(), touched[subCtx.result()[0] as Int], Callback<Node> { skipGram ->
+                                                subCtx.continueWith(subCtx.wrap(skipGram))
+                                            })
+                                        }
+                                        .defineAsVar("skipGram")
+                                        .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "$contentId")
+                                        .then(
+                                                ifEmptyThen(
+                                                        newTask().then(executeAtWorldAndTime("0", "$BEGINNING_OF_TIME",
+                                                                newTask()
+                                                                        .createNode()
+                                                                        .setAttribute(II_TC, Type.LONG, "$contentId")
+                                                                        .setAttribute(NODE_TYPE, Type.STRING, NODE_TYPE_INVERTED_INDEX)
+                                                                        .setAttribute("type", Type.STRING, type)
+                                                                        .defineAsVar("invertedIndex")
+                                                                        .addVarToRelation(INVERTED_NGRAM_INDEX_RELATION, "skipGram")
+                                                                        .readVar("skipGram")
+                                                                        .thenDo(addVarToRelationLocked(NGRAM_INVERTED_INDEX_RELATION, "invertedIndex", II_TC))
+                                                                        .readVar("invertedIndex")
+                                                        ))
+                                                )
+                                        )
+                                        .thenDo { subCtx ->
+                                            val index = subCtx.variable("skipIndex")[0] as Int
+                                            val postings = subCtx.variable("skipPostings")[0] as PositionPostingBuffer
+                                            postings.set(subCtx.resultAsNodes()[0].id(), if (index < occurrences.size) occurrences[index].positions else PositionPostingList())
+                                            subCtx.continueTask()
+                                        }
+                        )
+                        .pipe(flushPostings("skipPostings", INVERTED_NGRAM_INDEX_RELATION))
+                        .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                            if (res != null && res.exception() != null)
+                                ctx.endTask(res, res.exception())
+                            else
+                                ctx.continueTask()
+                        }
+            }
+        })
+    }
+
+    private fun retrieveTokens(grams: Array<String>, tokensVar: String): Task {
+        return newTask()
+                .then(retrieveVocabularyNode())
+                .defineAsVar("Vocabulary")
+                .declareVar(tokensVar)
+                .inject(grams)
+                .forEach(
+                        newTask()
+                                .defineAsVar("gram")
+                                .readVar("Vocabulary")
+                                .traverse(VOCABULARY_TOKEN_INDEX, TOKEN_NAME, "{{gram}}")
+                                .addToVar(tokensVar)
+                )
+    }
+}
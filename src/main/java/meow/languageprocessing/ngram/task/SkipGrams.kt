@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Callback
+import greycat.Constants.BEGINNING_OF_TIME
+import greycat.Node
+import greycat.Type
+import greycat.struct.LongLongArrayMap
+import greycat.struct.Relation
+import meow.languageprocessing.ngram.NgramConstants.*
+import meow.tokens.TokensConstants.NODE_TYPE
+import meow.utils.PositionPostingList
+
+/**
+ * k-skip-n-grams: the sequences of n tokens taken in order whose gaps add up to at most k skipped tokens,
+ * contiguous ngrams included. Their nodes hold the same GRAMS_TOKENS relation and "order" attribute as the ngrams,
+ * plus NGRAM_SKIP, and their inverted indexes follow the ngram layout, positions being the start of each occurrence
+ * (once per gap pattern), so that NgramCorpusNode counts them like ngrams.
+ */
+object SkipGrams {
+
+    class Occurrences(val tokens: LongArray, val positions: PositionPostingList)
+
+    /**
+     * Every k-skip-n-gram of the tokens with its start positions, in increasing order
+     */
+    @JvmStatic
+    fun extract(tokens: LongArray, n: Int, skip: Int): List<Occurrences> {
+        val byTokens = LinkedHashMap<List<Long>, Occurrences>()
+        val current = LongArray(n)
+        fun choose(start: Int, last: Int, depth: Int, budget: Int) {
+            if (depth == n) {
+                val key = current.toList()
+                var occurrences = byTokens[key]
+                if (occurrences == null) {
+                    occurrences = Occurrences(current.copyOf(), PositionPostingList())
+                    byTokens.put(key, occurrences)
+                }
+                occurrences.positions.add(start)
+                return
+            }
+            for (position in last + 1..Math.min(tokens.size - 1, last + 1 + budget)) {
+                current[depth] = tokens[position]
+                choose(start, position, depth + 1, budget - (position - last - 1))
+            }
+        }
+        for (start in 0..tokens.size - 1) {
+            current[0] = tokens[start]
+            choose(start, start, 1, skip)
+        }
+        return byTokens.values.toList()
+    }
+
+    /**
+     * name of the relation of an ngram tokenized content to its k-skip-n-grams
+     */
+    @JvmStatic
+    fun relationName(n: Int, skip: Int): String {
+        return "skip${n}_$skip"
+    }
+
+    /**
+     * NgramKeyIndex hash of the tokens extended by the skip, token ids being positive it never matches an ngram
+     */
+    @JvmStatic
+    fun hash(tokens: LongArray, skip: Int): Long {
+        return NgramKeyIndex.extend(NgramKeyIndex.hash(tokens, 0, tokens.size), -(skip + 1).toLong())
+    }
+
+    /**
+     * Skip-gram of these tokens and skip, null if it does not exist yet
+     */
+    @JvmStatic
+    fun lookup(ngramMain: Node, tokens: LongArray, skip: Int, done: Callback<Node?>) {
+        val index = ngramMain.get(NGRAM_SKIPGRAM_HASH_INDEX) as LongLongArrayMap?
+        val candidates = index?.get(hash(tokens, skip)) ?: LongArray(0)
+        if (candidates.isEmpty()) {
+            done.on(null)
+            return
+        }
+        ngramMain.graph().lookupAll(ngramMain.world(), ngramMain.time(), candidates, Callback<Array<Node>> { skipGrams ->
+            var found: Node? = null
+            for (skipGram in skipGrams) {
+                if (found == null && skipGram.get(NGRAM_SKIP) == skip && NgramKeyIndex.sameTokens(skipGram, tokens, 0, tokens.size)) found = skipGram else skipGram.free()
+            }
+            done.on(found)
+        })
+    }
+
+    /**
+     * Create the skip-gram at world 0 and the beginning of time, like the ngrams, and index it on the ngram main node
+     */
+    @JvmStatic
+    fun create(ngramMain: Node, tokens: LongArray, skip: Int): Node {
+        val skipGram = ngramMain.graph().newNode(0, BEGINNING_OF_TIME)
+        skipGram.setTimeSensitivity(-1, 0)
+        skipGram.set(NODE_TYPE, Type.STRING, NODE_TYPE_SKIPGRAM)
+        skipGram.set("order", Type.INT, tokens.size)
+        skipGram.set(NGRAM_SKIP, Type.INT, skip)
+        val grams = skipGram.getOrCreate(GRAMS_TOKENS, Type.RELATION) as Relation
+        for (token in tokens) grams.add(token)
+        ngramMain.addToRelation(NGRAM_SKIPGRAM_RELATION, skipGram)
+        val index = ngramMain.getOrCreate(NGRAM_SKIPGRAM_HASH_INDEX, Type.LONG_TO_LONG_ARRAY_MAP) as LongLongArrayMap
+        index.put(hash(tokens, skip), skipGram.id())
+        return skipGram
+    }
+}
@@ -91,6 +91,19 @@ public class TokenPlugin implements Plugin {
                     }
                 });
 
+        graph.actionRegistry()
+                .declaration(TokenActionNames.CREATE_OR_UPDATE_TOKENIZE_RELATIONS_TO_NODES_PAR)
+                .setParams(Type.STRING, Type.STRING, Type.STRING_ARRAY)
+                .setDescription("update or create, in parallel, a tokenized Content relation in one or several nodes with the given index")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        if (params[2] != null) {
+                            return uocTokenizeRelationsToNodesPar((String) params[0], (String) params[1], (String[]) params[2]);
+                        } else return null;
+                    }
+                });
+
         graph.actionRegistry()
                 .declaration(TokenActionNames.REBUILDING_TOKENIZE_CONTENTS)
                 .setParams(Type.STRING)
@@ -102,6 +115,50 @@ public class TokenPlugin implements Plugin {
                     }
                 });
 
+        graph.actionRegistry()
+                .declaration(TokenActionNames.BULK_UPDATE_OR_CREATE_TOKENIZE_RELATIONS)
+                .setParams(Type.STRING, Type.STRING, Type.STRING, Type.STRING, Type.STRING, Type.STRING, Type.INT)
+                .setDescription("Bulk load, by batch, tokenized contents. Nodes, relations and contents vars must be of the same size: 1)tokenizer type, 2)preprocessor, 3)type of content, 4)nodes, 5)relation names, 6)contents, 7)batch size")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return bulkUocTokenizeRelations((String) params[0], (String) params[1], (String) params[2], (String) params[3], (String) params[4], (String) params[5], (int) params[6]);
+                    }
+                });
+
+        graph.actionRegistry()
+                .declaration(TokenActionNames.CONFIGURE_CHECKPOINT_INTERVAL)
+                .setParams(Type.INT)
+                .setDescription("set the number of versions between two full copies of the tokens of a tokenized content, the others only keeping their patch")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return configureCheckpointInterval((int) params[0]);
+                    }
+                });
+
+        graph.actionRegistry()
+                .declaration(TokenActionNames.PHRASE_QUERY)
+                .setParams(Type.STRING, Type.STRING, Type.STRING, Type.STRING)
+                .setDescription("Put in result the tokenized contents containing an exact phrase at the current time: 1)tokenizer type, 2)preprocessor, 3)phrase, 4)optional var of the tokenized contents to search in")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return phraseQuery((String) params[0], (String) params[1], (String) params[2], (String) params[3]);
+                    }
+                });
+
+        graph.actionRegistry()
+                .declaration(TokenActionNames.TOP_K_BM25)
+                .setParams(Type.STRING, Type.STRING, Type.STRING, Type.INT, Type.STRING)
+                .setDescription("Put in result the k tokenized contents best matching a query according to BM25, their scores in the var scores: 1)tokenizer type, 2)preprocessor, 3)query, 4)k, 5)optional var of the tokenized contents to rank")
+                .setFactory(new ActionFactory() {
+                    @Override
+                    public Action create(Object[] params) {
+                        return topKBm25((String) params[0], (String) params[1], (String) params[2], (int) params[3], (String) params[4]);
+                    }
+                });
+
 
     }
 
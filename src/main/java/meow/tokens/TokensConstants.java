@@ -27,15 +27,42 @@ public final class TokensConstants {
     public final static String VOCABULARY_TOKEN_INDEX = "Token";
 
     public final static String TOKEN_NAME = "name";
+    public final static String TOKEN_MAX_TF = "maxTf";
+
+    /**
+     * Time sensitive node holding the collection statistics, the vocabulary node itself being timeless
+     */
+    public final static String VOCABULARY_STATISTICS = "statistics";
+    public final static String STATISTICS_CONTENT_COUNT = "contentCount";
+    public final static String STATISTICS_TOTAL_LENGTH = "totalLength";
+    public final static String STATISTICS_EMPTY_CONTENTS = "emptyContents";
+    public final static String VOCABULARY_CHECKPOINT_INTERVAL = "checkpointInterval";
 
     public final static String TOKENIZE_CONTENT_NAME = "name";
     public final static String TOKENIZE_CONTENT_RELATION = "tokenizedContents";
     public final static String TOKENIZE_CONTENT_PLUGIN = "plugin";
     public final static String TOKENIZE_CONTENT_PATCH = "patch";
+    /**
+     * Encoding of the keys of TOKENIZE_CONTENT_PATCH, absent on the patches written before suppressions were shifted by one
+     */
+    public final static String TOKENIZE_CONTENT_PATCH_FORMAT = "patchFormat";
 
     public final static String TOKENIZE_CONTENT_FATHER = "father";
 
     public final static String TOKENIZE_CONTENT_TOKENS = "tokens";
+    public final static String TOKENIZE_CONTENT_VERSION = "version";
+    public final static String TOKENIZE_CONTENT_FINGERPRINT = "fingerprint";
+    public final static String TOKENIZE_CONTENT_LENGTH = "length";
+    /**
+     * The full tokens relation is only stored every VOCABULARY_CHECKPOINT_INTERVAL versions, this interval by default,
+     * 1 keeps it at every version
+     */
+    public final static int TOKENIZE_CONTENT_CHECKPOINT_INTERVAL = 1;
+    /**
+     * Beyond this number of edits between two versions of a content,
+     * the update rewrites everything between their common prefix and suffix instead of looking for a minimal diff
+     */
+    public final static int MAXIMUM_EDIT_DISTANCE = 1000;
 
     public final static String WORD_INVERTED_INDEX_RELATION = "invertedIndex";
     public final static String INVERTED_WORD_INDEX_RELATION = "token";
@@ -49,5 +76,7 @@ public final class TokensConstants {
     public final static String NODE_TYPE_INVERTED_INDEX = "invertedIndex";
 
     public final static String II_TC = "idTc";
+    public final static String INVERTED_INDEX_POSITION = "position";
+    public final static boolean COMPRESSED_POSITIONS = true;
 
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.actions;
+
+import greycat.*;
+import greycat.internal.task.TaskHelper;
+import greycat.plugin.SchedulerAffinity;
+import greycat.struct.Buffer;
+import meow.tokens.task.BulkIngestionTask;
+
+public class ActionBulkUpdateOrCreateTokenizeRelations implements Action {
+
+    private final String _tokenizer;
+    private final String _preprocessor;
+    private final String _type;
+    private final String _nodesVar;
+    private final String _relationsVar;
+    private final String _contentsVar;
+    private final int _batchSize;
+
+    public ActionBulkUpdateOrCreateTokenizeRelations(String p_tokenizer, String p_preprocessor, String p_type, String p_nodesVar, String p_relationsVar, String p_contentsVar, int p_batchSize) {
+        this._tokenizer = p_tokenizer;
+        if (p_preprocessor == null)
+            this._preprocessor = "";
+        else
+            this._preprocessor = p_preprocessor;
+        this._type = p_type;
+        this._nodesVar = p_nodesVar;
+        this._relationsVar = p_relationsVar;
+        this._contentsVar = p_contentsVar;
+        this._batchSize = p_batchSize;
+    }
+
+    @Override
+    public void eval(TaskContext ctx) {
+        BulkIngestionTask.bulkUpdateOrCreateTokenizeRelations(_tokenizer, _preprocessor, _type, _nodesVar, _relationsVar, _contentsVar, _batchSize)
+                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD,
+                        new Callback<TaskResult>() {
+                            public void on(TaskResult res) {
+                                Exception exceptionDuringTask = null;
+                                if (res != null) {
+                                    if (res.output() != null) {
+                                        ctx.append(res.output());
+                                    }
+                                    if (res.exception() != null) {
+                                        exceptionDuringTask = res.exception();
+                                    }
+                                }
+                                if (exceptionDuringTask != null) {
+                                    ctx.endTask(res, exceptionDuringTask);
+                                } else {
+                                    ctx.continueWith(res);
+                                }
+                            }
+                        });
+    }
+
+    @Override
+    public void serialize(Buffer builder) {
+        builder.writeString(TokenActionNames.BULK_UPDATE_OR_CREATE_TOKENIZE_RELATIONS);
+        builder.writeChar(Constants.TASK_PARAM_OPEN);
+        TaskHelper.serializeString(_tokenizer, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_preprocessor, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_type, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_nodesVar, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_relationsVar, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_contentsVar, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        builder.writeString(Integer.toString(_batchSize));
+        builder.writeChar(Constants.TASK_PARAM_CLOSE);
+
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.actions;
+
+import greycat.*;
+import greycat.internal.task.TaskHelper;
+import greycat.plugin.SchedulerAffinity;
+import greycat.struct.Buffer;
+import meow.tokens.task.QueryTask;
+
+public class ActionPhraseQuery implements Action {
+
+    private final String _tokenizer;
+    private final String _preprocessor;
+    private final String _phrase;
+    private final String _restrictionVar;
+
+    public ActionPhraseQuery(String p_tokenizer, String p_preprocessor, String p_phrase, String p_restrictionVar) {
+        this._tokenizer = p_tokenizer;
+        if (p_preprocessor == null)
+            this._preprocessor = "";
+        else
+            this._preprocessor = p_preprocessor;
+        this._phrase = p_phrase;
+        if (p_restrictionVar == null)
+            this._restrictionVar = "";
+        else
+            this._restrictionVar = p_restrictionVar;
+    }
+
+    public void eval(final TaskContext ctx) {
+        QueryTask.phraseQuery(_tokenizer, _preprocessor, _phrase, _restrictionVar.isEmpty() ? null : _restrictionVar)
+                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD,
+                        new Callback<TaskResult>() {
+                            public void on(TaskResult res) {
+                                Exception exceptionDuringTask = null;
+                                if (res != null) {
+                                    if (res.output() != null) {
+                                        ctx.append(res.output());
+                                    }
+                                    if (res.exception() != null) {
+                                        exceptionDuringTask = res.exception();
+                                    }
+                                }
+                                if (exceptionDuringTask != null) {
+                                    ctx.endTask(res, exceptionDuringTask);
+                                } else {
+                                    ctx.continueWith(res);
+                                }
+                            }
+                        });
+    }
+
+    public void serialize(Buffer builder) {
+        builder.writeString(TokenActionNames.PHRASE_QUERY);
+        builder.writeChar(Constants.TASK_PARAM_OPEN);
+        TaskHelper.serializeString(_tokenizer, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_preprocessor, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_phrase, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_restrictionVar, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_CLOSE);
+    }
+
+}
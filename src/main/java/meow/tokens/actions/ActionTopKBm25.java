@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.actions;
+
+import greycat.*;
+import greycat.internal.task.TaskHelper;
+import greycat.plugin.SchedulerAffinity;
+import greycat.struct.Buffer;
+import meow.tokens.task.RankingTask;
+
+public class ActionTopKBm25 implements Action {
+
+    private final String _tokenizer;
+    private final String _preprocessor;
+    private final String _query;
+    private final int _k;
+    private final String _restrictionVar;
+
+    public ActionTopKBm25(String p_tokenizer, String p_preprocessor, String p_query, int p_k, String p_restrictionVar) {
+        this._tokenizer = p_tokenizer;
+        if (p_preprocessor == null)
+            this._preprocessor = "";
+        else
+            this._preprocessor = p_preprocessor;
+        this._query = p_query;
+        this._k = p_k;
+        if (p_restrictionVar == null)
+            this._restrictionVar = "";
+        else
+            this._restrictionVar = p_restrictionVar;
+    }
+
+    public void eval(final TaskContext ctx) {
+        RankingTask.topKBm25(_tokenizer, _preprocessor, _query, _k, _restrictionVar.isEmpty() ? null : _restrictionVar)
+                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD,
+                        new Callback<TaskResult>() {
+                            public void on(TaskResult res) {
+                                Exception exceptionDuringTask = null;
+                                if (res != null) {
+                                    if (res.output() != null) {
+                                        ctx.append(res.output());
+                                    }
+                                    if (res.exception() != null) {
+                                        exceptionDuringTask = res.exception();
+                                    }
+                                }
+                                if (exceptionDuringTask != null) {
+                                    ctx.endTask(res, exceptionDuringTask);
+                                } else {
+                                    ctx.continueWith(res);
+                                }
+                            }
+                        });
+    }
+
+    public void serialize(Buffer builder) {
+        builder.writeString(TokenActionNames.TOP_K_BM25);
+        builder.writeChar(Constants.TASK_PARAM_OPEN);
+        TaskHelper.serializeString(_tokenizer, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_preprocessor, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_query, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        builder.writeString(Integer.toString(_k));
+        builder.writeChar(Constants.TASK_PARAM_SEP);
+        TaskHelper.serializeString(_restrictionVar, builder, true);
+        builder.writeChar(Constants.TASK_PARAM_CLOSE);
+    }
+
+}
@@ -22,5 +22,10 @@ public class TokenActionNames {
     public static String TOKENIZE_STRINGS_USING_TOKENIZER = "tokenizeStringsUsingTokenizer";
     public static String INITIALIZE_VOCABULARY = "initializeVocabulary";
     public static String CREATE_OR_UPDATE_TOKENIZE_RELATIONS_TO_NODES = "uocTokenizeRelationsToNodes";
+    public static String CREATE_OR_UPDATE_TOKENIZE_RELATIONS_TO_NODES_PAR = "uocTokenizeRelationsToNodesPar";
     public static String REBUILDING_TOKENIZE_CONTENTS = "rebuildingTokenizeContents";
+    public static String BULK_UPDATE_OR_CREATE_TOKENIZE_RELATIONS = "bulkUocTokenizeRelations";
+    public static String PHRASE_QUERY = "phraseQuery";
+    public static String TOP_K_BM25 = "topKBm25";
+    public static String CONFIGURE_CHECKPOINT_INTERVAL = "configureCheckpointInterval";
 }
@@ -39,7 +39,27 @@ public class TokenActions {
         return new ActionCreateOrUpdateTokenizeRelationsToNodes(tokenizersVar, nodesVar, relationList);
     }
 
+    public static Action uocTokenizeRelationsToNodesPar(String tokenizersVar, String nodesVar, String... relationList) {
+        return new ActionCreateOrUpdateTokenizeRelationsToNodesPar(tokenizersVar, nodesVar, relationList);
+    }
+
     public static Action rebuildingTokenizedContents(String tokenizedContentsVar) {
         return new ActionRebuildingTokenizeContent(tokenizedContentsVar);
     }
+
+    public static Action bulkUocTokenizeRelations(String tokenizer, String preprocessor, String type, String nodesVar, String relationsVar, String contentsVar, int batchSize) {
+        return new ActionBulkUpdateOrCreateTokenizeRelations(tokenizer, preprocessor, type, nodesVar, relationsVar, contentsVar, batchSize);
+    }
+
+    public static Action phraseQuery(String tokenizer, String preprocessor, String phrase, String restrictionVar) {
+        return new ActionPhraseQuery(tokenizer, preprocessor, phrase, restrictionVar);
+    }
+
+    public static Action topKBm25(String tokenizer, String preprocessor, String query, int k, String restrictionVar) {
+        return new ActionTopKBm25(tokenizer, preprocessor, query, k, restrictionVar);
+    }
+
+    public static Action configureCheckpointInterval(int interval) {
+        return new ActionConfigureCheckpointInterval(interval);
+    }
 }
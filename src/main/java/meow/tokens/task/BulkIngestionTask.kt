@@ -0,0 +1,229 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import greycat.*
+import greycat.Constants.BEGINNING_OF_TIME
+import greycat.Tasks.newTask
+import greycat.plugin.SchedulerAffinity
+import greycat.struct.Relation
+import meow.tokens.TokensConstants.*
+import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+import meow.tokens.tokenization.PreProcessorFactory
+import meow.tokens.tokenization.TokenizerFactory
+import meow.tokens.tokenization.tokenizer.Tokenizer
+import meow.utils.ContentFingerprint
+import meow.utils.InvertedIndexCache
+import meow.utils.PositionPostingBuffer
+import meow.utils.PositionPostingList
+
+/**
+ * Bulk loading of (node, relation name, content) triples.
+ * Tokens are resolved once per batch, new tokenized contents and their inverted indexes are built directly
+ * through the node api, and the graph is saved after every batch.
+ * Tokenized contents that already exist, or that a former entry of the batch created, are updated through RelationTask,
+ * the entries being applied in order, so the resulting graph is the same as with updateOrCreateTokenizeRelationsToNodes.
+ */
+object BulkIngestionTask {
+
+    @JvmStatic
+    fun bulkUpdateOrCreateTokenizeRelations(tokenizer: String, preprocessor: String?, type: String?, nodesVar: String, relationsVar: String, contentsVar: String, batchSize: Int): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    val nbNodes = ctx.variable(nodesVar).size()
+                    if (batchSize <= 0)
+                        ctx.endTask(ctx.result(), RuntimeException("The size of a batch should be positive"))
+                    else if (nbNodes != ctx.variable(relationsVar).size() || nbNodes != ctx.variable(contentsVar).size())
+                        ctx.endTask(ctx.result(), RuntimeException("The number of nodes, relations and contents are not similar!"))
+                    else {
+                        ctx.setVariable("lastBatch", (nbNodes + batchSize - 1) / batchSize - 1)
+                        ctx.continueTask()
+                    }
+                }
+                .ifThen({ ctx -> ctx.variable("lastBatch")[0] as Int >= 0 },
+                        newTask().loop("0", "{{lastBatch}}",
+                                newTask()
+                                        .thenDo { ctx ->
+                                            val start = (ctx.variable("i")[0] as Int) * batchSize
+                                            val end = Math.min(start + batchSize, ctx.variable(nodesVar).size())
+                                            val factory = TokenizerFactory(tokenizer)
+                                            factory.tokenPreprocess = PreProcessorFactory.create(preprocessor)
+                                            val batch = Batch()
+                                            for (j in start..end - 1) {
+                                                batch.add(ctx.variable(nodesVar)[j] as Node,
+                                                        ctx.variable(relationsVar)[j] as String,
+                                                        factory.create(ctx.variable(contentsVar)[j] as String, type))
+                                            }
+                                            ctx.setVariable(batchVar, batch)
+                                            newTask()
+                                                    .then(getOrCreateTokensFromString(*batch.distinctTokens()))
+                                                    .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD
+                                                    ) { res -> ctx.continueWith(res) }
+                                        }
+                                        .defineAsVar("batchTokens")
+                                        .thenDo { ctx ->
+                                            val batch = ctx.variable(batchVar)[0] as Batch
+                                            batch.resolve(ctx.resultAsNodes())
+                                            val counter = ctx.graph().newCounter(batch.entries.size)
+                                            for (entry in batch.entries) {
+                                                entry.node.relation(TOKENIZE_CONTENT_RELATION, { tokenizedContents ->
+                                                    entry.existing = tokenizedContents.any { it.get(TOKENIZE_CONTENT_NAME) == entry.relation }
+                                                    tokenizedContents.map(Node::free)
+                                                    counter.count()
+                                                })
+                                            }
+                                            counter.then {
+                                                batch.markDuplicates()
+                                                ctx.continueTask()
+                                            }
+                                        }
+                                        .pipe(CollectionStatistics.getOrCreateStatisticsNode())
+                                        .defineAsVar(bulkStatisticsVar)
+                                        .thenDo { ctx ->
+                                            // entries are applied in order, like the sequential path would
+                                            val batch = ctx.variable(batchVar)[0] as Batch
+                                            val statistics = ctx.variable(bulkStatisticsVar)[0] as Node
+                                            val apply = newTask()
+                                            for (entry in batch.entries) {
+                                                if (!entry.existing) {
+                                                    apply.thenDo { subCtx ->
+                                                        createTokenizedContent(subCtx, batch, entry, statistics)
+                                                        subCtx.continueTask()
+                                                    }
+                                                } else {
+                                                    apply.thenDo { subCtx ->
+                                                        subCtx.defineVariable(bulkTokenizerVar, entry.tokenizer)
+                                                        subCtx.defineVariable(bulkNodeVar, entry.node)
+                                                        subCtx.continueTask()
+                                                    }.pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes(bulkTokenizerVar, bulkNodeVar, arrayOf(entry.relation)))
+                                                }
+                                            }
+                                            apply.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                                                if (res != null && res.exception() != null)
+                                                    ctx.endTask(res, res.exception())
+                                                else
+                                                    ctx.continueTask()
+                                            }
+                                        }
+                                        .thenDo { ctx ->
+                                            // commit the batch
+                                            ctx.graph().save { ctx.continueTask() }
+                                        }
+                        )
+                )
+                .readVar(nodesVar)
+    }
+
+    private fun createTokenizedContent(ctx: TaskContext, batch: Batch, entry: Entry, statistics: Node) {
+        val graph = ctx.graph()
+        val tokenizedContent = graph.newNode(ctx.world(), ctx.time())
+        val tcId = tokenizedContent.id()
+        tokenizedContent.getOrCreate(TOKENIZE_CONTENT_PATCH, Type.LONG_TO_LONG_MAP)
+        tokenizedContent.set(TOKENIZE_CONTENT_PATCH_FORMAT, Type.INT, TokenizedContentVersions.PATCH_FORMAT)
+        tokenizedContent.addToRelation(TOKENIZE_CONTENT_FATHER, entry.node)
+        tokenizedContent.set(TOKENIZE_CONTENT_NAME, Type.STRING, entry.relation)
+        tokenizedContent.set(NODE_TYPE, Type.STRING, NODE_TYPE_TOKENIZE_CONTENT)
+        tokenizedContent.set(TOKENIZE_CONTENT_FINGERPRINT, Type.LONG, ContentFingerprint.of(entry.tokens))
+        entry.node.addToRelation(TOKENIZE_CONTENT_RELATION, tokenizedContent, TOKENIZE_CONTENT_NAME)
+
+        val relation = tokenizedContent.getOrCreate(TOKENIZE_CONTENT_TOKENS, Type.RELATION) as Relation
+        val occurrences = PositionPostingBuffer()
+        val tokenIds = entry.tokenIds
+        for (i in 0..tokenIds.size - 1) {
+            relation.add(tokenIds[i])
+            occurrences.append(tokenIds[i], i)
+        }
+        for (tokenId in occurrences.ids()) {
+            val token = batch.token(tokenId)
+            val invertedIndex = graph.newNode(0, BEGINNING_OF_TIME)
+            invertedIndex.set(II_TC, Type.LONG, tcId)
+            invertedIndex.set(NODE_TYPE, Type.STRING, NODE_TYPE_INVERTED_INDEX)
+            invertedIndex.set("type", Type.STRING, entry.type)
+            invertedIndex.addToRelation(INVERTED_WORD_INDEX_RELATION, token)
+            token.addToRelation(WORD_INVERTED_INDEX_RELATION, invertedIndex, II_TC)
+            val positions = occurrences.get(tokenId)!!
+            PositionPostingList.write(invertedIndex, positions)
+            InvertedIndexCache.invalidate(graph, tokenId)
+            CollectionStatistics.raiseMaxTf(token, positions.size)
+            invertedIndex.free()
+        }
+        tokenizedContent.set("type", Type.STRING, entry.type)
+        CollectionStatistics.setContentLength(statistics, tokenizedContent, tokenIds.size)
+        entry.tokenizedContent = tcId
+        tokenizedContent.free()
+    }
+
+    class Entry(val node: Node, val relation: String, val tokenizer: Tokenizer) {
+        val tokens: List<String> = tokenizer.getTokens()
+        val type: String = tokenizer.getTypeOfToken() ?: NO_TYPE_TOKENIZE
+        var tokenIds: LongArray = LongArray(0)
+        var existing: Boolean = false
+        var tokenizedContent: Long = -1
+    }
+
+    class Batch {
+        val entries = mutableListOf<Entry>()
+        private val distinct = LinkedHashMap<String, Int>()
+        private val tokensById = HashMap<Long, Node>()
+
+        fun add(node: Node, relation: String, tokenizer: Tokenizer) {
+            val entry = Entry(node, relation, tokenizer)
+            for (token in entry.tokens) {
+                if (!distinct.containsKey(token)) distinct.put(token, distinct.size)
+            }
+            entries.add(entry)
+        }
+
+        /**
+         * an entry with the same node and relation as a former one of the batch updates the tokenized content created by it
+         */
+        fun markDuplicates() {
+            val created = HashSet<String>()
+            for (entry in entries) {
+                val key = "${entry.node.id()};${entry.relation}"
+                if (created.contains(key)) entry.existing = true
+                else if (!entry.existing) created.add(key)
+            }
+        }
+
+                fun distinctTokens(): Array<String> {
+            return distinct.keys.toTypedArray()
+        }
+
+        /**
+         * tokens are the result of getOrCreateTokensFromString on distinctTokens, in the same order
+         */
+        fun resolve(tokens: TaskResult<Node>) {
+            val ids = LongArray(tokens.size())
+            for (i in 0..tokens.size() - 1) {
+                ids[i] = tokens[i].id()
+                tokensById.put(ids[i], tokens[i])
+            }
+            for (entry in entries) {
+                entry.tokenIds = LongArray(entry.tokens.size, { ids[distinct[entry.tokens[it]]!!] })
+            }
+        }
+
+        fun token(id: Long): Node {
+            return tokensById[id]!!
+        }
+    }
+
+    private val batchVar = "bulkBatch"
+    private val bulkTokenizerVar = "bulkTokenizer"
+    private val bulkNodeVar = "bulkNode"
+    private val bulkStatisticsVar = "bulkStatistics"
+}
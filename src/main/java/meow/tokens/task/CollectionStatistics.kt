@@ -0,0 +1,146 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import greycat.Constants
+import greycat.Node
+import greycat.Task
+import greycat.Tasks.newTask
+import greycat.Type
+import meow.tokens.TokensConstants.*
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
+
+/**
+ * Statistics needed by ranked retrieval, maintained by the relation tasks:
+ * the maximum term frequency of every token, the length of every tokenized content, kept on the content at the time
+ * of its version, and the number of contents and their total length at every time, kept on a time sensitive node
+ * linked to the vocabulary. Contents should thus be updated in time order, like their relations.
+ * Tokens and the statistics node are shared nodes, they are modified holding their external lock.
+ */
+object CollectionStatistics {
+
+    /**
+     * maxTf is an upper bound, it is only raised when a term frequency exceeds it
+     */
+    @JvmStatic
+    fun raiseMaxTf(token: Node, tf: Int) {
+        val resolver = token.graph().resolver()
+        resolver.externalLock(token)
+        try {
+            if (tf > maxTf(token)) token.set(TOKEN_MAX_TF, Type.INT, tf)
+        } finally {
+            resolver.externalUnlock(token)
+        }
+    }
+
+    @JvmStatic
+    fun maxTf(token: Node): Int {
+        return token.get(TOKEN_MAX_TF) as Int? ?: 0
+    }
+
+    /**
+     * Set the length of a tokenized content at its current time and update the counters of the statistics node
+     */
+    @JvmStatic
+    fun setContentLength(statistics: Node, tokenizedContent: Node, length: Int) {
+        val former = contentLength(tokenizedContent)
+        tokenizedContent.set(TOKENIZE_CONTENT_LENGTH, Type.INT, length)
+        val resolver = statistics.graph().resolver()
+        resolver.externalLock(statistics)
+        try {
+            if (former == null) statistics.set(STATISTICS_CONTENT_COUNT, Type.LONG, contentCount(statistics) + 1)
+            statistics.set(STATISTICS_TOTAL_LENGTH, Type.LONG, totalLength(statistics) - (former ?: 0) + length)
+            val empty = (if (length == 0) 1 else 0) - (if (former == 0) 1 else 0)
+            if (empty != 0) statistics.set(STATISTICS_EMPTY_CONTENTS, Type.LONG, emptyContents(statistics) + empty)
+        } finally {
+            resolver.externalUnlock(statistics)
+        }
+    }
+
+    /**
+     * @return the length of the tokenized content at its current time, null if it was indexed before lengths were kept
+     */
+    @JvmStatic
+    fun contentLength(tokenizedContent: Node): Int? {
+        return tokenizedContent.get(TOKENIZE_CONTENT_LENGTH) as Int?
+    }
+
+    @JvmStatic
+    fun contentCount(statistics: Node): Long {
+        return statistics.get(STATISTICS_CONTENT_COUNT) as Long? ?: 0L
+    }
+
+    @JvmStatic
+    fun totalLength(statistics: Node): Long {
+        return statistics.get(STATISTICS_TOTAL_LENGTH) as Long? ?: 0L
+    }
+
+    @JvmStatic
+    fun emptyContents(statistics: Node): Long {
+        return statistics.get(STATISTICS_EMPTY_CONTENTS) as Long? ?: 0L
+    }
+
+    /**
+     * The statistics node at the current world and time, empty result if no length was ever recorded
+     */
+    @JvmStatic
+    fun retrieveStatisticsNode(): Task {
+        return newTask()
+                .then(retrieveVocabularyNode())
+                .traverse(VOCABULARY_STATISTICS)
+    }
+
+    /**
+     * The statistics node at the current world and time, created if needed
+     */
+    @JvmStatic
+    fun getOrCreateStatisticsNode(): Task {
+        return newTask()
+                .then(retrieveVocabularyNode())
+                .thenDo { ctx ->
+                    val vocabulary = ctx.resultAsNodes()[0]
+                    val resolver = ctx.graph().resolver()
+                    resolver.externalLock(vocabulary)
+                    try {
+                        if (vocabulary.get(VOCABULARY_STATISTICS) == null) {
+                            // created at the beginning of time so that it can be reached whatever the order of the first updates
+                            val statistics = ctx.graph().newNode(ctx.world(), Constants.BEGINNING_OF_TIME)
+                            vocabulary.addToRelation(VOCABULARY_STATISTICS, statistics)
+                            statistics.free()
+                        }
+                    } finally {
+                        resolver.externalUnlock(vocabulary)
+                    }
+                    ctx.continueTask()
+                }
+                .traverse(VOCABULARY_STATISTICS)
+    }
+
+    /**
+     * Record the length of the tokenized content in tokenizedContentVar, the length being in lengthVar, the result is kept
+     */
+    @JvmStatic
+    fun recordContentLength(tokenizedContentVar: String, lengthVar: String): Task {
+        return newTask()
+                .defineAsVar("statisticsResult")
+                .pipe(getOrCreateStatisticsNode())
+                .thenDo { ctx ->
+                    setContentLength(ctx.resultAsNodes()[0], ctx.variable(tokenizedContentVar)[0] as Node, ctx.variable(lengthVar)[0] as Int)
+                    ctx.continueTask()
+                }
+                .readVar("statisticsResult")
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import greycat.Graph
+import greycat.Node
+import greycat.Task
+import greycat.Tasks.newTask
+import meow.languageprocessing.corpus.task.CorpusTask
+import meow.tokens.TokensConstants.TOKENIZE_CONTENT_NAME
+import meow.tokens.TokensConstants.TOKENIZE_CONTENT_RELATION
+import meow.tokens.tokenization.PreProcessorFactory
+import meow.tokens.tokenization.TokenizerFactory
+import meow.tokens.tokenization.tokenizer.Tokenizer
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+import meow.languageprocessing.ngram.task.RelationTask as NgramRelationTask
+
+/**
+ * Staged ingestion of documents: read -> tokenize -> vocabulary resolve -> relation write -> ngram update -> corpus add.
+ *
+ * Tokenization runs on tokenizerThreads threads, fed by a bounded queue: submit blocks when the pipeline is full.
+ * The graph stages share the vocabulary index, the tokens, the ngram indexes and the corpus, so they are run by a single
+ * graph writer, also fed by a bounded queue. It takes the documents by batch: the vocabulary of the batch is resolved at
+ * once, then the relations are written, then the ngrams and the corpus are updated, and the graph is saved once per batch.
+ *
+ * Updates of a node at different times should be submitted in time order and, if tokenizerThreads > 1,
+ * not concurrently, as tokenization does not preserve the submission order.
+ */
+class IngestionPipeline @JvmOverloads constructor(private val graph: Graph,
+                                                  tokenizer: String,
+                                                  preprocessor: String?,
+                                                  private val corpusName: String? = null,
+                                                  private val updateNgrams: Boolean = false,
+                                                  tokenizerThreads: Int = DEFAULT_TOKENIZER_THREADS,
+                                                  queueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+                                                  batchSize: Int = DEFAULT_BATCH_SIZE) {
+
+    /**
+     * Contents to put in the relations of a node at a given world and time
+     */
+    class Document(val node: Long, val world: Long, val time: Long, val relations: Array<String>, val contents: Array<String>, val type: String?) {
+        init {
+            if (relations.size != contents.size) throw RuntimeException("The number of relations and contents are not similar!")
+        }
+    }
+
+    private class Tokenized(val document: Document, val tokenizers: Array<Tokenizer>)
+
+    private class Written(val document: Document, val tokenizedContents: LongArray)
+
+    private val factory = TokenizerFactory(tokenizer)
+    private val failures = ConcurrentLinkedQueue<Throwable>()
+
+    init {
+        if (tokenizerThreads <= 0 || batchSize <= 0) throw RuntimeException("threads and batch size should be positive")
+        factory.tokenPreprocess = PreProcessorFactory.create(preprocessor)
+    }
+
+    private val graphStage = Stage<Tokenized>("graph", 1, queueCapacity, batchSize, { batch -> write(batch) })
+    private val tokenizeStage = Stage<Document>("tokenize", tokenizerThreads, queueCapacity, 1, { batch -> tokenize(batch[0]) })
+
+    /**
+     * Read stage, blocks while the tokenization queue is full
+     */
+    fun submit(document: Document) {
+        tokenizeStage.put(document)
+    }
+
+    /**
+     * Drain every stage in order and stop their threads
+     * @return the failures that occurred during the ingestion
+     */
+    fun close(): List<Throwable> {
+        tokenizeStage.finish()
+        graphStage.finish()
+        return failures.toList()
+    }
+
+    private fun tokenize(document: Document) {
+        val tokenizers = Array(document.contents.size, { factory.create(document.contents[it], document.type) })
+        graphStage.put(Tokenized(document, tokenizers))
+    }
+
+    /**
+     * Graph writer, the only thread touching the graph
+     */
+    private fun write(batch: List<Tokenized>) {
+        resolveVocabulary(batch)
+        val written = writeRelations(batch)
+        if (updateNgrams) updateNgramRelations(written)
+        if (corpusName != null) addToCorpus(written)
+        save()
+    }
+
+    private fun resolveVocabulary(batch: List<Tokenized>) {
+        // tokens are created at the earliest time of their world in the batch so that every document of it can reach them
+        for ((world, items) in batch.groupBy { it.document.world }) {
+            val distinct = LinkedHashSet<String>()
+            items.forEach { item -> item.tokenizers.forEach { distinct.addAll(it.getTokens()) } }
+            execute(newTask()
+                    .travelInWorld("$world")
+                    .travelInTime("${items.map { it.document.time }.min()}")
+                    .pipe(VocabularyTask.getOrCreateTokensFromString(distinct.toTypedArray())))
+        }
+    }
+
+    private fun writeRelations(batch: List<Tokenized>): List<Written> {
+        val written = mutableListOf<Written>()
+        for (item in batch) {
+            val document = item.document
+            var tokenizedContents = LongArray(0)
+            execute(newTask()
+                    .travelInWorld("${document.world}")
+                    .travelInTime("${document.time}")
+                    .thenDo { ctx ->
+                        ctx.defineVariable("tokenizers", item.tokenizers)
+                        ctx.continueTask()
+                    }
+                    .lookup("${document.node}")
+                    .defineAsVar("nodes")
+                    .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizers", "nodes", document.relations))
+                    .lookup("${document.node}")
+                    .thenDo { ctx ->
+                        ctx.resultAsNodes()[0].relation(TOKENIZE_CONTENT_RELATION, { tcs ->
+                            tokenizedContents = tcs.filter { document.relations.contains(it.get(TOKENIZE_CONTENT_NAME)) }.map(Node::id).toLongArray()
+                            tcs.map(Node::free)
+                            ctx.continueTask()
+                        })
+                    })
+            written.add(Written(document, tokenizedContents))
+        }
+        return written
+    }
+
+    private fun updateNgramRelations(batch: List<Written>) {
+        for (item in batch) {
+            execute(lookupTokenizedContents(item).pipe(NgramRelationTask.updateNgramTokenizeContentVar("tcs")))
+        }
+    }
+
+    private fun addToCorpus(batch: List<Written>) {
+        for (item in batch) {
+            execute(lookupTokenizedContents(item).pipe(CorpusTask.addTokenizeContentToCorpus("tcs", corpusName!!)))
+        }
+    }
+
+    private fun lookupTokenizedContents(item: Written): Task {
+        return newTask()
+                .travelInWorld("${item.document.world}")
+                .travelInTime("${item.document.time}")
+                .lookupAll(item.tokenizedContents.joinToString(prefix = "[", separator = ",", postfix = "]"))
+                .defineAsVar("tcs")
+    }
+
+    /**
+     * Execute a task from a stage thread and wait for its end
+     */
+    private fun execute(task: Task) {
+        val latch = CountDownLatch(1)
+        var exception: Exception? = null
+        task.execute(graph) { res ->
+            if (res != null) {
+                exception = res.exception()
+                res.free()
+            }
+            latch.countDown()
+        }
+        latch.await()
+        if (exception != null) throw exception!!
+    }
+
+    private fun save() {
+        val latch = CountDownLatch(1)
+        graph.save { latch.countDown() }
+        latch.await()
+    }
+
+    /**
+     * Pool of threads consuming a bounded queue by batches, stopped by one END marker per thread
+     */
+    private inner class Stage<T>(name: String, private val threads: Int, capacity: Int, private val batchSize: Int, private val handler: (List<T>) -> Unit) {
+
+        private val queue = ArrayBlockingQueue<Any>(capacity)
+        private val done = CountDownLatch(threads)
+        private val executor = Executors.newFixedThreadPool(threads, namedThreads(name))
+
+        init {
+            for (t in 1..threads) executor.execute { consume() }
+        }
+
+        fun put(item: T) {
+            queue.put(item)
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        private fun consume() {
+            val batch = ArrayList<T>(batchSize)
+            var ended = false
+            while (!ended) {
+                batch.clear()
+                var item: Any? = queue.take()
+                while (item != null) {
+                    if (item === END) {
+                        ended = true
+                        break
+                    }
+                    batch.add(item as T)
+                    if (batch.size >= batchSize) break
+                    item = queue.poll()
+                }
+                if (!batch.isEmpty()) {
+                    try {
+                        handler(batch)
+                    } catch (e: Throwable) {
+                        failures.add(e)
+                    }
+                }
+            }
+            done.countDown()
+        }
+
+        fun finish() {
+            for (t in 1..threads) queue.put(END)
+            done.await()
+            executor.shutdown()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_TOKENIZER_THREADS = 2
+        const val DEFAULT_QUEUE_CAPACITY = 256
+        const val DEFAULT_BATCH_SIZE = 64
+
+        private val END = Any()
+
+        private fun namedThreads(name: String): ThreadFactory {
+            val count = AtomicInteger()
+            return ThreadFactory { runnable ->
+                val thread = Thread(runnable, "ingestion-$name-${count.incrementAndGet()}")
+                thread.isDaemon = true
+                thread
+            }
+        }
+    }
+}
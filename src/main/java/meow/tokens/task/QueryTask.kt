@@ -0,0 +1,123 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import greycat.Callback
+import greycat.Node
+import greycat.Task
+import greycat.TaskResult
+import greycat.Tasks.newTask
+import meow.tokens.TokensConstants.*
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
+import meow.tokens.tokenization.PreProcessorFactory
+import meow.tokens.tokenization.TokenizerFactory
+import meow.utils.EncodedPostings
+import meow.utils.InvertedIndexCache
+import meow.utils.PostingIntersection
+
+object QueryTask {
+
+    /**
+     * Tokenized contents containing the exact phrase, at the time of the context.
+     * The phrase is tokenized with the given tokenizer and preprocessor, only the inverted indexes of its tokens are read:
+     * their tokenized content ids are intersected, rarest token first, then positions are checked by adjacency merge.
+     *
+     * @param restrictionVar if not null, name of a var holding the tokenized contents to search in (e.g. those of a corpus)
+     */
+    @JvmStatic
+    fun phraseQuery(tokenizer: String, preprocessor: String?, phrase: String, restrictionVar: String?): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    val factory = TokenizerFactory(tokenizer)
+                    factory.tokenPreprocess = PreProcessorFactory.create(preprocessor)
+                    val matcher = PhraseMatcher(factory.create(phrase, null).getTokens())
+                    if (restrictionVar != null) {
+                        val restriction = ctx.variable(restrictionVar)
+                        if (restriction != null) matcher.restrictTo(restriction)
+                    }
+                    ctx.setVariable(matcherVar, matcher)
+                    ctx.continueWith(ctx.wrap(matcher.distinctTokens()))
+                }
+                .defineAsVar("phraseTokens")
+                .then(retrieveVocabularyNode())
+                .defineAsVar("Vocabulary")
+                .readVar("phraseTokens")
+                .forEach(
+                        newTask()
+                                .defineAsVar("token")
+                                .readVar("Vocabulary")
+                                .traverse(VOCABULARY_TOKEN_INDEX, TOKEN_NAME, "{{token}}")
+                                .pipe(InvertedIndexCache.readPostings(WORD_INVERTED_INDEX_RELATION))
+                                .thenDo { ctx ->
+                                    val matcher = ctx.variable(matcherVar)[0] as PhraseMatcher
+                                    matcher.addPostings(ctx.variable("token")[0] as String, ctx.result()[0] as InvertedIndexCache.Postings)
+                                    ctx.continueTask()
+                                }
+                )
+                .thenDo { ctx ->
+                    val matcher = ctx.variable(matcherVar)[0] as PhraseMatcher
+                    val matches = matcher.matches()
+                    if (matches.isEmpty()) {
+                        ctx.continueWith(ctx.newResult())
+                    } else {
+                        ctx.graph().lookupAll(ctx.world(), ctx.time(), matches, Callback<Array<Node>> { nodes ->
+                            ctx.continueWith(ctx.wrap(nodes))
+                        })
+                    }
+                }
+    }
+
+    /**
+     * Postings of the tokens of a phrase, keyed by tokenized content id
+     */
+    private class PhraseMatcher(val tokens: List<String>) {
+
+        private val postings = HashMap<String, InvertedIndexCache.Postings>()
+        private var restriction: LongArray? = null
+
+        fun distinctTokens(): Array<String> {
+            return tokens.distinct().toTypedArray()
+        }
+
+        fun restrictTo(tokenizedContents: TaskResult<*>) {
+            val ids = LongArray(tokenizedContents.size(), { (tokenizedContents[it] as Node).id() })
+            ids.sort()
+            restriction = ids
+        }
+
+        fun addPostings(token: String, tokenPostings: InvertedIndexCache.Postings) {
+            postings.put(token, tokenPostings)
+        }
+
+        fun matches(): LongArray {
+            if (tokens.isEmpty()) return LongArray(0)
+            val lists = mutableListOf<LongArray>()
+            for (token in tokens.distinct()) {
+                val tokenPostings = postings[token] ?: return LongArray(0)
+                lists.add(tokenPostings.ids())
+            }
+            if (restriction != null) lists.add(restriction!!)
+            val candidates = PostingIntersection.intersect(lists)
+            if (tokens.size == 1) return candidates
+            return candidates.filter { tc ->
+                val iterators = Array(tokens.size, { EncodedPostings.iterator(postings[tokens[it]]!!.byContent[tc]!!) })
+                PostingIntersection.firstPhrasePosition(iterators) != EncodedPostings.NO_MORE_POSITIONS
+            }.toLongArray()
+        }
+    }
+
+    private val matcherVar = "phraseMatcher"
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import greycat.Callback
+import greycat.Node
+import greycat.Task
+import greycat.Tasks.newTask
+import meow.tokens.TokensConstants.*
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
+import meow.tokens.tokenization.PreProcessorFactory
+import meow.tokens.tokenization.TokenizerFactory
+import meow.utils.Bm25Wand
+import meow.utils.InvertedIndexCache
+
+object RankingTask {
+
+    /**
+     * The k tokenized contents best matching the query according to BM25, best first, their scores being put in scoresVar.
+     * Collection statistics (number of contents, average length) are those of the current time, kept on the statistics
+     * node, or those of the restriction when one is given. The upper bound of each term comes from its maxTf,
+     * both maintained by the relation tasks.
+     *
+     * @param restrictionVar if not null, name of a var holding the tokenized contents to rank (e.g. those of a corpus)
+     */
+    @JvmStatic
+    fun topKBm25(tokenizer: String, preprocessor: String?, query: String, k: Int, restrictionVar: String?): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    val factory = TokenizerFactory(tokenizer)
+                    factory.tokenPreprocess = PreProcessorFactory.create(preprocessor)
+                    val ranking = Ranking(factory.create(query, null).getTokens())
+                    if (restrictionVar != null) {
+                        val restriction = ctx.variable(restrictionVar)
+                        if (restriction != null) {
+                            for (i in 0..restriction.size() - 1) ranking.addContent(restriction[i] as Node)
+                            ranking.restricted = true
+                        }
+                    }
+                    ctx.setVariable(rankingVar, ranking)
+                    ctx.continueWith(ctx.wrap(ranking.weights.keys.toTypedArray()))
+                }
+                .defineAsVar("queryTokens")
+                .then(retrieveVocabularyNode())
+                .defineAsVar("Vocabulary")
+                .readVar("queryTokens")
+                .forEach(
+                        newTask()
+                                .defineAsVar("token")
+                                .readVar("Vocabulary")
+                                .traverse(VOCABULARY_TOKEN_INDEX, TOKEN_NAME, "{{token}}")
+                                .defineAsVar("tokenNode")
+                                .pipe(InvertedIndexCache.readPostings(WORD_INVERTED_INDEX_RELATION))
+                                .thenDo { ctx ->
+                                    val ranking = ctx.variable(rankingVar)[0] as Ranking
+                                    val tokenNode = ctx.variable("tokenNode")
+                                    val maxTf = if (tokenNode.size() == 0) 0 else CollectionStatistics.maxTf(tokenNode[0] as Node)
+                                    ranking.addPostings(ctx.variable("token")[0] as String, ctx.result()[0] as InvertedIndexCache.Postings, maxTf)
+                                    ctx.continueTask()
+                                }
+                )
+                .pipe(CollectionStatistics.retrieveStatisticsNode())
+                .thenDo { ctx ->
+                    val ranking = ctx.variable(rankingVar)[0] as Ranking
+                    if (ranking.restricted) {
+                        ranking.restrictionStatistics()
+                        ctx.continueTask()
+                    } else {
+                        if (ctx.result().size() != 0) {
+                            val statistics = ctx.resultAsNodes()[0]
+                            ranking.contents = CollectionStatistics.contentCount(statistics)
+                            if (ranking.contents != 0L) ranking.averageLength = CollectionStatistics.totalLength(statistics).toDouble() / ranking.contents
+                        }
+                        // the lengths of the candidates, at the time of the query
+                        val candidates = ranking.candidates()
+                        if (candidates.isEmpty()) {
+                            ctx.continueTask()
+                        } else {
+                            ctx.graph().lookupAll(ctx.world(), ctx.time(), candidates, Callback<Array<Node>> { nodes ->
+                                // candidates that do not exist at the time of the query are left out
+                                for (node in nodes) {
+                                    if (node != null) {
+                                        ranking.addContent(node)
+                                        node.free()
+                                    }
+                                }
+                                ctx.continueTask()
+                            })
+                        }
+                    }
+                }
+                .thenDo { ctx ->
+                    val ranking = ctx.variable(rankingVar)[0] as Ranking
+                    val hits = ranking.rank(k)
+                    ctx.setVariable(scoresVar, hits.map { it.score }.toDoubleArray())
+                    if (hits.isEmpty()) {
+                        ctx.continueWith(ctx.newResult())
+                    } else {
+                        ctx.graph().lookupAll(ctx.world(), ctx.time(), hits.map { it.id }.toLongArray(), Callback<Array<Node>> { nodes ->
+                            ctx.continueWith(ctx.wrap(nodes))
+                        })
+                    }
+                }
+    }
+
+    private class Ranking(tokens: List<String>) {
+
+        val weights = LinkedHashMap<String, Int>()
+        /**
+         * lengths of the contents that can be ranked, by id, those indexed before lengths were kept get the average one.
+         * They are the contents of the restriction, or else the candidates existing at the time of the query
+         */
+        val lengths = HashMap<Long, Long>()
+        val unknownLengths = HashSet<Long>()
+        var restricted = false
+        var contents = 0L
+        var averageLength = 0.0
+        private val postings = HashMap<String, Postings>()
+
+        init {
+            for (token in tokens) weights.put(token, (weights[token] ?: 0) + 1)
+        }
+
+        fun addContent(tokenizedContent: Node) {
+            val length = CollectionStatistics.contentLength(tokenizedContent)
+            if (length != null) lengths.put(tokenizedContent.id(), length.toLong())
+            else unknownLengths.add(tokenizedContent.id())
+        }
+
+        /**
+         * statistics of the restriction: every content of it counts, the average is the one of the known lengths
+         */
+        fun restrictionStatistics() {
+            contents = (lengths.size + unknownLengths.size).toLong()
+            averageLength = if (lengths.isEmpty()) 1.0 else lengths.values.sum().toDouble() / lengths.size
+        }
+
+        fun contains(id: Long): Boolean {
+            return lengths.containsKey(id) || unknownLengths.contains(id)
+        }
+
+        fun addPostings(token: String, tokenPostings: InvertedIndexCache.Postings, storedMaxTf: Int) {
+            val ids = tokenPostings.ids()
+            val tfs = IntArray(ids.size, { tokenPostings.tf(ids[it]) })
+            // contents indexed before maxTf was maintained are not covered by the stored bound
+            val maxTf = Math.max(storedMaxTf, tfs.max() ?: 0)
+            postings.put(token, Postings(ids, tfs, maxTf))
+        }
+
+        fun candidates(): LongArray {
+            val ids = HashSet<Long>()
+            for (termPostings in postings.values) termPostings.ids.forEach { ids.add(it) }
+            return ids.toLongArray()
+        }
+
+        fun rank(k: Int): List<Bm25Wand.Hit> {
+            if (contents == 0L) return emptyList()
+            val terms = mutableListOf<Bm25Wand.Term>()
+            for ((token, weight) in weights) {
+                val termPostings = (postings[token] ?: continue).restrictTo(this)
+                if (termPostings.ids.isEmpty()) continue
+                val idf = Bm25Wand.idf(contents, termPostings.ids.size)
+                terms.add(Bm25Wand.Term(termPostings.ids, termPostings.tfs, idf, termPostings.maxTf, weight))
+            }
+            val average = averageLength
+            return Bm25Wand.topK(terms, k, average,
+                    { id -> lengths[id] ?: Math.round(average) },
+                    { id -> contains(id) })
+        }
+    }
+
+    private class Postings(val ids: LongArray, val tfs: IntArray, val maxTf: Int) {
+
+        fun restrictTo(ranking: Ranking): Postings {
+            val kept = ids.indices.filter { ranking.contains(ids[it]) }
+            return Postings(LongArray(kept.size, { ids[kept[it]] }), IntArray(kept.size, { tfs[kept[it]] }), maxTf)
+        }
+    }
+
+    private val rankingVar = "bm25Ranking"
+    val scoresVar = "scores"
+}
@@ -16,14 +16,23 @@
 package meow.tokens.task
 
 import greycat.*
-import greycat.Constants.BEGINNING_OF_TIME
 import greycat.Tasks.*
 import greycat.plugin.SchedulerAffinity
 import greycat.struct.*
 import meow.tokens.TokensConstants.*
 import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
 import meow.tokens.tokenization.tokenizer.Tokenizer
+import meow.utils.ContentFingerprint
+import meow.utils.InvertedIndexCache
 import meow.utils.MinimunEditDistance
+import meow.utils.MyersDiff
+import meow.utils.PositionPostingBuffer
+import meow.utils.PositionPostingList
+import meow.utils.ScriptReplay
+import meow.utils.UtilTask.addVarToRelationLocked
+import meow.utils.UtilTask.flushPostings
+import meow.utils.UtilTask.lookupOrCreateInvertedIndexLocked
 import mylittleplugin.MyLittleActions.*
 
 
@@ -152,6 +161,69 @@ object RelationTask {
     }
 
 
+    /**
+     * Parallel variant of updateOrCreateTokenizeRelationsToNodes, every (tokenizer, node, relation) triple is handled
+     * in its own branch, e.g. the title, body and comments of a document are updated concurrently.
+     * The vocabulary is resolved once beforehand so branches only read the token index, the remaining shared writes
+     * (relations of the tokens and of the annotated nodes) are done holding the external lock of the modified node,
+     * the inverted index of a token being looked up under the same lock it is created with.
+     */
+    @JvmStatic
+    fun updateOrCreateTokenizeRelationsToNodesPar(tokenizersVar: String, nodesVar: String, relationList: Array<String>): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    val tokenizers = ctx.variable(tokenizersVar)
+                    val nodes = ctx.variable(nodesVar)
+                    val units = mutableListOf<TokenizeUnit>()
+                    var error: String? = null
+                    if (tokenizers.size() == 1) {
+                        if (relationList.size == 1 || relationList.size == nodes.size()) {
+                            for (j in 0..nodes.size() - 1) {
+                                units.add(TokenizeUnit(tokenizers[0] as Tokenizer, nodes[j] as Node, relationList[if (relationList.size == 1) 0 else j]))
+                            }
+                        } else error = "The number of relations and nodes are not similar! (1 tokenizer)"
+                    } else if (relationList.size != tokenizers.size()) {
+                        error = if (nodes.size() == 1) "The number of relations and tokenizers are not similar! (1 node)" else "The number of relations and tokenizers are not similar! "
+                    } else if (nodes.size() == 1 || nodes.size() == tokenizers.size()) {
+                        for (i in 0..tokenizers.size() - 1) {
+                            units.add(TokenizeUnit(tokenizers[i] as Tokenizer, nodes[if (nodes.size() == 1) 0 else i] as Node, relationList[i]))
+                        }
+                    } else error = "The number of nodes and tokenizers are not similar!"
+
+                    if (error != null) {
+                        ctx.endTask(ctx.result(), RuntimeException(error))
+                    } else {
+                        val vocabulary = LinkedHashSet<String>()
+                        units.forEach { vocabulary.addAll(it.tokenizer.getTokens()) }
+                        newTask()
+                                .then(getOrCreateTokensFromString(*vocabulary.toTypedArray()))
+                                .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res ->
+                                    if (res != null && res.exception() != null) {
+                                        ctx.endTask(res, res.exception())
+                                    } else {
+                                        res?.free()
+                                        ctx.continueWith(ctx.wrap(units.toTypedArray()))
+                                    }
+                                }
+                    }
+                }
+                .forEachPar(
+                        newTask()
+                                .thenDo { ctx ->
+                                    val unit = ctx.result()[0] as TokenizeUnit
+                                    ctx.defineVariable(tokenizerVar, unit.tokenizer)
+                                    ctx.defineVariable(nodeVar, unit.node)
+                                    ctx.defineVariable(relationVar, unit.relation)
+                                    ctx.continueTask()
+                                }
+                                .pipe(uocTokenizeRelation())
+                )
+                .readVar(nodesVar)
+    }
+
+    private class TokenizeUnit(val tokenizer: Tokenizer, val node: Node, val relation: String)
+
+
     private fun uocTokenizeRelation(): Task {
         return newTask()
                 .readVar(nodeVar)
@@ -159,10 +231,19 @@ object RelationTask {
                 .traverse(TOKENIZE_CONTENT_RELATION, TOKENIZE_CONTENT_NAME, "{{$relationVar}}")
                 .then(ifEmptyThenElse(
                         createTokenRelation(),
-                        updateTokenRelation()
+                        newTask().ifThenElse({ ctx -> sameFingerprint(ctx) },
+                                newTask(), //unchanged content, nothing to do and no new timepoint
+                                updateTokenRelation()
+                        )
                 ))
     }
 
+    private fun sameFingerprint(ctx: TaskContext): Boolean {
+        val stored = ctx.resultAsNodes()[0].get(TOKENIZE_CONTENT_FINGERPRINT) as Long? ?: return false
+        val tokenizer = ctx.variable(tokenizerVar)[0] as Tokenizer
+        return stored == ContentFingerprint.of(tokenizer.getTokens())
+    }
+
     private fun updateTokenRelation(): Task {
         return newTask()
                 .defineAsVar("relationNode")
@@ -181,118 +262,53 @@ object RelationTask {
                 }
 
                 .defineAsVar("newToken")
+                .then(retrieveVocabularyNode())
+                .defineAsVar("vocabulary")
                 .readVar("relationNode")
 
                 .thenDo { ctx ->
                     val node = ctx.resultAsNodes()[0]
-                    val relationNodeId = node.id()
-                    val type = node.get("type") as String
-                    node.rephase()
-                    node.remove(TOKENIZE_CONTENT_PATCH)
-                    val mapPatch = node.getOrCreate(TOKENIZE_CONTENT_PATCH,Type.LONG_TO_LONG_MAP) as LongLongMap
-                    val relation = node.get(TOKENIZE_CONTENT_TOKENS) as Relation
-                    val relationsId = relation.all().take(relation.size())
-                    val newContent = ctx.variable("newToken").asArray()
-                    val newContentId = mutableListOf<Long>()
-                    newContent.mapTo(newContentId) { (it as Node).id() }
-                    val med = MinimunEditDistance(relationsId.toTypedArray(), newContentId.toTypedArray())
-                    val path = med.path().toTypedArray()
-                    ctx.setVariable("formerIndex", 0)
-                    ctx.setVariable("newIndex", 0)
-                    ctx.setVariable("relation", relation)
-                    ctx.setVariable("relationId", relationNodeId)
-                    ctx.setVariable("type", type)
-                    ctx.setVariable("mapPatch",mapPatch)
-                    ctx.continueWith(ctx.wrap(path))
-                }.map(
-                thenDo {
-                    ctx ->
-                    val action = ctx.result()[0] as Pair<Long, MinimunEditDistance.Modification>
-                    val mapPatch = ctx.variable("mapPatch")[0] as LongLongMap
-                    val index = ctx.variable("i")[0] as Int
-                    val relation = ctx.variable("relation")[0] as Relation
-                    val newIndex = ctx.variable("newIndex")[0] as Int
-                    val formerIndex = ctx.variable("formerIndex")[0] as Int
-                    val relationNodeId = ctx.variable("relationId")[0] as Long
-                    val type = ctx.variable("type")[0] as String
-                    when (action.second) {
-                        MinimunEditDistance.Modification.Suppression -> {
-                            relation.delete(newIndex)
-                            mapPatch.put(-index.toLong(),action.first)
-                            newTask()
-                                    .lookup("${action.first}")
-                                    .traverse(WORD_INVERTED_INDEX_RELATION, II_TC, "$relationNodeId")
-                                    .thenDo {
-                                        ctx ->
-                                        val node = ctx.resultAsNodes()[0]
-                                        val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: throw RuntimeException("no position while delete")
-                                        position.remove(formerIndex)
-                                        node.set("position", Type.INT_ARRAY, position.toIntArray())
-                                        node.free() //Added to check
-                                        ctx.continueTask()
-                                    }
-                                    .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
-                                ctx.setVariable("formerIndex", formerIndex + 1)
-                                ctx.continueTask()
-                            })
+                    val checkpointInterval = TokenizedContentVersions.checkpointInterval(ctx.variable("vocabulary")[0] as Node)
+                    TokenizedContentVersions.materialize(node, Callback { former ->
+                        val relationNodeId = node.id()
+                        val type = node.get("type") as String
+                        val version = TokenizedContentVersions.version(node) + 1
+                        node.rephase()
+                        node.set(TOKENIZE_CONTENT_VERSION, Type.INT, version)
+                        node.set(TOKENIZE_CONTENT_FINGERPRINT, Type.LONG, ContentFingerprint.of((ctx.variable(tokenizerVar)[0] as Tokenizer).getTokens()))
+                        node.remove(TOKENIZE_CONTENT_PATCH)
+                        val mapPatch = node.getOrCreate(TOKENIZE_CONTENT_PATCH, Type.LONG_TO_LONG_MAP) as LongLongMap
+                        node.set(TOKENIZE_CONTENT_PATCH_FORMAT, Type.INT, TokenizedContentVersions.PATCH_FORMAT)
+                        val newContent = ctx.variable("newToken").asArray()
+                        val newContentId = LongArray(newContent.size, { (newContent[it] as Node).id() })
+                        // the full relation is only kept at checkpoints, other versions are rebuilt from their patch
+                        if (node.get(TOKENIZE_CONTENT_TOKENS) != null) node.remove(TOKENIZE_CONTENT_TOKENS)
+                        if (TokenizedContentVersions.isCheckpoint(version, checkpointInterval)) {
+                            val relation = node.getOrCreate(TOKENIZE_CONTENT_TOKENS, Type.RELATION) as Relation
+                            newContentId.forEach { relation.add(it) }
                         }
-                        MinimunEditDistance.Modification.Insertion -> {
-                            relation.insert(newIndex, action.first)
-                            mapPatch.put(index.toLong(),action.first)
-                            newTask().lookup("${action.first}")
-                                    .defineAsVar("token")
-                                    .traverse(WORD_INVERTED_INDEX_RELATION, II_TC, "$relationNodeId")
-                                    .then(
-                                            ifEmptyThen(
-                                                    newTask()
-                                                            .then(
-                                                                    executeAtWorldAndTime("0", "$BEGINNING_OF_TIME",
-                                                                            newTask()
-                                                                                    .createNode()
-                                                                                    .setAttribute(II_TC, Type.LONG, "$relationNodeId")
-                                                                                    .setAttribute("type", Type.STRING, "$type")
-                                                                                    .defineAsVar("invertedIndex")
-                                                                                    .addVarToRelation(INVERTED_WORD_INDEX_RELATION, "token")
-                                                                                    .readVar("token")
-                                                                                    .addVarToRelation(WORD_INVERTED_INDEX_RELATION, "invertedIndex",II_TC)
-                                                                                    .readVar("invertedIndex")
-                                                                    )
-                                                            )
-                                            )
-                                    )
-                                    .thenDo {
-                                        ctx ->
-                                        val node = ctx.resultAsNodes()[0]
-                                        val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: mutableListOf<Int>()
-                                        position.add(newIndex)
-                                        node.set("position", Type.INT_ARRAY, position.toIntArray())
-                                        node.free()
-                                        ctx.continueTask()
-                                    }.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
-                                ctx.setVariable("newIndex", newIndex + 1)
-                                ctx.continueTask()
-                            })
+                        // the common prefix leaves positions and patch untouched, only the operations after it are replayed
+                        val script = MyersDiff.boundedScript(former, newContentId, MAXIMUM_EDIT_DISTANCE)
+                        for (step in 0..script.size - 1) {
+                            val index = script.prefix + step
+                            when (script.op(step)) {
+                                MinimunEditDistance.Modification.Suppression -> mapPatch.put(TokenizedContentVersions.suppressionKey(index), script.id(step))
+                                MinimunEditDistance.Modification.Insertion -> mapPatch.put(TokenizedContentVersions.insertionKey(index), script.id(step))
+                                else -> {
+                                }
+                            }
                         }
-                        MinimunEditDistance.Modification.Keep -> {
-                            newTask().lookup("${action.first}")
-                                    .traverse(WORD_INVERTED_INDEX_RELATION, II_TC, "$relationNodeId")
-                                    .thenDo { ctx ->
-                                        val node = ctx.resultAsNodes()[0]
-                                        val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: mutableListOf<Int>()
-                                        position.remove(formerIndex)
-                                        position.add(newIndex)
-                                        node.set("position", Type.INT_ARRAY, position.toIntArray())
-                                        node.free()
-                                        ctx.continueTask()
-                                    }.executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD, {
-                                ctx.setVariable("formerIndex", formerIndex + 1)
-                                ctx.setVariable("newIndex", newIndex + 1)
-                                ctx.continueTask()
-                            })
-
+                        val postings = PositionPostingBuffer()
+                        ScriptReplay.replay(ctx, script, relationNodeId, type, INVERTED_WORD_INDEX_RELATION, WORD_INVERTED_INDEX_RELATION, postings,
+                                { token, tf -> CollectionStatistics.raiseMaxTf(token, tf) }, null, null) {
+                            ctx.defineVariable("postings", postings)
+                            ctx.defineVariable("contentLength", newContentId.size)
+                            ctx.continueTask()
                         }
-                    }
-                })
+                    })
+                }
+                .pipe(flushPostings("postings", INVERTED_WORD_INDEX_RELATION))
+                .pipe(CollectionStatistics.recordContentLength("relationNode", "contentLength"))
     }
 
 
@@ -303,8 +319,9 @@ object RelationTask {
                 .defineAsVar("relationNode")
                 .thenDo { ctx ->
                     val node = ctx.resultAsNodes()[0]
-                    ctx.setVariable("relationNodeId", node.id())
+                    ctx.defineVariable("relationNodeId", node.id())
                     node.getOrCreate(TOKENIZE_CONTENT_PATCH,Type.LONG_TO_LONG_MAP)
+                    node.set(TOKENIZE_CONTENT_PATCH_FORMAT, Type.INT, TokenizedContentVersions.PATCH_FORMAT)
                     ctx.continueTask()
                 }
                 .addVarToRelation(TOKENIZE_CONTENT_FATHER, nodeVar)
@@ -312,56 +329,53 @@ object RelationTask {
                 .setAttribute(NODE_TYPE, Type.STRING, NODE_TYPE_TOKENIZE_CONTENT)
 
                 .readVar(nodeVar)
-                .addVarToRelation(TOKENIZE_CONTENT_RELATION, "relationNode", TOKENIZE_CONTENT_NAME)
+                .thenDo(addVarToRelationLocked(TOKENIZE_CONTENT_RELATION, "relationNode", TOKENIZE_CONTENT_NAME))
 
                 .readVar(tokenizerVar)
                 .thenDo { ctx ->
                     val tokenizer = ctx.result()[0] as Tokenizer
-                    ctx.setVariable("type", tokenizer.getTypeOfToken() ?: NO_TYPE_TOKENIZE)
+                    ctx.defineVariable("type", tokenizer.getTypeOfToken() ?: NO_TYPE_TOKENIZE)
+                    (ctx.variable("relationNode")[0] as Node).set(TOKENIZE_CONTENT_FINGERPRINT, Type.LONG, ContentFingerprint.of(tokenizer.getTokens()))
                     newTask()
                             .then(getOrCreateTokensFromString(*tokenizer.getTokens().toTypedArray()))
                             .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD
                             ) { res -> ctx.continueWith(res) }
                 }
+                .thenDo { ctx ->
+                    // build the relation in one go and group the occurrences by token
+                    val tokens = ctx.resultAsNodes()
+                    val relationNode = ctx.variable("relationNode")[0] as Node
+                    val relation = relationNode.getOrCreate(TOKENIZE_CONTENT_TOKENS, Type.RELATION) as Relation
+                    val occurrences = PositionPostingBuffer()
+                    for (i in 0..tokens.size() - 1) {
+                        val tokenId = tokens[i].id()
+                        relation.add(tokenId)
+                        occurrences.append(tokenId, i)
+                    }
+                    ctx.defineVariable("occurrences", occurrences)
+                    ctx.defineVariable("contentLength", tokens.size())
+                    ctx.continueWith(ctx.wrap(occurrences.ids()))
+                }
                 .forEach(
                         newTask()
+                                .defineAsVar("tokenId")
+                                .lookup("{{tokenId}}")
                                 .defineAsVar("token")
-                                .traverse(WORD_INVERTED_INDEX_RELATION, II_TC, "{{relationNodeId}}")
-
-                                .then(
-                                        ifEmptyThenElse(
-                                                newTask()
-                                                        .then(executeAtWorldAndTime("0", "$BEGINNING_OF_TIME",
-                                                                newTask()
-                                                                        .createNode()
-                                                                        .setAttribute(II_TC, Type.LONG, "{{relationNodeId}}")
-                                                                        .setAttribute(NODE_TYPE, Type.STRING, NODE_TYPE_INVERTED_INDEX)
-                                                                        .setAttribute("type", Type.STRING, "{{type}}")
-                                                                        .defineAsVar("invertedIndex")
-                                                                        .addVarToRelation(INVERTED_WORD_INDEX_RELATION, "token")
-                                                                        .readVar("token")
-                                                                        .addVarToRelation(WORD_INVERTED_INDEX_RELATION, "invertedIndex", II_TC)
-                                                                        .readVar("invertedIndex")
-                                                        )
-                                                        )
-                                                ,
-                                                newTask().then(checkForFuture())
-                                        )
-                                )
+                                .thenDo(lookupOrCreateInvertedIndexLocked("relationNodeId", "type", INVERTED_WORD_INDEX_RELATION, WORD_INVERTED_INDEX_RELATION))
+                                .then(checkForFuture())
                                 .thenDo { ctx ->
+                                    // every occurrence of the token is written at once, already sorted
                                     val node = ctx.resultAsNodes()[0]
-                                    val position: MutableList<Int> = (node.get("position") as IntArray?)?.toMutableList() ?: mutableListOf<Int>()
-                                    position.add(ctx.variable("i")[0] as Int)
-                                    node.set("position", Type.INT_ARRAY, position.toIntArray())
+                                    val occurrences = ctx.variable("occurrences")[0] as PositionPostingBuffer
+                                    val positions = occurrences.get(ctx.variable("tokenId")[0] as Long)!!
+                                    PositionPostingList.write(node, positions)
+                                    InvertedIndexCache.invalidate(ctx.graph(), ctx.variable("tokenId")[0] as Long)
+                                    CollectionStatistics.raiseMaxTf(ctx.variable("token")[0] as Node, positions.size)
                                     node.free()
                                     ctx.continueTask()
                                 }
-
-
-                                .readVar("relationNode")
-                                .addVarToRelation(TOKENIZE_CONTENT_TOKENS, "token")
-
                 )
+                .pipe(CollectionStatistics.recordContentLength("relationNode", "contentLength"))
                 .readVar("relationNode")
                 .setAttribute("type", Type.STRING, "{{type}}")
 
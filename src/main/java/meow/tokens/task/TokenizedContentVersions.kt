@@ -0,0 +1,198 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import greycat.Callback
+import greycat.DeferCounter
+import greycat.Graph
+import greycat.Node
+import greycat.Task
+import greycat.Tasks.newTask
+import greycat.Type
+import greycat.struct.LongLongMap
+import greycat.struct.Relation
+import meow.tokens.TokensConstants.*
+import meow.tokens.actions.TokenActions.retrieveVocabularyNode
+import java.util.WeakHashMap
+
+/**
+ * Versions of a tokenized content.
+ * Only checkpoint versions (every VOCABULARY_CHECKPOINT_INTERVAL updates) store the full TOKENIZE_CONTENT_TOKENS relation,
+ * the versions in between only keep their TOKENIZE_CONTENT_PATCH and are rebuilt from the previous version when read.
+ * Versions written before TOKENIZE_CONTENT_PATCH_FORMAT existed all kept their full relation, their patch is never replayed.
+ */
+object TokenizedContentVersions {
+
+    const val CACHE_SIZE = 256
+    const val PATCH_FORMAT = 1
+
+    /**
+     * materialized tokens of every graph, a graph being dropped with its entries once it is no longer referenced
+     */
+    private val caches = WeakHashMap<Graph, LinkedHashMap<String, LongArray>>()
+
+    private fun cache(graph: Graph): LinkedHashMap<String, LongArray> {
+        var cache = caches[graph]
+        if (cache == null) {
+            cache = object : LinkedHashMap<String, LongArray>(CACHE_SIZE, 0.75f, true) {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, LongArray>?): Boolean {
+                    return size > CACHE_SIZE
+                }
+            }
+            caches.put(graph, cache)
+        }
+        return cache
+    }
+
+    @JvmStatic
+    fun isCheckpoint(version: Int, interval: Int): Boolean {
+        return version % interval == 0
+    }
+
+    @JvmStatic
+    fun checkpointInterval(vocabulary: Node): Int {
+        return vocabulary.get(VOCABULARY_CHECKPOINT_INTERVAL) as Int? ?: TOKENIZE_CONTENT_CHECKPOINT_INTERVAL
+    }
+
+    /**
+     * Set the number of versions between two checkpoints of the tokenized contents of the graph, from their next update on
+     */
+    @JvmStatic
+    fun configureCheckpointInterval(interval: Int): Task {
+        return newTask()
+                .then(retrieveVocabularyNode())
+                .thenDo { ctx ->
+                    if (interval < 1) {
+                        ctx.endTask(ctx.result(), RuntimeException("The checkpoint interval should be positive"))
+                    } else {
+                        ctx.resultAsNodes()[0].set(VOCABULARY_CHECKPOINT_INTERVAL, Type.INT, interval)
+                        ctx.continueTask()
+                    }
+                }
+    }
+
+    @JvmStatic
+    fun version(tokenizedContent: Node): Int {
+        return tokenizedContent.get(TOKENIZE_CONTENT_VERSION) as Int? ?: 0
+    }
+
+    /**
+     * key of a suppression in TOKENIZE_CONTENT_PATCH, shifted by one so that it never collides with an insertion at 0
+     */
+    @JvmStatic
+    fun suppressionKey(pathIndex: Int): Long {
+        return -(pathIndex + 1).toLong()
+    }
+
+    @JvmStatic
+    fun insertionKey(pathIndex: Int): Long {
+        return pathIndex.toLong()
+    }
+
+    /**
+     * Replay a patch on the former tokens.
+     * Path indexes absent from the patch are kept tokens, a suppression removes the token under the cursor
+     * and an insertion adds one before it.
+     */
+    @JvmStatic
+    fun applyPatch(former: LongArray, keys: LongArray, values: LongArray): LongArray {
+        val pathIndexes = IntArray(keys.size, { if (keys[it] < 0) (-keys[it] - 1).toInt() else keys[it].toInt() })
+        val order = (0..keys.size - 1).sortedBy { pathIndexes[it] }
+        val tokens = former.toMutableList()
+        var cursor = 0
+        var lastPathIndex = -1
+        for (k in order) {
+            cursor += pathIndexes[k] - lastPathIndex - 1
+            lastPathIndex = pathIndexes[k]
+            if (keys[k] < 0) {
+                if (cursor >= tokens.size || tokens[cursor] != values[k]) throw RuntimeException("patch does not match the former tokenized content")
+                tokens.removeAt(cursor)
+            } else {
+                tokens.add(cursor, values[k])
+                cursor++
+            }
+        }
+        return tokens.toLongArray()
+    }
+
+    /**
+     * Token ids of the tokenized content at the time of the node, rebuilt from the closest checkpoint if needed
+     */
+    @JvmStatic
+    fun materialize(tokenizedContent: Node, done: Callback<LongArray>) {
+        val stateTime = tokenizedContent.time() - tokenizedContent.timeDephasing()
+        val key = "${tokenizedContent.world()};${tokenizedContent.id()};$stateTime"
+        val graph = tokenizedContent.graph()
+        val cached = synchronized(caches) { cache(graph)[key] }
+        if (cached != null) {
+            done.on(cached)
+            return
+        }
+        val relation = tokenizedContent.get(TOKENIZE_CONTENT_TOKENS) as Relation?
+        if (relation != null) {
+            val tokens = LongArray(relation.size(), { relation.get(it) })
+            synchronized(caches) { cache(graph).put(key, tokens) }
+            done.on(tokens)
+            return
+        }
+        if (tokenizedContent.get(TOKENIZE_CONTENT_PATCH_FORMAT) as Int? != PATCH_FORMAT)
+            throw RuntimeException("The tokenized content ${tokenizedContent.id()} has neither its tokens nor a patch that can be replayed")
+        val version = version(tokenizedContent)
+        val patch = tokenizedContent.get(TOKENIZE_CONTENT_PATCH) as LongLongMap
+        val keys = LongArray(patch.size())
+        val values = LongArray(patch.size())
+        var index = 0
+        patch.each { k, v ->
+            keys[index] = k
+            values[index] = v
+            index++
+        }
+        tokenizedContent.graph().lookup(tokenizedContent.world(), stateTime - 1, tokenizedContent.id(), Callback<Node> { previous ->
+            materialize(previous, Callback { former ->
+                // a rephase done by another writer copies the patch of the version without creating a new one
+                val tokens = if (version(previous) == version) former else applyPatch(former, keys, values)
+                previous.free()
+                synchronized(caches) { cache(graph).put(key, tokens) }
+                done.on(tokens)
+            })
+        })
+    }
+
+    /**
+     * Replace the nodes of the result, tokenized contents, by their tokens in order, like traverse(TOKENIZE_CONTENT_TOKENS)
+     */
+    @JvmStatic
+    fun traverseTokens(): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    val tokenizedContents = ctx.resultAsNodes()
+                    val materialized = arrayOfNulls<LongArray>(tokenizedContents.size())
+                    val counter: DeferCounter = ctx.graph().newCounter(tokenizedContents.size())
+                    for (i in 0..tokenizedContents.size() - 1) {
+                        materialize(tokenizedContents[i], Callback { tokens ->
+                            materialized[i] = tokens
+                            counter.count()
+                        })
+                    }
+                    counter.then {
+                        val ids = materialized.flatMap { it!!.asList() }.toLongArray()
+                        ctx.graph().lookupAll(ctx.world(), ctx.time(), ids, Callback<Array<Node>> { tokens ->
+                            ctx.continueWith(ctx.wrap(tokens))
+                        })
+                    }
+                }
+    }
+}
@@ -60,12 +60,14 @@ object VocabularyTask : KLogging() {
                                 .defineAsVar("tokenizeContent")
                                 .thenDo { ctx ->
                                     val tokenizedContentNode = ctx.resultAsNodes()[0]
-                                    tokenizedContentNode.relation(TOKENIZE_CONTENT_TOKENS, { nodeArray ->
-                                        val content = nodeArray.map { node -> node.get(TOKEN_NAME) as String }.joinToString(separator = " ")
-                                        val type = tokenizedContentNode.get("type")
-                                        val name = tokenizedContentNode.get(TOKENIZE_CONTENT_NAME)
-                                        nodeArray.map(Node::free)
-                                        ctx.continueWith(ctx.wrap(arrayOf(name, type, content)))
+                                    TokenizedContentVersions.materialize(tokenizedContentNode, Callback { tokens ->
+                                        tokenizedContentNode.graph().lookupAll(tokenizedContentNode.world(), tokenizedContentNode.time(), tokens, Callback<Array<Node>> { nodeArray ->
+                                            val content = nodeArray.map { node -> node.get(TOKEN_NAME) as String }.joinToString(separator = " ")
+                                            val type = tokenizedContentNode.get("type")
+                                            val name = tokenizedContentNode.get(TOKENIZE_CONTENT_NAME)
+                                            nodeArray.map(Node::free)
+                                            ctx.continueWith(ctx.wrap(arrayOf(name, type, content)))
+                                        })
                                     })
                                 }
                 )
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import java.util.PriorityQueue
+
+/**
+ * BM25 top-k retrieval with WAND dynamic pruning.
+ * A content is only scored when the sum of the upper bounds of the terms pointing to it or before it
+ * exceeds the score of the current k-th best content, other postings are skipped by galloping.
+ */
+object Bm25Wand {
+
+    const val K1 = 1.2
+    const val B = 0.75
+
+    /**
+     * Postings of a query term: sorted content ids and their term frequencies
+     */
+    class Term(val ids: LongArray, val tfs: IntArray, val idf: Double, maxTf: Int, val weight: Int) {
+        val upperBound: Double = weight * upperBound(idf, maxTf)
+        internal var cursor = 0
+
+        internal fun doc(): Long {
+            return if (cursor < ids.size) ids[cursor] else Long.MAX_VALUE
+        }
+    }
+
+    class Hit(val id: Long, val score: Double)
+
+    @JvmStatic
+    fun idf(contents: Long, df: Int): Double {
+        return Math.log(1.0 + (contents - df + 0.5) / (df + 0.5))
+    }
+
+    @JvmStatic
+    fun score(idf: Double, tf: Int, length: Long, averageLength: Double): Double {
+        val norm = if (averageLength > 0) length / averageLength else 1.0
+        return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * norm))
+    }
+
+    /**
+     * score reached with a tf of maxTf in an empty content, no content can score more for this term
+     */
+    @JvmStatic
+    fun upperBound(idf: Double, maxTf: Int): Double {
+        return idf * maxTf * (K1 + 1) / (maxTf + K1 * (1 - B))
+    }
+
+    /**
+     * @param length length of a content from its id
+     * @param accept filter on the content ids, e.g. the contents of a corpus
+     * @return at most k hits, best first
+     */
+    @JvmStatic
+    fun topK(terms: List<Term>, k: Int, averageLength: Double, length: (Long) -> Long, accept: (Long) -> Boolean): List<Hit> {
+        val heap = PriorityQueue<Hit>(Math.max(k, 1), compareBy<Hit> { it.score })
+        if (k <= 0) return emptyList()
+        val active = terms.filter { it.ids.isNotEmpty() }.toMutableList()
+        active.forEach { it.cursor = 0 }
+        var threshold = 0.0
+        while (true) {
+            active.sortBy { it.doc() }
+            var accumulated = 0.0
+            var pivot = -1
+            for (i in 0..active.size - 1) {
+                if (active[i].doc() == Long.MAX_VALUE) break
+                accumulated += active[i].upperBound
+                if (accumulated > threshold) {
+                    pivot = i
+                    break
+                }
+            }
+            if (pivot == -1) break
+            val pivotDoc = active[pivot].doc()
+            if (active[0].doc() == pivotDoc) {
+                val contentLength = length(pivotDoc)
+                var score = 0.0
+                for (term in active) {
+                    if (term.doc() != pivotDoc) break
+                    score += term.weight * score(term.idf, term.tfs[term.cursor], contentLength, averageLength)
+                    term.cursor++
+                }
+                if (accept(pivotDoc) && (heap.size < k || score > heap.peek().score)) {
+                    heap.add(Hit(pivotDoc, score))
+                    if (heap.size > k) heap.poll()
+                    if (heap.size == k) threshold = heap.peek().score
+                }
+            } else {
+                for (i in 0..pivot - 1) {
+                    active[i].cursor = PostingIntersection.gallop(active[i].ids, active[i].cursor, pivotDoc)
+                }
+            }
+        }
+        return heap.sortedByDescending { it.score }
+    }
+}
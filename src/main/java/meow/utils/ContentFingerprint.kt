@@ -0,0 +1,39 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+/**
+ * 64 bits FNV-1a fingerprint of a token sequence, used to detect unchanged contents before any vocabulary or diff work.
+ * Each token is followed by a separator so that ["ab", "c"] and ["a", "bc"] differ.
+ */
+object ContentFingerprint {
+
+    const val OFFSET_BASIS = -0x340d631b7bdddcdbL
+    const val PRIME = 0x100000001b3L
+    private const val SEPARATOR = 0x1F
+
+    @JvmStatic
+    fun of(tokens: List<String>): Long {
+        var hash = OFFSET_BASIS
+        for (token in tokens) {
+            for (c in token) {
+                hash = (hash xor c.toLong()) * PRIME
+            }
+            hash = (hash xor SEPARATOR.toLong()) * PRIME
+        }
+        return hash
+    }
+}
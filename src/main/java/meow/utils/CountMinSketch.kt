@@ -0,0 +1,107 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+/**
+ * Count-Min Sketch with conservative update, over 64-bit keys.
+ *
+ * With width = ceil(e / epsilon) and depth = ceil(ln(1 / delta)), an estimate is never below the true count
+ * and exceeds it by more than epsilon * total with a probability of at most delta, total being the number of added occurrences.
+ * Conservative update only raises the counters that are below the new estimate, which keeps these bounds
+ * while lowering the overestimation of the rare keys; as a consequence occurrences can not be removed, the sketch has to be rebuilt.
+ * Every row hashes the keys with its own multiply-shift function over the two halves of the key
+ * (h(x) = (a1 * low + a2 * high + b) >>> 32, Dietzfelbinger's vector scheme), a pairwise independent family
+ * as the bounds require; the coefficients come from a fixed generator, so that stored counters stay valid.
+ * The counters are a plain int array, row after row, so that they can be stored as a node attribute and updated in place.
+ */
+class CountMinSketch(val width: Int, val depth: Int, counters: IntArray?) {
+
+    val counters: IntArray = counters ?: IntArray(width * depth)
+
+    var total: Long = 0
+
+    init {
+        if (width <= 0 || depth <= 0) throw IllegalArgumentException("The width and the depth of a sketch should be positive")
+        if (this.counters.size != width * depth) throw IllegalArgumentException("The counters do not match the dimensions of the sketch")
+        if (depth > 64) throw IllegalArgumentException("The depth of a sketch should be at most 64")
+    }
+
+    constructor(width: Int, depth: Int) : this(width, depth, null)
+
+    fun add(key: Long) {
+        add(key, 1)
+    }
+
+    fun add(key: Long, count: Int) {
+        val target = estimate(key) + count
+        for (row in 0..depth - 1) {
+            val index = cell(key, row)
+            if (counters[index] < target) counters[index] = target
+        }
+        total += count
+    }
+
+    fun estimate(key: Long): Int {
+        var min = Int.MAX_VALUE
+        for (row in 0..depth - 1) {
+            val value = counters[cell(key, row)]
+            if (value < min) min = value
+        }
+        return min
+    }
+
+    fun clear() {
+        java.util.Arrays.fill(counters, 0)
+        total = 0
+    }
+
+    /**
+     * cell of the key in the row, the 32-bit hash of the row being scaled to the width
+     */
+    private fun cell(key: Long, row: Int): Int {
+        val hash = (coefficients[3 * row] * (key and 0xFFFFFFFFL) + coefficients[3 * row + 1] * (key ushr 32) + coefficients[3 * row + 2]) ushr 32
+        return row * width + ((hash * width) ushr 32).toInt()
+    }
+
+    companion object {
+
+        @JvmStatic
+        fun width(epsilon: Double): Int {
+            if (epsilon <= 0.0 || epsilon >= 1.0) throw IllegalArgumentException("epsilon should be in ]0, 1[")
+            return Math.ceil(Math.E / epsilon).toInt()
+        }
+
+        @JvmStatic
+        fun depth(delta: Double): Int {
+            if (delta <= 0.0 || delta >= 1.0) throw IllegalArgumentException("delta should be in ]0, 1[")
+            return Math.ceil(Math.log(1 / delta)).toInt()
+        }
+
+        private val coefficients = LongArray(3 * 64)
+
+        init {
+            // splitmix64 from a fixed seed
+            var state = 0x2545F4914F6CDD1DL
+            for (i in 0..coefficients.size - 1) {
+                state += -0x61c8864680b583ebL
+                var z = state
+                z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+                z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+                coefficients[i] = z xor (z ushr 31)
+            }
+        }
+    }
+}
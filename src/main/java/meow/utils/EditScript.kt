@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import meow.utils.MinimunEditDistance.Modification
+
+/**
+ * Edit script between two sequences of node ids, stored as a byte array of operations and a long array of ids.
+ * The common prefix is only counted: op(i) and id(i) give the operations following it, the common suffix being
+ * their trailing Keep operations, which are not stored either.
+ */
+class EditScript private constructor(private val former: LongArray, val prefix: Int, val suffix: Int, private val ops: ByteArray, private val ids: LongArray, private val middle: Int,
+                                     /**
+                                      * whether the middle is replaced as a whole (all suppressions, then all insertions) rather than diffed
+                                      */
+                                     val rewritten: Boolean) {
+
+    /**
+     * number of operations after the common prefix
+     */
+    val size: Int
+        get() = middle + suffix
+
+    fun op(i: Int): Modification {
+        if (i < 0 || i >= size) throw IndexOutOfBoundsException("index $i, size $size")
+        return if (i < middle) MODIFICATIONS[ops[i].toInt()] else Modification.Keep
+    }
+
+    fun id(i: Int): Long {
+        if (i < 0 || i >= size) throw IndexOutOfBoundsException("index $i, size $size")
+        return if (i < middle) ids[i] else former[former.size - suffix + i - middle]
+    }
+
+    /**
+     * id at index i of the common prefix, kept by both sequences
+     */
+    fun prefixId(i: Int): Long {
+        if (i < 0 || i >= prefix) throw IndexOutOfBoundsException("index $i, prefix $prefix")
+        return former[i]
+    }
+
+    fun editDistance(): Int {
+        var distance = 0
+        for (i in 0..middle - 1) {
+            if (ops[i] != KEEP) distance++
+        }
+        return distance
+    }
+
+    /**
+     * The whole path, common prefix included, as MinimunEditDistance.path gives it
+     */
+    fun toPath(): List<Pair<Long, Modification>> {
+        val path = ArrayList<Pair<Long, Modification>>(prefix + size)
+        for (i in 0..prefix - 1) path.add(Pair(former[i], Modification.Keep))
+        for (i in 0..size - 1) path.add(Pair(id(i), op(i)))
+        return path
+    }
+
+    class Builder(private val former: LongArray, private val prefix: Int, private val suffix: Int) {
+        private var ops = ByteArray(16)
+        private var ids = LongArray(16)
+        private var size = 0
+        var rewritten = false
+
+        fun add(modification: Modification, id: Long) {
+            if (size == ops.size) {
+                ops = ops.copyOf(size * 2)
+                ids = ids.copyOf(size * 2)
+            }
+            ops[size] = modification.ordinal.toByte()
+            ids[size] = id
+            size++
+        }
+
+        fun build(): EditScript {
+            return EditScript(former, prefix, suffix, ops, ids, size, rewritten)
+        }
+    }
+
+    companion object {
+        private val MODIFICATIONS = Modification.values()
+        private val KEEP = Modification.Keep.ordinal.toByte()
+    }
+}
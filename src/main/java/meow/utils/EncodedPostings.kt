@@ -0,0 +1,184 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import java.io.ByteArrayOutputStream
+
+/**
+ * VByte encoding of sorted positions, stored as a long array attribute.
+ *
+ * Layout (bytes, packed little endian in the longs following the byte length stored in the first long):
+ * size, number of skips, (value, payload offset) for every SKIP_INTERVAL posting, then the VByte deltas.
+ */
+object EncodedPostings {
+
+    const val SKIP_INTERVAL = 64
+    const val NO_MORE_POSITIONS = -1
+
+    @JvmStatic
+    fun encode(sortedPositions: IntArray): LongArray {
+        val payload = ByteArrayOutputStream(sortedPositions.size + 8)
+        val skips = ByteArrayOutputStream()
+        var previous = 0
+        var skipCount = 0
+        for (i in 0..sortedPositions.size - 1) {
+            val position = sortedPositions[i]
+            if (position < previous) throw IllegalArgumentException("positions must be sorted to be encoded")
+            writeVarInt(payload, position - previous)
+            previous = position
+            if (i != 0 && i % SKIP_INTERVAL == 0) {
+                writeVarInt(skips, position)
+                writeVarInt(skips, payload.size())
+                skipCount++
+            }
+        }
+        val header = ByteArrayOutputStream()
+        writeVarInt(header, sortedPositions.size)
+        writeVarInt(header, skipCount)
+        skips.writeTo(header)
+        payload.writeTo(header)
+        return pack(header.toByteArray())
+    }
+
+    @JvmStatic
+    fun decode(encoded: LongArray): IntArray {
+        val iterator = PostingIterator(encoded)
+        val positions = IntArray(iterator.size)
+        var i = 0
+        while (iterator.hasNext()) {
+            positions[i] = iterator.next()
+            i++
+        }
+        return positions
+    }
+
+    /**
+     * number of positions, only the header is read
+     */
+    @JvmStatic
+    fun size(encoded: LongArray): Int {
+        if (encoded.size < 2) return 0
+        return readVarInt(encoded, intArrayOf(0))
+    }
+
+    @JvmStatic
+    fun iterator(encoded: LongArray): PostingIterator {
+        return PostingIterator(encoded)
+    }
+
+    private fun pack(bytes: ByteArray): LongArray {
+        val packed = LongArray(1 + (bytes.size + 7) / 8)
+        packed[0] = bytes.size.toLong()
+        for (i in 0..bytes.size - 1) {
+            packed[1 + (i ushr 3)] = packed[1 + (i ushr 3)] or ((bytes[i].toLong() and 0xFF) shl ((i and 7) shl 3))
+        }
+        return packed
+    }
+
+    internal fun readByte(encoded: LongArray, offset: Int): Int {
+        return ((encoded[1 + (offset ushr 3)] ushr ((offset and 7) shl 3)) and 0xFF).toInt()
+    }
+
+    internal fun readVarInt(encoded: LongArray, offset: IntArray): Int {
+        var result = 0
+        var shift = 0
+        while (true) {
+            val b = readByte(encoded, offset[0])
+            offset[0]++
+            result = result or ((b and 0x7F) shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+    }
+
+    private fun writeVarInt(buffer: ByteArrayOutputStream, value: Int) {
+        var v = value
+        while (v and 0x7F.inv() != 0) {
+            buffer.write((v and 0x7F) or 0x80)
+            v = v ushr 7
+        }
+        buffer.write(v)
+    }
+
+    /**
+     * Decode-on-read iterator over encoded positions, advanceTo uses the skip pointers to jump over whole blocks
+     */
+    class PostingIterator(private val encoded: LongArray) {
+
+        val size: Int
+        private val skipValues: IntArray
+        private val skipOffsets: IntArray
+        private val offset = intArrayOf(0)
+        private var index = 0
+        private var current = 0
+        private var nextSkip = 0
+
+        init {
+            if (encoded.size < 2) {
+                size = 0
+                skipValues = IntArray(0)
+                skipOffsets = IntArray(0)
+            } else {
+                size = EncodedPostings.readVarInt(encoded, offset)
+                val skipCount = EncodedPostings.readVarInt(encoded, offset)
+                skipValues = IntArray(skipCount)
+                skipOffsets = IntArray(skipCount)
+                for (k in 0..skipCount - 1) {
+                    skipValues[k] = EncodedPostings.readVarInt(encoded, offset)
+                    skipOffsets[k] = EncodedPostings.readVarInt(encoded, offset)
+                }
+                val payloadStart = offset[0]
+                for (k in 0..skipCount - 1) {
+                    skipOffsets[k] += payloadStart
+                }
+            }
+        }
+
+        fun hasNext(): Boolean {
+            return index < size
+        }
+
+        fun next(): Int {
+            if (!hasNext()) throw NoSuchElementException()
+            current += EncodedPostings.readVarInt(encoded, offset)
+            index++
+            return current
+        }
+
+        /**
+         * @return the first position greater or equal to target, the last returned one included, or NO_MORE_POSITIONS
+         */
+        fun advanceTo(target: Int): Int {
+            if (index > 0 && current >= target) return current
+            var skip = -1
+            while (nextSkip < skipValues.size && skipValues[nextSkip] <= target) {
+                if ((nextSkip + 1) * EncodedPostings.SKIP_INTERVAL >= index) skip = nextSkip
+                nextSkip++
+            }
+            if (skip != -1) {
+                index = (skip + 1) * EncodedPostings.SKIP_INTERVAL + 1
+                current = skipValues[skip]
+                offset[0] = skipOffsets[skip]
+                if (current >= target) return current
+            }
+            while (hasNext()) {
+                val position = next()
+                if (position >= target) return position
+            }
+            return EncodedPostings.NO_MORE_POSITIONS
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import greycat.Graph
+import greycat.Node
+import greycat.Task
+import greycat.TaskResult
+import greycat.Tasks.newTask
+import greycat.plugin.SchedulerAffinity
+import meow.tokens.TokensConstants.II_TC
+import meow.tokens.TokensConstants.INVERTED_INDEX_POSITION
+import java.util.WeakHashMap
+
+/**
+ * Read-through cache of the decoded inverted indexes of a token or ngram, keyed by (graph, world, time, token or ngram id).
+ * Entries of an id in a graph are dropped as a whole by invalidate, which the relation tasks call for every token or ngram
+ * whose inverted indexes they modify.
+ */
+object InvertedIndexCache {
+
+    const val MAX_IDS = 4096
+    const val MAX_SNAPSHOTS_PER_ID = 16
+
+    /**
+     * Encoded positions keyed by tokenized content id
+     */
+    class Postings(val byContent: Map<Long, LongArray>) {
+
+        fun ids(): LongArray {
+            val ids = byContent.keys.toLongArray()
+            ids.sort()
+            return ids
+        }
+
+        fun tf(tokenizedContent: Long): Int {
+            val encoded = byContent[tokenizedContent] ?: return 0
+            return EncodedPostings.size(encoded)
+        }
+
+        fun count(): Int {
+            return byContent.values.sumBy { EncodedPostings.size(it) }
+        }
+
+        companion object {
+            @JvmField
+            val EMPTY = Postings(emptyMap())
+
+            /**
+             * inverted indexes without any position are left out
+             */
+            @JvmStatic
+            fun of(invertedIndexes: TaskResult<Node>): Postings {
+                val byContent = HashMap<Long, LongArray>()
+                for (i in 0..invertedIndexes.size() - 1) {
+                    val invertedIndex = invertedIndexes[i]
+                    if (PositionPostingList.count(invertedIndex) == 0) continue
+                    byContent.put(invertedIndex.get(II_TC) as Long, encodedPositions(invertedIndex))
+                }
+                return Postings(byContent)
+            }
+
+            private fun encodedPositions(invertedIndex: Node): LongArray {
+                val stored = invertedIndex.get(INVERTED_INDEX_POSITION)
+                if (stored is LongArray) return stored.copyOf()
+                val positions = PositionPostingList.read(invertedIndex).toIntArray()
+                positions.sort()
+                return EncodedPostings.encode(positions)
+            }
+        }
+    }
+
+    /**
+     * one cache per graph, dropped with it: node ids restart from the same values in every graph
+     */
+    private val caches = WeakHashMap<Graph, LinkedHashMap<Long, LinkedHashMap<String, Postings>>>()
+
+    private fun cache(graph: Graph): LinkedHashMap<Long, LinkedHashMap<String, Postings>> {
+        var cache = caches[graph]
+        if (cache == null) {
+            cache = object : LinkedHashMap<Long, LinkedHashMap<String, Postings>>(MAX_IDS, 0.75f, true) {
+                override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Long, LinkedHashMap<String, Postings>>?): Boolean {
+                    return size > MAX_IDS
+                }
+            }
+            caches.put(graph, cache)
+        }
+        return cache
+    }
+
+    @JvmStatic
+    fun get(graph: Graph, world: Long, time: Long, id: Long): Postings? {
+        synchronized(caches) {
+            return caches[graph]?.get(id)?.get(snapshotKey(world, time))
+        }
+    }
+
+    @JvmStatic
+    fun put(graph: Graph, world: Long, time: Long, id: Long, postings: Postings) {
+        synchronized(caches) {
+            val cache = cache(graph)
+            var snapshots = cache[id]
+            if (snapshots == null) {
+                snapshots = object : LinkedHashMap<String, Postings>(MAX_SNAPSHOTS_PER_ID, 0.75f, true) {
+                    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Postings>?): Boolean {
+                        return size > MAX_SNAPSHOTS_PER_ID
+                    }
+                }
+                cache.put(id, snapshots)
+            }
+            snapshots.put(snapshotKey(world, time), postings)
+        }
+    }
+
+    private fun snapshotKey(world: Long, time: Long): String {
+        return "$world;$time"
+    }
+
+    @JvmStatic
+    fun invalidate(graph: Graph, id: Long) {
+        synchronized(caches) {
+            caches[graph]?.remove(id)
+        }
+    }
+
+    @JvmStatic
+    fun clear(graph: Graph) {
+        synchronized(caches) {
+            caches.remove(graph)
+        }
+    }
+
+    /**
+     * Replace the token or ngram in result by its Postings, through the cache, the inverted indexes being reached by relation.
+     * An empty result gives Postings.EMPTY.
+     */
+    @JvmStatic
+    fun readPostings(relation: String): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    if (ctx.result().size() == 0) {
+                        ctx.continueWith(ctx.wrap(Postings.EMPTY))
+                    } else {
+                        val id = ctx.resultAsNodes()[0].id()
+                        val cached = get(ctx.graph(), ctx.world(), ctx.time(), id)
+                        if (cached != null) {
+                            ctx.continueWith(ctx.wrap(cached))
+                        } else {
+                            newTask()
+                                    .traverse(relation)
+                                    .thenDo { subCtx ->
+                                        val postings = Postings.of(subCtx.resultAsNodes())
+                                        put(ctx.graph(), ctx.world(), ctx.time(), id, postings)
+                                        subCtx.continueWith(subCtx.wrap(postings))
+                                    }
+                                    .executeFrom(ctx, ctx.result(), SchedulerAffinity.SAME_THREAD) { res -> ctx.continueWith(res) }
+                        }
+                    }
+                }
+    }
+}
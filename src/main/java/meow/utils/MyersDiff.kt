@@ -0,0 +1,198 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import meow.utils.MinimunEditDistance.Modification
+
+/**
+ * Myers O((N+M)D) diff of two sequences of node ids, in linear space.
+ * The middle of an optimal path is found by searching from both ends at once (Hirschberg-style divide and conquer),
+ * only the two vectors of furthest reaching paths being kept, so no N×M matrix is ever allocated.
+ *
+ * The path has the same meaning as the one of MinimunEditDistance: walking it in order, a Keep advances in both sequences,
+ * a Suppression in the former one and an Insertion in the newer one.
+ */
+object MyersDiff {
+
+    @JvmStatic
+    fun path(former: LongArray, newer: LongArray): List<Pair<Long, Modification>> {
+        return script(former, newer).toPath()
+    }
+
+    @JvmStatic
+    fun editDistance(former: LongArray, newer: LongArray): Int {
+        return script(former, newer).editDistance()
+    }
+
+    /**
+     * Edit script as primitive arrays, the common prefix and suffix being trimmed before any search
+     */
+    @JvmStatic
+    fun script(former: LongArray, newer: LongArray): EditScript {
+        return boundedScript(former, newer, former.size + newer.size)
+    }
+
+    /**
+     * Edit script of at most maxDistance edits.
+     * If the sequences differ more, everything between the common prefix and suffix is replaced instead:
+     * all its former ids are suppressed, then all its newer ids inserted, and the script is marked as rewritten.
+     * The first middle snake search is stopped after maxDistance edits (Ukkonen's cutoff): it either tells that the budget
+     * is exceeded, at a cost of O((N+M)·maxDistance) at worst, or gives the split the diff goes on from.
+     */
+    @JvmStatic
+    fun boundedScript(former: LongArray, newer: LongArray, maxDistance: Int): EditScript {
+        var prefix = 0
+        while (prefix < former.size && prefix < newer.size && former[prefix] == newer[prefix]) prefix++
+        var suffix = 0
+        while (former.size - suffix > prefix && newer.size - suffix > prefix && former[former.size - 1 - suffix] == newer[newer.size - 1 - suffix]) suffix++
+        val builder = EditScript.Builder(former, prefix, suffix)
+        val formerEnd = former.size - suffix
+        val newerEnd = newer.size - suffix
+        val n = formerEnd - prefix
+        val m = newerEnd - prefix
+        var within = false
+        if (n == 0 || m == 0) {
+            within = n + m <= maxDistance
+            if (within) diff(former, prefix, formerEnd, newer, prefix, newerEnd, builder)
+        } else if (Math.abs(n - m) <= maxDistance) {
+            val split = bisect(former, prefix, formerEnd, newer, prefix, newerEnd, (maxDistance + 1) / 2)
+            within = split != null && split[2] <= maxDistance
+            if (within) {
+                diff(former, prefix, split!![0], newer, prefix, split[1], builder)
+                diff(former, split[0], formerEnd, newer, split[1], newerEnd, builder)
+            }
+        }
+        if (!within) {
+            for (i in prefix..formerEnd - 1) builder.add(Modification.Suppression, former[i])
+            for (i in prefix..newerEnd - 1) builder.add(Modification.Insertion, newer[i])
+            builder.rewritten = true
+        }
+        return builder.build()
+    }
+
+    /**
+     * Rewritten script replacing the whole former sequence by the newer one, no prefix nor suffix being kept,
+     * for the positions that can not be derived from the indexes of the sequences
+     */
+    @JvmStatic
+    fun rewriteScript(former: LongArray, newer: LongArray): EditScript {
+        val builder = EditScript.Builder(former, 0, 0)
+        for (id in former) builder.add(Modification.Suppression, id)
+        for (id in newer) builder.add(Modification.Insertion, id)
+        builder.rewritten = true
+        return builder.build()
+    }
+
+    private fun diff(former: LongArray, formerStart: Int, formerEnd: Int, newer: LongArray, newerStart: Int, newerEnd: Int, script: EditScript.Builder) {
+        var prefix = 0
+        while (formerStart + prefix < formerEnd && newerStart + prefix < newerEnd && former[formerStart + prefix] == newer[newerStart + prefix]) prefix++
+        var suffix = 0
+        while (formerEnd - suffix > formerStart + prefix && newerEnd - suffix > newerStart + prefix && former[formerEnd - 1 - suffix] == newer[newerEnd - 1 - suffix]) suffix++
+
+        for (i in formerStart..formerStart + prefix - 1) script.add(Modification.Keep, former[i])
+        val formerFrom = formerStart + prefix
+        val formerTo = formerEnd - suffix
+        val newerFrom = newerStart + prefix
+        val newerTo = newerEnd - suffix
+        if (formerFrom == formerTo) {
+            for (i in newerFrom..newerTo - 1) script.add(Modification.Insertion, newer[i])
+        } else if (newerFrom == newerTo) {
+            for (i in formerFrom..formerTo - 1) script.add(Modification.Suppression, former[i])
+        } else {
+            val split = bisect(former, formerFrom, formerTo, newer, newerFrom, newerTo, (formerTo - formerFrom + newerTo - newerFrom + 1) / 2)
+            if (split == null) {
+                for (i in formerFrom..formerTo - 1) script.add(Modification.Suppression, former[i])
+                for (i in newerFrom..newerTo - 1) script.add(Modification.Insertion, newer[i])
+            } else {
+                diff(former, formerFrom, split[0], newer, newerFrom, split[1], script)
+                diff(former, split[0], formerTo, newer, split[1], newerTo, script)
+            }
+        }
+        for (i in formerTo..formerEnd - 1) script.add(Modification.Keep, former[i])
+    }
+
+    /**
+     * Point (former index, newer index) where the forward and backward searches of an optimal path meet, followed by the
+     * edit distance, null if they do not meet within maxSteps steps each, ceil(D/2) steps being needed for a distance D
+     */
+    private fun bisect(former: LongArray, formerFrom: Int, formerTo: Int, newer: LongArray, newerFrom: Int, newerTo: Int, maxSteps: Int): IntArray? {
+        val n = formerTo - formerFrom
+        val m = newerTo - newerFrom
+        val maxD = Math.min((n + m + 1) / 2, maxSteps)
+        val offset = maxD
+        val length = 2 * maxD + 2
+        val forward = IntArray(length, { -1 })
+        val backward = IntArray(length, { -1 })
+        forward[offset + 1] = 0
+        backward[offset + 1] = 0
+        val delta = n - m
+        // with an odd delta the paths meet during a forward step, otherwise during a backward one
+        val front = delta % 2 != 0
+        var k1start = 0
+        var k1end = 0
+        var k2start = 0
+        var k2end = 0
+        for (d in 0..maxD) {
+            var k1 = -d + k1start
+            while (k1 <= d - k1end) {
+                val k1Offset = offset + k1
+                var x1 = if (k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])) forward[k1Offset + 1] else forward[k1Offset - 1] + 1
+                var y1 = x1 - k1
+                while (x1 < n && y1 < m && former[formerFrom + x1] == newer[newerFrom + y1]) {
+                    x1++
+                    y1++
+                }
+                forward[k1Offset] = x1
+                if (x1 > n) {
+                    k1end += 2
+                } else if (y1 > m) {
+                    k1start += 2
+                } else if (front) {
+                    val k2Offset = offset + delta - k1
+                    if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1 && x1 >= n - backward[k2Offset]) {
+                        return intArrayOf(formerFrom + x1, newerFrom + y1, 2 * d - 1)
+                    }
+                }
+                k1 += 2
+            }
+            var k2 = -d + k2start
+            while (k2 <= d - k2end) {
+                val k2Offset = offset + k2
+                var x2 = if (k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])) backward[k2Offset + 1] else backward[k2Offset - 1] + 1
+                var y2 = x2 - k2
+                while (x2 < n && y2 < m && former[formerTo - 1 - x2] == newer[newerTo - 1 - y2]) {
+                    x2++
+                    y2++
+                }
+                backward[k2Offset] = x2
+                if (x2 > n) {
+                    k2end += 2
+                } else if (y2 > m) {
+                    k2start += 2
+                } else if (!front) {
+                    val k1Offset = offset + delta - k2
+                    if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+                        val x1 = forward[k1Offset]
+                        val y1 = x1 - (k1Offset - offset)
+                        if (x1 >= n - x2) return intArrayOf(formerFrom + x1, newerFrom + y1, 2 * d)
+                    }
+                }
+                k2 += 2
+            }
+        }
+        return null
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import greycat.Node
+
+/**
+ * Pending position modifications keyed by node id, usually the inverted index one.
+ * Each inverted index is read once, modified in memory and written back once by UtilTask.flushPostings
+ */
+class PositionPostingBuffer {
+
+    private val postings = LinkedHashMap<Long, PositionPostingList>()
+
+    fun of(invertedIndex: Node): PositionPostingList {
+        val id = invertedIndex.id()
+        val existing = postings[id]
+        if (existing != null) return existing
+        val loaded = PositionPostingList.read(invertedIndex)
+        postings.put(id, loaded)
+        return loaded
+    }
+
+    fun append(id: Long, position: Int) {
+        var list = postings[id]
+        if (list == null) {
+            list = PositionPostingList()
+            postings.put(id, list)
+        }
+        list.add(position)
+    }
+
+    /**
+     * replace the positions of an inverted index, whatever they were
+     */
+    fun set(invertedIndexId: Long, positions: PositionPostingList) {
+        postings.put(invertedIndexId, positions)
+    }
+
+    fun get(invertedIndexId: Long): PositionPostingList? {
+        return postings[invertedIndexId]
+    }
+
+    fun ids(): LongArray {
+        return postings.keys.toLongArray()
+    }
+
+    fun isEmpty(): Boolean {
+        return postings.isEmpty()
+    }
+
+    fun clear() {
+        postings.clear()
+    }
+}
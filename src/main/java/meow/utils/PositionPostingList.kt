@@ -0,0 +1,204 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import greycat.Node
+import greycat.Type
+import meow.tokens.TokensConstants.COMPRESSED_POSITIONS
+import meow.tokens.TokensConstants.INVERTED_INDEX_POSITION
+
+/**
+ * Growable sorted list of the positions of a token (or ngram) inside a tokenized content.
+ * Appending in increasing order is amortized O(1), lookups are binary searches, and removals, insertions and shifts
+ * move the backing array in place, so a whole diff can be applied before writing the positions back once.
+ */
+class PositionPostingList(initial: IntArray?) {
+
+    private var positions: IntArray = if (initial != null) initial.copyOf(Math.max(initial.size, DEFAULT_CAPACITY)) else IntArray(DEFAULT_CAPACITY)
+
+    var size: Int = initial?.size ?: 0
+        private set
+
+    init {
+        // positions written before the list was kept sorted
+        for (i in 1..size - 1) {
+            if (positions[i - 1] > positions[i]) {
+                java.util.Arrays.sort(positions, 0, size)
+                break
+            }
+        }
+    }
+
+    constructor() : this(null)
+
+    /**
+     * add the position at its sorted place, an append when it is the greatest one
+     */
+    fun add(position: Int) {
+        ensureCapacity(size + 1)
+        if (size == 0 || positions[size - 1] < position) {
+            positions[size] = position
+        } else {
+            val index = -(java.util.Arrays.binarySearch(positions, 0, size, position) + 1)
+            if (index < 0) return
+            System.arraycopy(positions, index, positions, index + 1, size - index)
+            positions[index] = position
+        }
+        size++
+    }
+
+    /**
+     * remove the position, shifting the tail in place
+     */
+    fun remove(position: Int): Boolean {
+        val index = indexOf(position)
+        if (index == -1) return false
+        removeAt(index)
+        return true
+    }
+
+    fun removeAt(index: Int): Int {
+        if (index < 0 || index >= size) throw IndexOutOfBoundsException("index $index, size $size")
+        val removed = positions[index]
+        System.arraycopy(positions, index + 1, positions, index, size - index - 1)
+        size--
+        return removed
+    }
+
+    /**
+     * remove former and add newer at its sorted place
+     */
+    fun replace(former: Int, newer: Int) {
+        remove(former)
+        add(newer)
+    }
+
+    /**
+     * add delta to every position greater than or equal to from, in a single pass over the tail;
+     * the caller makes sure the shifted positions stay above the ones before from
+     */
+    fun shift(from: Int, delta: Int) {
+        if (delta == 0) return
+        for (i in firstIndexFrom(from)..size - 1) {
+            positions[i] += delta
+        }
+    }
+
+    /**
+     * remove every position greater than or equal to from, in place
+     */
+    fun removeFrom(from: Int) {
+        size = firstIndexFrom(from)
+    }
+
+    operator fun get(index: Int): Int {
+        if (index < 0 || index >= size) throw IndexOutOfBoundsException("index $index, size $size")
+        return positions[index]
+    }
+
+    fun indexOf(position: Int): Int {
+        val index = java.util.Arrays.binarySearch(positions, 0, size, position)
+        return if (index >= 0) index else -1
+    }
+
+    fun contains(position: Int): Boolean {
+        return indexOf(position) != -1
+    }
+
+    fun isEmpty(): Boolean {
+        return size == 0
+    }
+
+    fun toIntArray(): IntArray {
+        return positions.copyOf(size)
+    }
+
+    /**
+     * index of the first position greater than or equal to from, size if there is none
+     */
+    private fun firstIndexFrom(from: Int): Int {
+        val index = java.util.Arrays.binarySearch(positions, 0, size, from)
+        return if (index >= 0) index else -(index + 1)
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity > positions.size) {
+            positions = positions.copyOf(Math.max(capacity, positions.size * 2))
+        }
+    }
+
+    companion object {
+        const val DEFAULT_CAPACITY = 4
+
+        /**
+         * Read the positions stored in an inverted index node, either raw or encoded
+         */
+        @JvmStatic
+        fun read(node: Node): PositionPostingList {
+            val stored = node.get(INVERTED_INDEX_POSITION)
+            when (stored) {
+                null -> return PositionPostingList()
+                is IntArray -> return PositionPostingList(stored)
+                is LongArray -> return PositionPostingList(EncodedPostings.decode(stored))
+                else -> throw RuntimeException("unknown position format")
+            }
+        }
+
+        /**
+         * Number of positions stored in an inverted index node, without decoding them
+         */
+        @JvmStatic
+        fun count(node: Node): Int {
+            val stored = node.get(INVERTED_INDEX_POSITION)
+            when (stored) {
+                null -> return 0
+                is IntArray -> return stored.size
+                is LongArray -> return EncodedPostings.size(stored)
+                else -> throw RuntimeException("unknown position format")
+            }
+        }
+
+        /**
+         * Sorted iterator over the positions stored in an inverted index node
+         */
+        @JvmStatic
+        fun iterator(node: Node): EncodedPostings.PostingIterator {
+            val stored = node.get(INVERTED_INDEX_POSITION)
+            when (stored) {
+                is LongArray -> return EncodedPostings.iterator(stored)
+                else -> {
+                    val positions = read(node).toIntArray()
+                    java.util.Arrays.sort(positions)
+                    return EncodedPostings.iterator(EncodedPostings.encode(positions))
+                }
+            }
+        }
+
+        /**
+         * Write back the positions in an inverted index node, sorted and encoded if COMPRESSED_POSITIONS is set
+         */
+        @JvmStatic
+        fun write(node: Node, postings: PositionPostingList) {
+            val positions = postings.toIntArray()
+            if (COMPRESSED_POSITIONS) {
+                java.util.Arrays.sort(positions)
+                node.set(INVERTED_INDEX_POSITION, Type.LONG_ARRAY, EncodedPostings.encode(positions))
+            } else {
+                node.set(INVERTED_INDEX_POSITION, Type.INT_ARRAY, positions)
+            }
+        }
+    }
+}
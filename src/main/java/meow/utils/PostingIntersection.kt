@@ -0,0 +1,137 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+/**
+ * Intersections of sorted postings, tokenized content ids for documents and positions for phrases
+ */
+object PostingIntersection {
+
+    /**
+     * Galloping search
+     * @return the first index, starting from from, whose value is greater or equal to target, sorted.size if none
+     */
+    @JvmStatic
+    fun gallop(sorted: LongArray, from: Int, target: Long): Int {
+        if (from >= sorted.size || sorted[from] >= target) return from
+        var low = from
+        var step = 1
+        var high = from + step
+        while (high < sorted.size && sorted[high] < target) {
+            low = high
+            step = step shl 1
+            high = from + step
+        }
+        if (high > sorted.size) high = sorted.size
+        // sorted[low] < target <= sorted[high]
+        while (low + 1 < high) {
+            val middle = (low + high) ushr 1
+            if (sorted[middle] < target) low = middle else high = middle
+        }
+        return high
+    }
+
+    /**
+     * Intersection of sorted arrays of distinct values, the smallest one drives the others that are galloped through
+     */
+    @JvmStatic
+    fun intersect(lists: List<LongArray>): LongArray {
+        if (lists.isEmpty()) return LongArray(0)
+        val bySize = lists.sortedBy { it.size }
+        val smallest = bySize[0]
+        val cursors = IntArray(bySize.size)
+        val result = mutableListOf<Long>()
+        candidates@ for (candidate in smallest) {
+            for (k in 1..bySize.size - 1) {
+                cursors[k] = gallop(bySize[k], cursors[k], candidate)
+                if (cursors[k] == bySize[k].size) break@candidates
+                if (bySize[k][cursors[k]] != candidate) continue@candidates
+            }
+            result.add(candidate)
+        }
+        return result.toLongArray()
+    }
+
+    /**
+     * Adjacency merge of the positions of the tokens of a phrase, iterators[j] being the positions of the j-th token
+     * @return the first position p such that the j-th token is at p + j for every j, or NO_MORE_POSITIONS
+     */
+    @JvmStatic
+    fun firstPhrasePosition(iterators: Array<EncodedPostings.PostingIterator>): Int {
+        return nextPhrasePosition(iterators, 0)
+    }
+
+    /**
+     * Every position of the phrase, in order, occurrences being allowed to overlap
+     */
+    @JvmStatic
+    fun phrasePositions(iterators: Array<EncodedPostings.PostingIterator>): IntArray {
+        val positions = PositionPostingList()
+        var position = nextPhrasePosition(iterators, 0)
+        while (position != EncodedPostings.NO_MORE_POSITIONS) {
+            positions.add(position)
+            position = nextPhrasePosition(iterators, position + 1)
+        }
+        return positions.toIntArray()
+    }
+
+    /**
+     * Occurrences of a k-skip-n-gram, positions[j] being the sorted positions of its j-th token:
+     * the number of increasing position tuples, one per token, whose gaps add up to at most skip.
+     * Dynamic programming over the tokens, ways[r][g] counting the partial matches ending at the r-th position
+     * of the current token with g skipped positions.
+     */
+    @JvmStatic
+    fun skipGramOccurrences(positions: Array<IntArray>, skip: Int): Int {
+        if (positions.isEmpty()) return 0
+        var ways = Array(positions[0].size, { val first = IntArray(skip + 1); first[0] = 1; first })
+        for (j in 1..positions.size - 1) {
+            val previous = positions[j - 1]
+            val current = Array(positions[j].size, { IntArray(skip + 1) })
+            var low = 0
+            for (q in 0..positions[j].size - 1) {
+                val position = positions[j][q]
+                while (low < previous.size && previous[low] < position - skip - 1) low++
+                var r = low
+                while (r < previous.size && previous[r] < position) {
+                    val gap = position - previous[r] - 1
+                    for (g in 0..skip - gap) current[q][g + gap] += ways[r][g]
+                    r++
+                }
+            }
+            ways = current
+        }
+        return ways.sumBy { it.sum() }
+    }
+
+    private fun nextPhrasePosition(iterators: Array<EncodedPostings.PostingIterator>, from: Int): Int {
+        if (iterators.isEmpty()) return EncodedPostings.NO_MORE_POSITIONS
+        var target = from
+        while (true) {
+            var aligned = true
+            for (j in 0..iterators.size - 1) {
+                val position = iterators[j].advanceTo(target + j)
+                if (position == EncodedPostings.NO_MORE_POSITIONS) return EncodedPostings.NO_MORE_POSITIONS
+                if (position != target + j) {
+                    target = position - j
+                    aligned = false
+                    break
+                }
+            }
+            if (aligned) return target
+        }
+    }
+}
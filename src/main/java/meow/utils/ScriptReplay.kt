@@ -0,0 +1,205 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import greycat.Callback
+import greycat.Node
+import greycat.TaskContext
+import meow.utils.MinimunEditDistance.Modification
+import java.util.Arrays
+
+/**
+ * Replay of an EditScript on the positions a tokenized content has in the inverted indexes of the script ids (tokens or ngrams).
+ * It is done by a single action: the script is walked over its primitive arrays, the inverted indexes of the ids whose
+ * positions move are reached by one lookup and one traversal under their external locks, the missing ones being
+ * created for inserted ids (see UtilTask.invertedIndexesLocked),
+ * then the positions are moved in the PositionPostingBuffer that UtilTask.flushPostings writes back afterwards.
+ * A rewritten script (over its edit budget) is applied in bulk instead of operation by operation.
+ * Positions are the indexes in the sequences unless their starts are given, as for the segmented windows of NgramWindows.
+ */
+object ScriptReplay {
+
+    /**
+     * @param ownerRelation relation from an inverted index to its token or ngram
+     * @param invertedIndexRelation indexed relation from a token or ngram to its inverted indexes
+     * @param inserted if not null, called for every id having insertions with its node and its resulting number of positions
+     * @param formerStarts if not null, the position of every index of the former sequence, newStarts being given too;
+     * the common prefix is then walked as well, the positions of its ids moving without them. Unused by a rewritten script
+     * @param newStarts if not null, the position of every index of the newer sequence; a rewritten script has to be
+     * one of MyersDiff.rewriteScript then
+     * @param done called once the positions are moved, the task being ended with an exception otherwise
+     */
+    @JvmStatic
+    fun replay(ctx: TaskContext, script: EditScript, tokenizedContent: Long, type: String, ownerRelation: String, invertedIndexRelation: String,
+               postings: PositionPostingBuffer, inserted: ((Node, Int) -> Unit)?, formerStarts: IntArray?, newStarts: IntArray?, done: () -> Unit) {
+        if (script.rewritten) {
+            if (newStarts != null && (script.prefix != 0 || script.suffix != 0)) throw IllegalArgumentException("Positions other than the indexes need a script rewriting the whole sequence")
+        } else if ((formerStarts == null) != (newStarts == null)) {
+            throw IllegalArgumentException("Positions other than the indexes are needed for both sequences")
+        }
+        val former = if (script.rewritten) null else formerStarts
+        // ids whose positions change, a Keep at the same position (same length before and after the edits) moves nothing
+        val first = firstStep(script, former)
+        val moving = LongArray(script.size - first)
+        var nbMoving = 0
+        var formerIndex = script.prefix + first
+        var newIndex = script.prefix + first
+        for (step in first..script.size - 1) {
+            val op = opAt(script, step)
+            if (op != Modification.Keep || position(former, formerIndex) != position(newStarts, newIndex)) moving[nbMoving++] = idAt(script, step)
+            if (op != Modification.Insertion) formerIndex++
+            if (op != Modification.Suppression) newIndex++
+        }
+        if (nbMoving == 0) {
+            done()
+            return
+        }
+        val owners = distinct(moving, nbMoving)
+        val insertions = BooleanArray(owners.size)
+        for (step in 0..script.size - 1) {
+            if (script.op(step) == Modification.Insertion) insertions[Arrays.binarySearch(owners, script.id(step))] = true
+        }
+        ctx.graph().lookupAll(ctx.world(), ctx.time(), owners, Callback<Array<Node>> { ownerNodes ->
+            UtilTask.invertedIndexesLocked(ctx, ownerNodes, tokenizedContent, type, ownerRelation, invertedIndexRelation, { k -> insertions[k] }) { invertedIndexes ->
+                var error: String? = null
+                for (k in 0..owners.size - 1) {
+                    if (invertedIndexes[k] == null) {
+                        error = "no inverted index of ${owners[k]} for $tokenizedContent"
+                        break
+                    }
+                }
+                if (error == null) error = move(script, owners, invertedIndexes, postings, former, newStarts)
+                if (error == null && inserted != null) {
+                    for (k in 0..owners.size - 1) {
+                        if (insertions[k]) inserted(ownerNodes[k], postings.of(invertedIndexes[k]!!).size)
+                    }
+                }
+                for (k in 0..owners.size - 1) {
+                    invertedIndexes[k]?.free()
+                    ownerNodes[k].free()
+                }
+                if (error != null) ctx.endTask(ctx.result(), RuntimeException(error))
+                else done()
+            }
+        })
+    }
+
+    /**
+     * the sorted distinct values of the first size ones of values
+     */
+    private fun distinct(values: LongArray, size: Int): LongArray {
+        val sorted = values.copyOf(size)
+        sorted.sort()
+        var nbDistinct = 0
+        for (i in 0..size - 1) {
+            if (i == 0 || sorted[i] != sorted[nbDistinct - 1]) sorted[nbDistinct++] = sorted[i]
+        }
+        return sorted.copyOf(nbDistinct)
+    }
+
+    /**
+     * Positions are moved in three bulk steps over the sorted lists: the suppressed ones are removed, then the kept ones
+     * are shifted, once per change of the offset between their former and new position, then the inserted ones are added.
+     * @return an error message if a suppressed position does not exist
+     */
+    private fun move(script: EditScript, owners: LongArray, invertedIndexes: Array<Node?>, postings: PositionPostingBuffer,
+                     formerStarts: IntArray?, newStarts: IntArray?): String? {
+        if (script.rewritten) {
+            rewrite(script, owners, invertedIndexes, postings, newStarts)
+            return null
+        }
+        val first = firstStep(script, formerStarts)
+        // former position from which the kept positions move by each new offset
+        val shiftFrom = IntArray(script.size - first)
+        val shiftBy = IntArray(script.size - first)
+        var nbShifts = 0
+        var offset = 0
+        var formerIndex = script.prefix + first
+        var newIndex = script.prefix + first
+        for (step in first..script.size - 1) {
+            when (opAt(script, step)) {
+                Modification.Suppression -> {
+                    if (!postings.of(invertedIndexes[Arrays.binarySearch(owners, script.id(step))]!!).remove(position(formerStarts, formerIndex))) return "no position while delete"
+                    formerIndex++
+                }
+                Modification.Insertion -> newIndex++
+                else -> {
+                    val formerPosition = position(formerStarts, formerIndex)
+                    if (position(newStarts, newIndex) - formerPosition != offset) {
+                        offset = position(newStarts, newIndex) - formerPosition
+                        shiftFrom[nbShifts] = formerPosition
+                        shiftBy[nbShifts] = offset
+                        nbShifts++
+                    }
+                    formerIndex++
+                    newIndex++
+                }
+            }
+        }
+        for (k in 0..owners.size - 1) {
+            val positions = postings.of(invertedIndexes[k]!!)
+            // a shift moves the positions after it by its whole offset, the following ones only add their difference
+            var applied = 0
+            for (i in 0..nbShifts - 1) {
+                positions.shift(shiftFrom[i] + applied, shiftBy[i] - applied)
+                applied = shiftBy[i]
+            }
+        }
+        newIndex = script.prefix
+        for (step in 0..script.size - 1) {
+            val op = script.op(step)
+            if (op == Modification.Insertion) postings.of(invertedIndexes[Arrays.binarySearch(owners, script.id(step))]!!).add(position(newStarts, newIndex))
+            if (op != Modification.Suppression) newIndex++
+        }
+        return null
+    }
+
+    /**
+     * first step to walk: the one after the common prefix, or, the positions not being the indexes, the first one of
+     * the prefix, numbered from -prefix
+     */
+    private fun firstStep(script: EditScript, formerStarts: IntArray?): Int {
+        return if (formerStarts == null) 0 else -script.prefix
+    }
+
+    private fun opAt(script: EditScript, step: Int): Modification {
+        return if (step < 0) Modification.Keep else script.op(step)
+    }
+
+    private fun idAt(script: EditScript, step: Int): Long {
+        return if (step < 0) script.prefixId(script.prefix + step) else script.id(step)
+    }
+
+    private fun position(starts: IntArray?, index: Int): Int {
+        return if (starts == null) index else starts[index]
+    }
+
+    /**
+     * Bulk rewrite of a script over budget: every position after the common prefix is dropped at once,
+     * then the positions of the new content after it (its starts if any) are appended in order, no position being looked up
+     */
+    private fun rewrite(script: EditScript, owners: LongArray, invertedIndexes: Array<Node?>, postings: PositionPostingBuffer, newStarts: IntArray?) {
+        for (k in 0..owners.size - 1) postings.of(invertedIndexes[k]!!).removeFrom(script.prefix)
+        var newIndex = script.prefix
+        for (step in 0..script.size - 1) {
+            if (script.op(step) == Modification.Suppression) continue
+            val k = Arrays.binarySearch(owners, script.id(step))
+            // ids only kept at the same index were left untouched
+            if (k >= 0) postings.of(invertedIndexes[k]!!).add(position(newStarts, newIndex))
+            newIndex++
+        }
+    }
+}
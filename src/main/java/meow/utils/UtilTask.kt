@@ -15,9 +15,20 @@
  */
 package meow.utils
 
+import greycat.ActionFunction
+import greycat.Constants.BEGINNING_OF_TIME
+import greycat.Node
 import greycat.Task
+import greycat.TaskContext
 import greycat.Tasks.newTask
+import greycat.Tasks.thenDo
+import greycat.Type
+import greycat.plugin.SchedulerAffinity
+import greycat.struct.Relation
+import meow.tokens.TokensConstants.II_TC
 import meow.tokens.TokensConstants.NODE_TYPE
+import meow.tokens.TokensConstants.NODE_TYPE_INVERTED_INDEX
+import java.util.Arrays
 
 
 object UtilTask {
@@ -38,4 +49,113 @@ object UtilTask {
                 )
     }
 
-}
\ No newline at end of file
+    /**
+     * Write back once all the positions modified in the PositionPostingBuffer stored in bufferVar,
+     * the cached postings of the nodes reached by ownerRelation (the token or ngram of each inverted index) being invalidated
+     */
+    fun flushPostings(bufferVar: String, ownerRelation: String): Task {
+        return newTask()
+                .thenDo { ctx ->
+                    val buffer = ctx.variable(bufferVar)[0] as PositionPostingBuffer
+                    ctx.defineVariable("postingIds", buffer.ids().joinToString(prefix = "[", separator = ",", postfix = "]"))
+                    ctx.continueTask()
+                }
+                .ifThen({ ctx -> !(ctx.variable(bufferVar)[0] as PositionPostingBuffer).isEmpty() },
+                        newTask()
+                                .lookupAll("{{postingIds}}")
+                                .forEach(
+                                        thenDo { ctx ->
+                                            val buffer = ctx.variable(bufferVar)[0] as PositionPostingBuffer
+                                            val node = ctx.resultAsNodes()[0]
+                                            PositionPostingList.write(node, buffer.get(node.id())!!)
+                                            val owners = node.get(ownerRelation) as Relation?
+                                            if (owners != null) owners.all().take(owners.size()).forEach { InvertedIndexCache.invalidate(ctx.graph(), it) }
+                                            ctx.continueTask()
+                                        }
+                                )
+                )
+                .thenDo { ctx ->
+                    (ctx.variable(bufferVar)[0] as PositionPostingBuffer).clear()
+                    ctx.continueTask()
+                }
+    }
+
+    /**
+     * addVarToRelation holding the external lock of every node of the result, for nodes shared between parallel branches
+     */
+    fun addVarToRelationLocked(relation: String, varName: String, vararg attributes: String): ActionFunction {
+        return ActionFunction { ctx ->
+            val resolver = ctx.graph().resolver()
+            val nodes = ctx.resultAsNodes()
+            val toAdd = ctx.variable(varName)
+            for (i in 0..nodes.size() - 1) {
+                val node = nodes[i]
+                resolver.externalLock(node)
+                try {
+                    for (j in 0..toAdd.size() - 1) {
+                        node.addToRelation(relation, toAdd[j] as Node, *attributes)
+                    }
+                } finally {
+                    resolver.externalUnlock(node)
+                }
+            }
+            ctx.continueTask()
+        }
+    }
+
+    /**
+     * Result: the inverted index of the token or ngram of the result for the tokenized content of tokenizedContentVar,
+     * created with the type of typeVar if missing, see invertedIndexesLocked
+     */
+    fun lookupOrCreateInvertedIndexLocked(tokenizedContentVar: String, typeVar: String, ownerRelation: String, invertedIndexRelation: String): ActionFunction {
+        return ActionFunction { ctx ->
+            val owner = ctx.resultAsNodes()[0]
+            invertedIndexesLocked(ctx, arrayOf(owner), ctx.variable(tokenizedContentVar)[0] as Long, ctx.variable(typeVar)[0] as String,
+                    ownerRelation, invertedIndexRelation, { true }) { invertedIndexes ->
+                ctx.continueWith(ctx.wrap(invertedIndexes[0]))
+            }
+        }
+    }
+
+    /**
+     * Inverted indexes of the owners (tokens or ngrams) for the tokenized content, the missing ones being created
+     * at the beginning of time of world 0 when creatable(k) holds, null otherwise.
+     * The lookup and the creation are done holding the external lock of every owner, taken in increasing id order,
+     * so that parallel branches updating the same owner can neither miss an inverted index being created nor create two.
+     */
+    fun invertedIndexesLocked(ctx: TaskContext, owners: Array<Node>, tokenizedContent: Long, type: String, ownerRelation: String, invertedIndexRelation: String,
+                              creatable: (Int) -> Boolean, done: (Array<Node?>) -> Unit) {
+        val resolver = ctx.graph().resolver()
+        val ids = LongArray(owners.size, { owners[it].id() })
+        val order = (0..owners.size - 1).sortedBy { ids[it] }
+        for (k in order) resolver.externalLock(owners[k])
+        newTask()
+                .traverse(invertedIndexRelation, II_TC, "$tokenizedContent")
+                .executeFrom(ctx, ctx.wrap(owners), SchedulerAffinity.SAME_THREAD) { res ->
+                    val invertedIndexes = arrayOfNulls<Node>(owners.size)
+                    try {
+                        val sortedIds = ids.copyOf()
+                        sortedIds.sort()
+                        for (i in 0..res.size() - 1) {
+                            val invertedIndex = res[i] as Node
+                            val owner = (invertedIndex.get(ownerRelation) as Relation).get(0)
+                            invertedIndexes[order[Arrays.binarySearch(sortedIds, owner)]] = invertedIndex
+                        }
+                        for (k in 0..owners.size - 1) {
+                            if (invertedIndexes[k] != null || !creatable(k)) continue
+                            val invertedIndex = ctx.graph().newNode(0, BEGINNING_OF_TIME)
+                            invertedIndex.set(II_TC, Type.LONG, tokenizedContent)
+                            invertedIndex.set(NODE_TYPE, Type.STRING, NODE_TYPE_INVERTED_INDEX)
+                            invertedIndex.set("type", Type.STRING, type)
+                            invertedIndex.addToRelation(ownerRelation, owners[k])
+                            owners[k].addToRelation(invertedIndexRelation, invertedIndex, II_TC)
+                            invertedIndexes[k] = invertedIndex
+                        }
+                    } finally {
+                        for (k in order) resolver.externalUnlock(owners[k])
+                    }
+                    done(invertedIndexes)
+                }
+    }
+
+}
@@ -19,6 +19,7 @@ import greycat.*;
 import greycat.scheduler.NoopScheduler;
 import greycat.scheduler.TrampolineScheduler;
 import meow.tokens.TokenPlugin;
+import meow.languageprocessing.languagemodel.LanguageModelPlugin;
 import meow.languageprocessing.ngram.NgramPlugin;
 import mylittleplugin.MyLittleActionPlugin;
 
@@ -36,6 +37,7 @@ public class ActionTest {
                 .withPlugin(new TokenPlugin())
                 .withPlugin(new MyLittleActionPlugin())
                 .withPlugin(new NgramPlugin())
+                .withPlugin(new LanguageModelPlugin())
                 .withScheduler(new TrampolineScheduler()).build();
         final ActionTest selfPointer = this;
         graph.connect(new Callback<Boolean>() {
@@ -58,6 +60,7 @@ public class ActionTest {
                 .withPlugin(new TokenPlugin())
                 .withPlugin(new MyLittleActionPlugin())
                 .withPlugin(new NgramPlugin())
+                .withPlugin(new LanguageModelPlugin())
                 //.withPlugin(new OffHeapMemoryPlugin())
                 .withScheduler(new NoopScheduler()).build();
         final ActionTest selfPointer = this;
@@ -0,0 +1,244 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.languagemodel.nodes
+
+import greycat.Callback
+import greycat.Node
+import greycat.Tasks.newTask
+import meow.languageprocessing.ActionTest
+import meow.languageprocessing.corpus.actions.CorpusActions.addRemoveTokenizeContentsOfCorpus
+import meow.languageprocessing.corpus.actions.CorpusActions.initializeCorpus
+import meow.languageprocessing.languagemodel.task.NgramCorpusNodeTask
+import meow.languageprocessing.ngram.NgramConstants.BOS
+import meow.languageprocessing.ngram.actions.NgramActions.configureNgram
+import meow.languageprocessing.ngram.actions.NgramActions.configureNgramSentinels
+import meow.languageprocessing.ngram.actions.NgramActions.initializeNgram
+import meow.languageprocessing.ngram.actions.NgramActions.updateNgramTokenizedContentFromVar
+import meow.languageprocessing.ngram.task.NgramSentinels
+import meow.languageprocessing.ngram.task.SkipGramTask
+import meow.tokens.TokensConstants.ENTRY_POINT_INDEX
+import meow.tokens.TokensConstants.TOKENIZE_CONTENT_RELATION
+import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+import meow.tokens.actions.TokenActions.initializeVocabulary
+import meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer
+import meow.tokens.task.RelationTask
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+
+class NgramCorpusNodeTest : ActionTest() {
+
+    private val text1 = "the apple was looking over the cloud"
+
+    @Test
+    fun countAboveEagerOrderInCorpus() {
+        initGraph()
+        val counter = arrayOf(0)
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(6, 2))
+                .then(initializeCorpus())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", arrayOf("text1")))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tc")
+                .then(addRemoveTokenizeContentsOfCorpus(true, "tc", "myCorpus"))
+                .pipe(NgramCorpusNodeTask.getOrCreateNgramCorpus("myCorpus"))
+                .defineAsVar("ngramCorpus")
+                // the same text, with ngrams but out of the corpus
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer2")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer2", "nodevar", arrayOf("text2")))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tcs")
+                .then(updateNgramTokenizedContentFromVar("tcs"))
+                .then(getOrCreateTokensFromString("the", "apple", "was"))
+                .thenDo { ctx ->
+                    val ids = LongArray(3, { (ctx.result()[it] as Node).id() })
+                    val ngramCorpus = ctx.variable("ngramCorpus")[0] as NgramCorpusNode
+                    ngramCorpus.count(arrayOf(longArrayOf(ids[0]), longArrayOf(ids[1], ids[2]), ids, longArrayOf(ids[2], ids[1], ids[0])), Callback<IntArray> { counts ->
+                        assertArrayEquals(intArrayOf(2, 1, 1, 0), counts)
+                        counter[0]++
+                        ctx.continueTask()
+                    }, Callback<Exception> { e -> ctx.endTask(ctx.result(), e) })
+                }
+                .execute(graph, null)
+        assertEquals(1, counter[0])
+        removeGraph()
+    }
+
+    @Test
+    fun sketchLearnAndRebuild() {
+        initGraph()
+        val counter = arrayOf(0)
+        val theAppleWas = arrayOf(LongArray(0))
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(6, 2))
+                .then(initializeCorpus())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", arrayOf("text1")))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tc")
+                .then(addRemoveTokenizeContentsOfCorpus(true, "tc", "myCorpus"))
+                .pipe(NgramCorpusNodeTask.configureNgramCorpusSketch("myCorpus", 0.01, 0.01))
+                .defineAsVar("ngramCorpus")
+                .then(getOrCreateTokensFromString("the", "apple", "was"))
+                .thenDo { ctx ->
+                    val ids = LongArray(3, { (ctx.result()[it] as Node).id() })
+                    theAppleWas[0] = ids
+                    val ngramCorpus = ctx.variable("ngramCorpus")[0] as NgramCorpusNode
+                    assertTrue(ngramCorpus.isSketched(3))
+                    assertFalse(ngramCorpus.isSketched(2))
+                    assertEquals(1, ngramCorpus.estimate(ids))
+                    ngramCorpus.count(arrayOf(ids, longArrayOf(ids[1], ids[2])), Callback<IntArray> { counts ->
+                        assertArrayEquals(intArrayOf(1, 1), counts)
+                        counter[0]++
+                        ctx.continueTask()
+                    }, Callback<Exception> { e -> ctx.endTask(ctx.result(), e) })
+                }
+                // a new version of the content, the sketch is rebuilt on the next learn
+                .travelInTime("1")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the apple was the apple was"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", arrayOf("text1")))
+                .pipe(NgramCorpusNodeTask.getOrCreateNgramCorpus("myCorpus"))
+                .thenDo { ctx ->
+                    val ids = theAppleWas[0]
+                    val ngramCorpus = ctx.resultAsNodes()[0] as NgramCorpusNode
+                    assertEquals(2, ngramCorpus.estimate(ids))
+                    assertEquals(0, ngramCorpus.estimate(longArrayOf(ids[1], ids[2], ids[1])))
+                    ngramCorpus.count(arrayOf(ids), Callback<IntArray> { counts ->
+                        assertArrayEquals(intArrayOf(2), counts)
+                        counter[0]++
+                        ctx.continueTask()
+                    }, Callback<Exception> { e -> ctx.endTask(ctx.result(), e) })
+                }
+                .execute(graph, null)
+        assertEquals(2, counter[0])
+        removeGraph()
+    }
+
+    @Test
+    fun storedSkipGramsLearnedAndRemoved() {
+        initGraph()
+        val counter = arrayOf(0)
+        val theWas = arrayOf(LongArray(0))
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(initializeCorpus())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1, "the apple was the apple was"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", arrayOf("text1", "text2")))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tcs")
+                .then(updateNgramTokenizedContentFromVar("tcs"))
+                .pipe(SkipGramTask.updateSkipGramsFromVar("tcs", 2, 1))
+                .then(addRemoveTokenizeContentsOfCorpus(true, "tcs", "myCorpus"))
+                .pipe(NgramCorpusNodeTask.getOrCreateNgramCorpus("myCorpus"))
+                .defineAsVar("ngramCorpus")
+                .pipe(SkipGramTask.retrieveSkipGram(arrayOf("the", "was"), 1))
+                .thenDo { ctx ->
+                    val skipGram = ctx.resultAsNodes()[0]
+                    theWas[0] = longArrayOf(skipGram.id())
+                    val ngramCorpus = ctx.variable("ngramCorpus")[0] as NgramCorpusNode
+                    // learned with the ngrams, but kept out of the orders of the language model
+                    assertFalse(ngramCorpus.allNgramOfOrder(2).contains(skipGram.id()))
+                    ngramCorpus.count(theWas[0], Callback<IntArray> { counts ->
+                        // "the _ was" once in the first content, twice in the second
+                        assertArrayEquals(intArrayOf(3), counts)
+                        counter[0]++
+                        ctx.continueTask()
+                    })
+                }
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .traverse(TOKENIZE_CONTENT_RELATION, "name", "text2")
+                .defineAsVar("removed")
+                .then(addRemoveTokenizeContentsOfCorpus(false, "removed", "myCorpus"))
+                .pipe(NgramCorpusNodeTask.getOrCreateNgramCorpus("myCorpus"))
+                .thenDo { ctx ->
+                    val ngramCorpus = ctx.resultAsNodes()[0] as NgramCorpusNode
+                    ngramCorpus.count(theWas[0], Callback<IntArray> { counts ->
+                        assertArrayEquals(intArrayOf(1), counts)
+                        counter[0]++
+                        ctx.continueTask()
+                    })
+                }
+                .execute(graph, null)
+        assertEquals(2, counter[0])
+        removeGraph()
+    }
+
+    @Test
+    fun refuseSentinelsAboveEagerOrderUnderLines() {
+        initGraph()
+        val counter = arrayOf(0)
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(6, 2))
+                .then(configureNgramSentinels(NgramSentinels.LINE))
+                .then(initializeCorpus())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the apple\nthe cloud"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", arrayOf("text1")))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tc")
+                .then(addRemoveTokenizeContentsOfCorpus(true, "tc", "myCorpus"))
+                .pipe(NgramCorpusNodeTask.getOrCreateNgramCorpus("myCorpus"))
+                .defineAsVar("ngramCorpus")
+                .then(getOrCreateTokensFromString(BOS, "the", "apple"))
+                .thenDo { ctx ->
+                    val ids = LongArray(3, { (ctx.result()[it] as Node).id() })
+                    val ngramCorpus = ctx.variable("ngramCorpus")[0] as NgramCorpusNode
+                    // the word positions do not tell where a line starts: an error, not a count of 0
+                    ngramCorpus.count(arrayOf(longArrayOf(ids[1], ids[2]), ids), Callback<IntArray> { counts ->
+                        ctx.continueTask()
+                    }, Callback<Exception> { e ->
+                        assertNotNull(e)
+                        counter[0]++
+                        ctx.continueTask()
+                    })
+                }
+                .execute(graph, null)
+        assertEquals(1, counter[0])
+        removeGraph()
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.actions;
+
+import greycat.ActionFunction;
+import greycat.TaskContext;
+import meow.languageprocessing.ActionTest;
+import meow.languageprocessing.ngram.task.NgramSentinels;
+import meow.tokens.task.RelationTask;
+import org.junit.jupiter.api.Test;
+
+import static greycat.Tasks.newTask;
+import static meow.languageprocessing.ngram.NgramConstants.*;
+import static meow.languageprocessing.ngram.actions.NgramActions.configureNgram;
+import static meow.languageprocessing.ngram.actions.NgramActions.configureNgramSentinels;
+import static meow.languageprocessing.ngram.actions.NgramActions.countNgram;
+import static meow.languageprocessing.ngram.actions.NgramActions.initializeNgram;
+import static meow.languageprocessing.ngram.actions.NgramActions.updateNgramTokenizedContentFromVar;
+import static meow.tokens.TokensConstants.ENTRY_POINT_INDEX;
+import static meow.tokens.TokensConstants.TOKENIZE_CONTENT_RELATION;
+import static meow.tokens.actions.TokenActions.initializeVocabulary;
+import static meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ActionCountNgramTest extends ActionTest {
+
+    private void assertCount(final int expected, String... grams) {
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(countNgram(grams))
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(expected, (int) ctx.result().get(0));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+    }
+
+    @Test
+    public void testEagerAndLazyOrders() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(6, 2))
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", ActionUpdateNgramTokenizeContentFromVarTest.text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertNotNull(ctx.resultAsNodes().get(0).get("2"));
+                        assertNull(ctx.resultAsNodes().get(0).get("3"));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+
+        assertCount(2, "the");
+        assertCount(1, "apple", "was");
+        assertCount(0, "was", "apple");
+        assertCount(1, "apple", "was", "looking");
+        assertCount(1, "the", "apple", "was", "looking", "over", "the");
+        assertCount(0, "unknown", "apple", "was");
+        if (ADD_BOS_EOS_TO_NGRAM) {
+            assertCount(1, BOS, "the", "apple");
+            assertCount(0, BOS, "apple", "was");
+            assertCount(1, "the", "cloud", EOS);
+            assertCount(0, "over", "the", EOS);
+        }
+        removeGraph();
+    }
+
+    @Test
+    public void testOrderAboveMaximum() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(2, 1))
+                .then(countNgram("a", "b", "c"))
+                .execute(graph, res -> {
+                    assertNotNull(res.exception());
+                    counter[0]++;
+                });
+        assertEquals(1, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testLazyOrdersCountNgramContentsOnly() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(6, 2))
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", ActionUpdateNgramTokenizeContentFromVarTest.text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                // the same text, only tokenized: it has no ngram tokenized content
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", ActionUpdateNgramTokenizeContentFromVarTest.text1))
+                .defineAsVar("tokenizer2")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer2", "nodevar", new String[]{"text2"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(2, ctx.result().size());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+
+        assertCount(1, "apple", "was");
+        assertCount(1, "apple", "was", "looking");
+        assertCount(2, "the");
+        if (ADD_BOS_EOS_TO_NGRAM) {
+            assertCount(1, BOS, "the", "apple");
+            assertCount(1, "the", "cloud", EOS);
+        }
+        removeGraph();
+    }
+
+    @Test
+    public void testConfigureOnceContentsExist() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", ActionUpdateNgramTokenizeContentFromVarTest.text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .then(configureNgram(6, 2))
+                .execute(graph, res -> {
+                    assertNotNull(res.exception());
+                    counter[0]++;
+                });
+        assertEquals(1, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testLazyOrdersUnderLines() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgram(6, 2))
+                .then(configureNgramSentinels(NgramSentinels.LINE))
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the apple\nthe cloud"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .execute(graph, null);
+        if (ADD_BOS_EOS_TO_NGRAM) {
+            assertCount(2, BOS, "the");
+            // the words are adjacent, but no line holds them all
+            assertCount(0, "apple", "\n", "the");
+            newTask()
+                    .travelInTime("0")
+                    .then(countNgram(BOS, "the", "apple"))
+                    .execute(graph, res -> {
+                        // the word positions do not tell where a line starts
+                        assertNotNull(res.exception());
+                        counter[0]++;
+                    });
+            assertEquals(1, counter[0]);
+        }
+        removeGraph();
+    }
+}
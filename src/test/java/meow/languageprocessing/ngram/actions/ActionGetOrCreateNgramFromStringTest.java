@@ -16,17 +16,27 @@
 package meow.languageprocessing.ngram.actions;
 
 import greycat.ActionFunction;
+import greycat.Callback;
+import greycat.Constants;
 import greycat.Node;
 import greycat.TaskContext;
+import greycat.Type;
 import meow.languageprocessing.ActionTest;
+import meow.languageprocessing.ngram.task.NgramTrie;
 import org.junit.jupiter.api.Test;
 
 import static greycat.Tasks.newTask;
+import static meow.languageprocessing.ngram.NgramConstants.NGRAM_CHILDREN;
+import static meow.languageprocessing.ngram.NgramConstants.NGRAM_INDEX;
+import static meow.languageprocessing.ngram.NgramConstants.NGRAM_TRIE_LINKED;
 import static meow.tokens.TokensConstants.TOKEN_NAME;
 import static meow.tokens.actions.TokenActions.initializeVocabulary;
 import static meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromString;
 import static meow.languageprocessing.ngram.actions.NgramActions.initializeNgram;
+import static meow.languageprocessing.ngram.actions.NgramActions.retrieveNgramMainNode;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 class ActionGetOrCreateNgramFromStringTest extends ActionTest {
@@ -158,4 +168,139 @@ class ActionGetOrCreateNgramFromStringTest extends ActionTest {
         assertEquals(7, counter[0]);
         removeGraph();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testTries() {
+
+        initGraph();
+        final int[] counter = {0};
+        newTask().then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(getOrCreateNgramFromString("This", "is", "me"))
+                .defineAsVar("myNgram")
+                .traverse("gram")
+                .defineAsVar("grams")
+                .then(retrieveNgramMainNode())
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        final Node ngramMain = ctx.resultAsNodes().get(0);
+                        final long[] tokens = new long[3];
+                        for (int i = 0; i < 3; i++) {
+                            tokens[i] = ((Node) ctx.variable("grams").get(i)).id();
+                        }
+                        final long myNgram = ((Node) ctx.variable("myNgram").get(0)).id();
+                        NgramTrie.lookup(ngramMain, tokens, 0, 3, new Callback<Node>() {
+                            @Override
+                            public void on(Node ngram) {
+                                assertEquals(myNgram, ngram.id());
+                                counter[0]++;
+                            }
+                        });
+                        NgramTrie.lookup(ngramMain, tokens, 0, 2, new Callback<Node>() {
+                            @Override
+                            public void on(Node history) {
+                                assertEquals(myNgram, NgramTrie.child(history, tokens[2]));
+                                assertEquals(Constants.NULL_LONG, NgramTrie.child(history, tokens[0]));
+                                counter[0]++;
+                            }
+                        });
+                        NgramTrie.lookup(ngramMain, new long[]{tokens[2], tokens[0]}, 0, 2, new Callback<Node>() {
+                            @Override
+                            public void on(Node ngram) {
+                                assertNull(ngram);
+                                counter[0]++;
+                            }
+                        });
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(3, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testTriesBackfill() {
+
+        initGraph();
+        final int[] counter = {0};
+        newTask().then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(getOrCreateNgramFromString("This", "is", "me"))
+                .defineAsVar("myNgram")
+                .traverse("gram")
+                .defineAsVar("grams")
+                .then(retrieveNgramMainNode())
+                .defineAsVar("ngramMain")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        // a main node whose ngrams were created before the trie
+                        Node ngramMain = ctx.resultAsNodes().get(0);
+                        ngramMain.set(NGRAM_TRIE_LINKED, Type.BOOL, false);
+                        ngramMain.remove(NGRAM_CHILDREN);
+                        ctx.continueTask();
+                    }
+                })
+                .traverse(NGRAM_INDEX)
+                .forEach(newTask().thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        Node ngram = ctx.resultAsNodes().get(0);
+                        ngram.remove(NGRAM_CHILDREN);
+                        ctx.continueTask();
+                    }
+                }))
+                .readVar("ngramMain")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        final long[] tokens = new long[3];
+                        for (int i = 0; i < 3; i++) {
+                            tokens[i] = ((Node) ctx.variable("grams").get(i)).id();
+                        }
+                        NgramTrie.lookup(ctx.resultAsNodes().get(0), tokens, 0, 3, new Callback<Node>() {
+                            @Override
+                            public void on(Node ngram) {
+                                assertNull(ngram);
+                                counter[0]++;
+                            }
+                        });
+                        ctx.continueTask();
+                    }
+                })
+                .then(initializeNgram())
+                .then(retrieveNgramMainNode())
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        final Node ngramMain = ctx.resultAsNodes().get(0);
+                        assertTrue(NgramTrie.isLinked(ngramMain));
+                        final long[] tokens = new long[3];
+                        for (int i = 0; i < 3; i++) {
+                            tokens[i] = ((Node) ctx.variable("grams").get(i)).id();
+                        }
+                        final long myNgram = ((Node) ctx.variable("myNgram").get(0)).id();
+                        NgramTrie.lookup(ngramMain, tokens, 0, 3, new Callback<Node>() {
+                            @Override
+                            public void on(Node ngram) {
+                                assertEquals(myNgram, ngram.id());
+                                counter[0]++;
+                            }
+                        });
+                        NgramTrie.lookup(ngramMain, tokens, 0, 2, new Callback<Node>() {
+                            @Override
+                            public void on(Node history) {
+                                assertEquals(myNgram, NgramTrie.child(history, tokens[2]));
+                                counter[0]++;
+                            }
+                        });
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(3, counter[0]);
+        removeGraph();
+    }
+}
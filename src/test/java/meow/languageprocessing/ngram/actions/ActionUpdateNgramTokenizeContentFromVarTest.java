@@ -18,12 +18,19 @@ package meow.languageprocessing.ngram.actions;
 import greycat.ActionFunction;
 import greycat.Callback;
 import greycat.Node;
+import greycat.Task;
 import greycat.TaskContext;
+import greycat.struct.LongLongArrayMap;
+import greycat.struct.Relation;
 import meow.languageprocessing.ActionTest;
+import meow.languageprocessing.ngram.task.NgramMemo;
+import meow.languageprocessing.ngram.task.NgramSentinels;
 import meow.tokens.task.RelationTask;
 import meow.tokens.tokenization.TokenizerFactory;
+import meow.utils.PositionPostingList;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -32,12 +39,18 @@ import static greycat.Constants.END_OF_TIME;
 import static greycat.Tasks.newTask;
 import static greycat.Tasks.thenDo;
 import static meow.languageprocessing.ngram.NgramConstants.*;
+import static meow.languageprocessing.ngram.actions.NgramActions.configureNgramSentinels;
+import static meow.languageprocessing.ngram.actions.NgramActions.countNgram;
+import static meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromString;
 import static meow.languageprocessing.ngram.actions.NgramActions.initializeNgram;
 import static meow.languageprocessing.ngram.actions.NgramActions.updateNgramTokenizedContentFromVar;
+import static meow.languageprocessing.ngram.actions.NgramActions.updateNgramTokenizedContentFromVarPar;
 import static meow.tokens.TokensConstants.*;
 import static meow.tokens.actions.TokenActions.initializeVocabulary;
 import static meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ActionUpdateNgramTokenizeContentFromVarTest extends ActionTest {
 
@@ -136,7 +149,7 @@ class ActionUpdateNgramTokenizeContentFromVarTest extends ActionTest {
                                                     @Override
                                                     public void eval(TaskContext ctx) {
                                                         int i = (int) ctx.variable("i").get(0);
-                                                        assert (IntStream.of((int[]) ctx.resultAsNodes().get(0).get("position")).anyMatch(x -> x == i));
+                                                        assert (IntStream.of(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()).anyMatch(x -> x == i));
                                                         counter[0]++;
                                                         ctx.continueTask();
                                                     }
@@ -211,7 +224,7 @@ class ActionUpdateNgramTokenizeContentFromVarTest extends ActionTest {
                                                     @Override
                                                     public void eval(TaskContext ctx) {
                                                         int i = (int) ctx.variable("i").get(0);
-                                                        assert (IntStream.of((int[]) ctx.resultAsNodes().get(0).get("position")).anyMatch(x -> x == i));
+                                                        assert (IntStream.of(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()).anyMatch(x -> x == i));
                                                         counter[0]++;
                                                         ctx.continueTask();
                                                     }
@@ -245,4 +258,442 @@ class ActionUpdateNgramTokenizeContentFromVarTest extends ActionTest {
         System.out.println(counter[0]);
         removeGraph();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMemo() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .then(NgramActions.retrieveNgramMainNode())
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        NgramMemo memo = NgramMemo.of(ctx);
+                        LongLongArrayMap index = (LongLongArrayMap) ctx.resultAsNodes().get(0).get(NGRAM_HASH_INDEX);
+                        // every ngram created by the update has been memoized
+                        assertEquals(index.size(), memo.size());
+                        // and probed in the index at most once, on its creation
+                        assertTrue(memo.probes() <= memo.size());
+                        ctx.setVariable("probes", memo.probes());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .then(getOrCreateNgramFromString("the", "apple", "was"))
+                .then(getOrCreateNgramFromString("apple", "was"))
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        // memoized ngrams are answered without any index probe
+                        assertEquals(ctx.variable("probes").get(0), NgramMemo.of(ctx).probes());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(2, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testParallel() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the cloud was over the apple"))
+                .addToVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1", "text2"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVarPar("tc", 2))
+                .then(countNgram("the"))
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(4, (int) ctx.result().get(0));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .then(countNgram("the", "apple"))
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(2, (int) ctx.result().get(0));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .readVar("tc")
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        // one ngram tokenized content per content, each with its own unigrams, BOS and EOS included
+                        assertEquals(2, ctx.resultAsNodes().size());
+                        assertEquals(9 + 8, ((Relation) ctx.resultAsNodes().get(0).get("1")).size() + ((Relation) ctx.resultAsNodes().get(1).get("1")).size());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(3, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testWatermark() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .travelInTime("5")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text11))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                // nothing after the watermark, no new timepoint
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        Node ngramTc = ctx.resultAsNodes().get(0);
+                        assertEquals(5L, ngramTc.get(NGRAM_TC_WATERMARK));
+                        ngramTc.timepoints(BEGINNING_OF_TIME, END_OF_TIME, new Callback<long[]>() {
+                            @Override
+                            public void on(long[] result) {
+                                assertEquals(2, result.length);
+                            }
+                        });
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .travelInTime("0")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(0L, ctx.resultAsNodes().get(0).get(NGRAM_TC_WATERMARK));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(2, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testLegacyWatermark() {
+        initGraph();
+        final int[] counter = {0};
+        final ActionFunction dropWatermark = new ActionFunction() {
+            @Override
+            public void eval(TaskContext ctx) {
+                // as for an ngram tokenized content created before the watermark
+                ctx.resultAsNodes().get(0).remove(NGRAM_TC_WATERMARK);
+                ctx.continueTask();
+            }
+        };
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .travelInTime("5")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text11))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .traverse("plugin")
+                .thenDo(dropWatermark)
+                .travelInTime("0")
+                .readVar("tc")
+                .traverse("plugin")
+                .thenDo(dropWatermark)
+                .travelInTime("5")
+                .readVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        // every timepoint known, none processed again but the watermark set to the last one
+                        Node ngramTc = ctx.resultAsNodes().get(0);
+                        assertEquals(5L, ngramTc.get(NGRAM_TC_WATERMARK));
+                        ngramTc.timepoints(BEGINNING_OF_TIME, END_OF_TIME, new Callback<long[]>() {
+                            @Override
+                            public void on(long[] result) {
+                                assertEquals(2, result.length);
+                                counter[0]++;
+                            }
+                        });
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testSentinelsPerLine() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(NgramActions.retrieveNgramMainNode())
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        // resolved at initialization as the vocabulary exists
+                        assertTrue(NgramSentinels.isResolved(ctx.resultAsNodes().get(0)));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .then(configureNgramSentinels(NgramSentinels.LINE))
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the apple\nthe cloud"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        Node ngramTc = ctx.resultAsNodes().get(0);
+                        // BOS the apple EOS BOS the cloud EOS, the newline being replaced by the sentinels
+                        assertEquals(8, ((Relation) ngramTc.get("1")).size());
+                        assertEquals(6, ((Relation) ngramTc.get("2")).size());
+                        assertEquals(2, ((Relation) ngramTc.get("4")).size());
+                        assertNull(ngramTc.get("5"));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(2, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testLinePositions() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgramSentinels(NgramSentinels.LINE))
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the apple\nthe cloud"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                .pipe(linePositions(new int[]{5}, 6, counter))
+                .travelInTime("1")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "a\nthe apple\nthe cloud"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(updateNgramTokenizedContentFromVar("tc"))
+                // a new line moves the start of the windows after it, not only their index among the kept ones
+                .pipe(linePositions(new int[]{8}, 8, counter))
+                .execute(graph, null);
+        assertEquals(2, counter[0]);
+        removeGraph();
+    }
+
+    /**
+     * Check the start offsets, in the surrounded sequence, of the ngram "the cloud" in the content of the variable tc,
+     * and the number of bigrams of this content
+     */
+    private static Task linePositions(final int[] expected, final int bigrams, final int[] counter) {
+        return newTask()
+                .readVar("tc")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        ctx.defineVariable("tcid", ctx.resultAsNodes().get(0).id());
+                        ctx.continueTask();
+                    }
+                })
+                .traverse("plugin")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(bigrams, ((Relation) ctx.resultAsNodes().get(0).get("2")).size());
+                        // the starts the next update diffs against, one per bigram
+                        assertEquals(bigrams, ((int[]) ctx.resultAsNodes().get(0).get(NGRAM_STARTS + "2")).length);
+                        ctx.continueTask();
+                    }
+                })
+                .then(getOrCreateNgramFromString("the", "cloud"))
+                .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "{{tcid}}")
+                .thenDo(new ActionFunction() {
+                    @Override
+                    public void eval(TaskContext ctx) {
+                        assertEquals(Arrays.toString(expected), Arrays.toString(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                });
+    }
+
+    @Test
+    public void testParallelSameAsSequential() {
+        String sequential = updateAndDescribe(0);
+        assertEquals(sequential, updateAndDescribe(3));
+    }
+
+    /**
+     * Update the ngrams of four contents, two of them modified once, sequentially if workers is 0, in parallel otherwise,
+     * then describe, at each time, the ngrams of every order of every content with their positions, and a few counts
+     */
+    private String updateAndDescribe(int workers) {
+        initGraph();
+        final StringBuilder description = new StringBuilder();
+        final String[] relations = new String[]{"text1", "text2", "text3", "text4"};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1, text2, text3, "the cloud was over the apple"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", relations))
+                .travelInTime("1")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text11, text2, "the apple may have no sense", "the cloud was over the apple"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", relations))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .setAsVar("tc")
+                .then(workers == 0 ? updateNgramTokenizedContentFromVar("tc") : updateNgramTokenizedContentFromVarPar("tc", workers))
+                .pipe(describeNgrams(description))
+                .travelInTime("0")
+                .pipe(describeNgrams(description))
+                .then(countNgram("the"))
+                .thenDo(appendResult(description))
+                .then(countNgram("the", "apple"))
+                .thenDo(appendResult(description))
+                .then(countNgram("apple", "was", "looking"))
+                .thenDo(appendResult(description))
+                .execute(graph, null);
+        removeGraph();
+        return description.toString();
+    }
+
+    private static Task describeNgrams(final StringBuilder description) {
+        return newTask()
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .forEach(
+                        newTask()
+                                .thenDo(new ActionFunction() {
+                                    @Override
+                                    public void eval(TaskContext ctx) {
+                                        Node tc = ctx.resultAsNodes().get(0);
+                                        ctx.defineVariable("tcid", tc.id());
+                                        description.append(tc.get(TOKENIZE_CONTENT_NAME)).append('\n');
+                                        ctx.continueTask();
+                                    }
+                                })
+                                .traverse("plugin")
+                                .defineAsVar("ngramtc")
+                                .loop("1", Integer.toString(MAXIMUM_ORDER_OF_N),
+                                        newTask()
+                                                .readVar("ngramtc")
+                                                .traverse("{{i}}")
+                                                .forEach(
+                                                        newTask()
+                                                                .defineAsVar("ngram")
+                                                                .traverse(NGRAM_INVERTED_INDEX_RELATION, II_TC, "{{tcid}}")
+                                                                .defineAsVar("invertedIndex")
+                                                                .readVar("ngram")
+                                                                .traverse(GRAMS_TOKENS)
+                                                                .traverse(TOKEN_NAME)
+                                                                .thenDo(new ActionFunction() {
+                                                                    @Override
+                                                                    public void eval(TaskContext ctx) {
+                                                                        Node invertedIndex = (Node) ctx.variable("invertedIndex").get(0);
+                                                                        description.append(String.join(" ", ctx.resultAsStrings()))
+                                                                                .append(' ')
+                                                                                .append(Arrays.toString(PositionPostingList.read(invertedIndex).toIntArray()))
+                                                                                .append('\n');
+                                                                        ctx.continueTask();
+                                                                    }
+                                                                })
+                                                )
+                                )
+                );
+    }
+
+    private static ActionFunction appendResult(final StringBuilder description) {
+        return new ActionFunction() {
+            @Override
+            public void eval(TaskContext ctx) {
+                description.append(ctx.result().get(0)).append('\n');
+                ctx.continueTask();
+            }
+        };
+    }
+}
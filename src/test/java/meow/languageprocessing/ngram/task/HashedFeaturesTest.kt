@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+
+class HashedFeaturesTest {
+
+    @Test
+    fun termFrequencies() {
+        // 1 and 2 twice, (1 2) twice and (2 1) once
+        val vector = HashedFeatures.termFrequencies(longArrayOf(1, 2, 1, 2), 2, 20)
+        assertEquals(4, vector.size())
+        assertEquals(7.0, vector.values.map { Math.abs(it) }.sum())
+        for (i in 1..vector.size() - 1) assertTrue(vector.indexes[i - 1] < vector.indexes[i])
+
+        val unigram = HashedFeatures.termFrequencies(longArrayOf(5), 3, 20)
+        val longer = HashedFeatures.termFrequencies(longArrayOf(5, 6), 3, 20)
+        assertEquals(1, unigram.size())
+        assertEquals(3, longer.size())
+        assertTrue(longer.indexes.contains(unigram.indexes[0]))
+        assertEquals(0, HashedFeatures.termFrequencies(LongArray(0), 3, 20).size())
+    }
+
+    @Test
+    fun tfIdf() {
+        val first = HashedFeatures.termFrequencies(longArrayOf(5), 1, 20)
+        val second = HashedFeatures.termFrequencies(longArrayOf(5, 6), 1, 20)
+        val frequencies = HashedFeatures.documentFrequencies(listOf(first, second))
+        val weighted = HashedFeatures.tfIdf(second, frequencies, 2)
+        for (i in 0..weighted.size() - 1) {
+            val idf = if (weighted.indexes[i] == first.indexes[0]) 1.0 else Math.log(3.0 / 2.0) + 1
+            assertEquals(second.values[i] * idf, weighted.values[i], 1e-9)
+        }
+    }
+
+    @Test
+    fun documentFrequenciesSparse() {
+        // buckets over 2^30, only the ones of the vectors are counted
+        val first = HashedFeatures.termFrequencies(longArrayOf(1, 2, 3), 2, HashedFeatures.MAXIMUM_BITS)
+        val second = HashedFeatures.termFrequencies(longArrayOf(2, 3, 4), 2, HashedFeatures.MAXIMUM_BITS)
+        val frequencies = HashedFeatures.documentFrequencies(listOf(first, second))
+        assertEquals(first.indexes.union(second.indexes.asIterable()).size, frequencies.size)
+        for (index in first.indexes) assertEquals(if (second.indexes.contains(index)) 2 else 1, frequencies[index]!!)
+    }
+
+    @Test
+    fun rowRoundTrip() {
+        val vector = HashedFeatures.termFrequencies(longArrayOf(3, 1, 4, 1, 5, 9, 2, 6), 3, 16)
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { HashedFeatures.writeRow(it, 42L, vector) }
+        val id = LongArray(1)
+        val read = HashedFeatures.readRow(DataInputStream(ByteArrayInputStream(bytes.toByteArray())), id)
+        assertEquals(42L, id[0])
+        assertArrayEquals(vector.indexes, read.indexes)
+        assertArrayEquals(vector.values, read.values, 1e-6)
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Node
+import greycat.Tasks.newTask
+import meow.languageprocessing.ActionTest
+import meow.languageprocessing.ngram.actions.NgramActions.initializeNgram
+import meow.tokens.TokensConstants.ENTRY_POINT_INDEX
+import meow.tokens.TokensConstants.TOKENIZE_CONTENT_RELATION
+import meow.tokens.actions.TokenActions.initializeVocabulary
+import meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer
+import meow.tokens.task.RelationTask
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.File
+import java.io.FileInputStream
+
+
+class NgramFeatureTaskTest : ActionTest() {
+
+    @Test
+    fun exportTfAndTfIdf() {
+        initGraph()
+        val tf = File.createTempFile("tf", ".bin")
+        val tfIdf = File.createTempFile("tfidf", ".bin")
+        val counter = arrayOf(0)
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", "the apple was looking over the cloud", "an orange was riding a skateboard"))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", arrayOf("text1", "text2")))
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .defineAsVar("tcs")
+                .pipe(NgramFeatureTask.exportFeatures("tcs", 2, 20, false, tf.path))
+                .thenDo { ctx ->
+                    assertEquals(2, ctx.result()[0])
+                    ctx.continueTask()
+                }
+                .pipe(NgramFeatureTask.exportFeatures("tcs", 2, 20, true, tfIdf.path))
+                .readVar("tcs")
+                .pipe(NgramFeatureTask.hashedFeatures(2, 20))
+                .thenDo { ctx ->
+                    val tcs = ctx.variable("tcs")
+                    val vectors = (0..1).map { ctx.result()[it] as HashedFeatures.SparseVector }
+                    val frequencies = HashedFeatures.documentFrequencies(vectors)
+                    val id = LongArray(1)
+                    DataInputStream(BufferedInputStream(FileInputStream(tf))).use { input ->
+                        assertEquals(20, input.readInt())
+                        assertEquals(2, input.readInt())
+                        for (i in 0..1) {
+                            val row = HashedFeatures.readRow(input, id)
+                            val expected = vectors[(0..1).first { (tcs[it] as Node).id() == id[0] }]
+                            assertArrayEquals(expected.indexes, row.indexes)
+                            assertArrayEquals(expected.values, row.values, 1e-6)
+                        }
+                    }
+                    DataInputStream(BufferedInputStream(FileInputStream(tfIdf))).use { input ->
+                        assertEquals(20, input.readInt())
+                        assertEquals(2, input.readInt())
+                        for (i in 0..1) {
+                            val row = HashedFeatures.readRow(input, id)
+                            val expected = HashedFeatures.tfIdf(vectors[(0..1).first { (tcs[it] as Node).id() == id[0] }], frequencies, 2)
+                            assertArrayEquals(expected.values, row.values, 1e-5)
+                        }
+                    }
+                    counter[0]++
+                    ctx.continueTask()
+                }
+                .execute(graph, null)
+        assertEquals(1, counter[0])
+        tf.delete()
+        tfIdf.delete()
+        removeGraph()
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Callback
+import greycat.Node
+import greycat.Tasks.newTask
+import greycat.Type
+import greycat.struct.Relation
+import meow.languageprocessing.ActionTest
+import meow.languageprocessing.ngram.NgramConstants.GRAMS_TOKENS
+import meow.languageprocessing.ngram.NgramConstants.NGRAM_HASH_INDEX
+import meow.languageprocessing.ngram.NgramConstants.NGRAM_HASH_INDEXED
+import meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromString
+import meow.languageprocessing.ngram.actions.NgramActions.initializeNgram
+import meow.languageprocessing.ngram.actions.NgramActions.retrieveNgramMainNode
+import meow.tokens.actions.TokenActions.initializeVocabulary
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+
+
+class NgramKeyIndexTest : ActionTest() {
+
+    private fun gramIds(ngram: Node): LongArray {
+        val grams = ngram.get(GRAMS_TOKENS) as Relation
+        return LongArray(grams.size(), { grams.get(it) })
+    }
+
+    @Test
+    fun hashOfSlice() {
+        val tokens = longArrayOf(12, 7, 7, 42, 3)
+        assertEquals(NgramKeyIndex.hash(longArrayOf(7, 42), 0, 2), NgramKeyIndex.hash(tokens, 2, 2))
+        var hash = NgramKeyIndex.SEED
+        for (i in 1..3) {
+            hash = NgramKeyIndex.extend(hash, tokens[i])
+            assertEquals(NgramKeyIndex.hash(tokens, 1, i), hash)
+        }
+        assertNotEquals(NgramKeyIndex.hash(tokens, 0, 2), NgramKeyIndex.hash(longArrayOf(7, 12), 0, 2))
+        assertNotEquals(NgramKeyIndex.hash(tokens, 1, 1), NgramKeyIndex.hash(tokens, 1, 2))
+    }
+
+    @Test
+    fun collisionResolvedByGrams() {
+        initGraph()
+        val counter = arrayOf(0)
+        newTask().then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(getOrCreateNgramFromString("This", "is"))
+                .defineAsVar("thisIs")
+                .then(getOrCreateNgramFromString("is", "This"))
+                .defineAsVar("isThis")
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    val thisIs = ctx.variable("thisIs")[0] as Node
+                    val isThis = ctx.variable("isThis")[0] as Node
+                    val tokens = gramIds(thisIs)
+                    // isThis is also indexed under the hash of thisIs, as a colliding ngram would be
+                    NgramKeyIndex.index(ngramMain, isThis, NgramKeyIndex.hash(tokens, 0, 2))
+                    assertEquals(2, NgramKeyIndex.candidates(ngramMain, NgramKeyIndex.hash(tokens, 0, 2)).size)
+                    NgramKeyIndex.lookup(ngramMain, tokens, 0, 2, Callback<Node?> { found ->
+                        assertEquals(thisIs.id(), found!!.id())
+                        counter[0]++
+                    })
+                    NgramKeyIndex.lookup(ngramMain, gramIds(isThis), 0, 2, Callback<Node?> { found ->
+                        assertEquals(isThis.id(), found!!.id())
+                        counter[0]++
+                    })
+                    NgramKeyIndex.lookup(ngramMain, longArrayOf(tokens[0], tokens[0]), 0, 2, Callback<Node?> { found ->
+                        assertNull(found)
+                        counter[0]++
+                    })
+                    ctx.continueTask()
+                }
+                .then(getOrCreateNgramFromString("This", "is"))
+                .thenDo { ctx ->
+                    assertEquals((ctx.variable("thisIs")[0] as Node).id(), ctx.resultAsNodes()[0].id())
+                    counter[0]++
+                    ctx.continueTask()
+                }
+                .execute(graph, null)
+        assertEquals(4, counter[0])
+        removeGraph()
+    }
+
+    @Test
+    fun legacyIndexFallback() {
+        initGraph()
+        val counter = arrayOf(0)
+        newTask().then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(getOrCreateNgramFromString("This", "is"))
+                .defineAsVar("thisIs")
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    // an ngram main node created before the hash index
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    ngramMain.set(NGRAM_HASH_INDEXED, Type.BOOL, false)
+                    ngramMain.remove(NGRAM_HASH_INDEX)
+                    assertFalse(NgramKeyIndex.isHashIndexed(ngramMain))
+                    NgramKeyIndex.lookup(ngramMain, gramIds(ctx.variable("thisIs")[0] as Node), 0, 2, Callback<Node?> { found ->
+                        assertNull(found)
+                        counter[0]++
+                    })
+                    ctx.continueTask()
+                }
+                .then(getOrCreateNgramFromString("This", "is"))
+                .thenDo { ctx ->
+                    assertEquals((ctx.variable("thisIs")[0] as Node).id(), ctx.resultAsNodes()[0].id())
+                    counter[0]++
+                    ctx.continueTask()
+                }
+                .execute(graph, null)
+        assertEquals(2, counter[0])
+        removeGraph()
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Constants
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+
+class NgramMemoTest {
+
+    @Test
+    fun boundedToRecentKeys() {
+        val memo = NgramMemo(2)
+        val a = longArrayOf(1)
+        val ab = longArrayOf(1, 2)
+        val b = longArrayOf(2)
+        memo.put(a, NgramKeyIndex.hash(a, 0, 1), 10)
+        memo.put(ab, NgramKeyIndex.hash(ab, 0, 2), 12)
+        // a is used again, ab is then the least recently used key
+        assertEquals(10L, memo.get(a, NgramKeyIndex.hash(a, 0, 1)))
+        memo.put(b, NgramKeyIndex.hash(b, 0, 1), 20)
+        assertEquals(2, memo.size())
+        assertEquals(Constants.NULL_LONG, memo.get(ab, NgramKeyIndex.hash(ab, 0, 2)))
+        assertEquals(10L, memo.get(a, NgramKeyIndex.hash(a, 0, 1)))
+        assertEquals(20L, memo.get(b, NgramKeyIndex.hash(b, 0, 1)))
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+
+class NgramSentinelsTest {
+
+    private val bos = 100L
+    private val eos = 101L
+    private val newline = 10L
+    private val dot = 11L
+
+    @Test
+    fun content() {
+        val sequence = NgramSentinels.surround(longArrayOf(1, 2, newline, 3), bos, eos, LongArray(0), false)
+        assertArrayEquals(longArrayOf(bos, 1, 2, newline, 3, eos), sequence.ids)
+        assertArrayEquals(intArrayOf(NgramSentinels.BOS_SOURCE, 0, 1, 2, 3, NgramSentinels.EOS_SOURCE), sequence.sources)
+        assertEquals(6, sequence.maxOrderAt(0, 10))
+        assertEquals(2, sequence.maxOrderAt(4, 10))
+    }
+
+    @Test
+    fun lines() {
+        // empty lines are skipped
+        val sequence = NgramSentinels.surround(longArrayOf(1, 2, newline, newline, 3, newline), bos, eos, longArrayOf(newline), true)
+        assertArrayEquals(longArrayOf(bos, 1, 2, eos, bos, 3, eos), sequence.ids)
+        assertArrayEquals(intArrayOf(4, 4, 4, 4, 7, 7, 7), sequence.segmentEnds)
+        assertEquals(3, sequence.maxOrderAt(1, 10))
+        assertEquals(2, sequence.maxOrderAt(1, 2))
+        assertArrayEquals(longArrayOf(bos, eos), NgramSentinels.surround(longArrayOf(newline), bos, eos, longArrayOf(newline), true).ids)
+    }
+
+    @Test
+    fun sentences() {
+        val sequence = NgramSentinels.surround(longArrayOf(1, dot, 2, 3, dot), bos, eos, longArrayOf(dot), false)
+        assertArrayEquals(longArrayOf(bos, 1, dot, eos, bos, 2, 3, dot, eos), sequence.ids)
+        assertArrayEquals(intArrayOf(NgramSentinels.BOS_SOURCE, 0, 1, NgramSentinels.EOS_SOURCE, NgramSentinels.BOS_SOURCE, 2, 3, 4, NgramSentinels.EOS_SOURCE), sequence.sources)
+    }
+
+    @Test
+    fun termFrequencies() {
+        val sequence = NgramSentinels.surround(longArrayOf(1, newline, 2), bos, eos, longArrayOf(newline), true)
+        val vector = HashedFeatures.termFrequencies(sequence.ids, sequence.segmentEnds, 3, 20)
+        // bos 1 eos bos 2 eos: 6 unigrams, 4 bigrams and 2 trigrams, none spanning the two lines, bos and eos occurring twice
+        assertEquals(10, vector.size())
+        assertEquals(12.0, vector.values.sumByDouble { Math.abs(it) })
+    }
+}
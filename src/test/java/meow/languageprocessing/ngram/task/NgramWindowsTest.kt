@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import greycat.Callback
+import greycat.Node
+import greycat.Tasks.newTask
+import meow.languageprocessing.ActionTest
+import meow.languageprocessing.ngram.NgramConstants.NGRAM_CHILDREN
+import meow.languageprocessing.ngram.NgramConstants.NGRAM_INDEX
+import meow.languageprocessing.ngram.actions.NgramActions.configureNgramSentinels
+import meow.languageprocessing.ngram.actions.NgramActions.getOrCreateNgramFromString
+import meow.languageprocessing.ngram.actions.NgramActions.initializeNgram
+import meow.languageprocessing.ngram.actions.NgramActions.retrieveNgramMainNode
+import meow.tokens.actions.TokenActions.getOrCreateTokensFromString
+import meow.tokens.actions.TokenActions.initializeVocabulary
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+
+class NgramWindowsTest : ActionTest() {
+
+    @Test
+    fun repeatedAndUnlinkedWindows() {
+        initGraph()
+        val counter = arrayOf(0)
+        newTask().then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(getOrCreateNgramFromString("a", "b"))
+                .defineAsVar("ab")
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    // a, b and ab exist but are not in the trie, as ngrams created before it
+                    val ngramMain = ctx.resultAsNodes()[0]
+                    ngramMain.remove(NGRAM_CHILDREN)
+                    ctx.continueTask()
+                }
+                .traverse(NGRAM_INDEX)
+                .forEach(newTask().thenDo { ctx ->
+                    val ngram = ctx.resultAsNodes()[0]
+                    ngram.remove(NGRAM_CHILDREN)
+                    ctx.continueTask()
+                })
+                .then(getOrCreateTokensFromString("a", "b", "a", "b", "a"))
+                .defineAsVar("tokens")
+                .pipe(NgramWindows.resolve("tokens"))
+                .defineAsVar(NgramWindows.WINDOWS_VAR)
+                .then(retrieveNgramMainNode())
+                .thenDo { ctx ->
+                    val windows = ctx.variable(NgramWindows.WINDOWS_VAR)[0] as NgramWindows
+                    val ab = (ctx.variable("ab")[0] as Node).id()
+                    // BOS a b a b a EOS
+                    val unigrams = windows.ids(1)
+                    assertEquals(7, unigrams.size)
+                    assertEquals(unigrams[1], unigrams[3])
+                    assertEquals(unigrams[1], unigrams[5])
+                    assertEquals(unigrams[2], unigrams[4])
+                    assertNotEquals(unigrams[1], unigrams[2])
+                    val bigrams = windows.ids(2)
+                    assertEquals(6, bigrams.size)
+                    assertEquals(ab, bigrams[1])
+                    assertEquals(ab, bigrams[3])
+                    assertEquals(bigrams[2], bigrams[4])
+                    assertNotEquals(ab, bigrams[2])
+                    val trigrams = windows.ids(3)
+                    assertEquals(trigrams[1], trigrams[3])
+                    assertEquals(1, windows.ids(7).size)
+                    // the pre-existing ngrams are linked on their first use
+                    val tokens = ctx.variable("tokens")
+                    val ids = longArrayOf((tokens[0] as Node).id(), (tokens[1] as Node).id())
+                    NgramTrie.lookup(ctx.resultAsNodes()[0], ids, 0, 2, Callback<Node?> { found ->
+                        assertEquals(ab, found!!.id())
+                        counter[0]++
+                    })
+                    ctx.continueTask()
+                }
+                .then(retrieveNgramMainNode())
+                .traverse(NGRAM_INDEX)
+                .thenDo { ctx ->
+                    // 4 unigrams (sentinels included), 4 bigrams, 4 trigrams, 4, 3, 2 and 1 longer ones: none created twice
+                    assertEquals(22, ctx.result().size())
+                    counter[0]++
+                    ctx.continueTask()
+                }
+                .execute(graph, null)
+        assertEquals(2, counter[0])
+        removeGraph()
+    }
+
+    @Test
+    fun startsUnderLines() {
+        initGraph()
+        val counter = arrayOf(0)
+        newTask().then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(configureNgramSentinels(NgramSentinels.LINE))
+                .then(getOrCreateTokensFromString("a", "b", "\n", "c"))
+                .defineAsVar("tokens")
+                .pipe(NgramWindows.resolve("tokens"))
+                .thenDo { ctx ->
+                    // BOS a b EOS BOS c EOS, no window crossing the line
+                    val windows = ctx.result()[0] as NgramWindows
+                    assertTrue(windows.segmented)
+                    assertArrayEquals(intArrayOf(0, 1, 2, 3, 4, 5, 6), windows.starts(1))
+                    assertArrayEquals(intArrayOf(0, 1, 2, 4, 5), windows.starts(2))
+                    assertArrayEquals(intArrayOf(0, 1, 4), windows.starts(3))
+                    assertArrayEquals(intArrayOf(0), windows.starts(4))
+                    assertEquals(0, windows.starts(5).size)
+                    for (order in 1..5) {
+                        assertEquals(windows.starts(order).size, windows.ids(order).size)
+                    }
+                    val unigrams = windows.ids(1)
+                    assertEquals(unigrams[0], unigrams[4])
+                    assertEquals(unigrams[3], unigrams[6])
+                    counter[0]++
+                    ctx.continueTask()
+                }
+                .execute(graph, null)
+        assertEquals(1, counter[0])
+        removeGraph()
+    }
+}
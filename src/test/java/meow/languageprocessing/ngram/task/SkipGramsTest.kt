@@ -0,0 +1,58 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.languageprocessing.ngram.task
+
+import meow.utils.PostingIntersection
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Test
+
+
+class SkipGramsTest {
+
+    // "insurgents killed in ongoing fighting"
+    private val sentence = longArrayOf(1, 2, 3, 4, 5)
+
+    @Test
+    fun extract() {
+        val bigrams = SkipGrams.extract(sentence, 2, 2)
+        assertEquals(9, bigrams.size)
+        val trigrams = SkipGrams.extract(sentence, 3, 2)
+        assertEquals(10, trigrams.size)
+        assertEquals(4, SkipGrams.extract(sentence, 2, 0).size)
+        assertArrayEquals(longArrayOf(1, 3), bigrams[1].tokens)
+        assertArrayEquals(intArrayOf(0), bigrams[1].positions.toIntArray())
+    }
+
+    @Test
+    fun sameAsPostings() {
+        val tokens = longArrayOf(1, 2, 1, 2, 3, 1, 1, 2)
+        for (skip in 0..3) {
+            for (occurrences in SkipGrams.extract(tokens, 3, skip)) {
+                val postings = Array(3, { j -> (0..tokens.size - 1).filter { tokens[it] == occurrences.tokens[j] }.toIntArray() })
+                assertEquals(PostingIntersection.skipGramOccurrences(postings, skip), occurrences.positions.size)
+            }
+        }
+    }
+
+    @Test
+    fun hash() {
+        val tokens = longArrayOf(1, 3)
+        assertNotEquals(SkipGrams.hash(tokens, 1), SkipGrams.hash(tokens, 2))
+        assertNotEquals(NgramKeyIndex.hash(tokens, 0, tokens.size), SkipGrams.hash(tokens, 0))
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task;
+
+import greycat.*;
+import meow.utils.PositionPostingList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static greycat.Tasks.newTask;
+import static meow.tokens.TokensConstants.*;
+import static meow.tokens.actions.TokenActions.bulkUocTokenizeRelations;
+import static meow.tokens.actions.TokenActions.initializeVocabulary;
+import static meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BulkIngestionTaskTest extends TaskTest {
+
+    private final String[] relations = {"text1", "text2", "text1"};
+    private final String[] contents = {RelationTasksTest.text1, RelationTasksTest.text2, RelationTasksTest.text11};
+
+    /**
+     * one line per token of every tokenized content of the node: name, position, token and its positions in the inverted index
+     */
+    private Task signature(String nodeVar, final List<String> signature) {
+        return newTask()
+                .readVar(nodeVar)
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .forEach(newTask()
+                        .thenDo(new ActionFunction() {
+                            public void eval(TaskContext ctx) {
+                                Node tc = ctx.resultAsNodes().get(0);
+                                ctx.defineVariable("tcId", tc.id());
+                                ctx.defineVariable("tcName", tc.get(TOKENIZE_CONTENT_NAME));
+                                ctx.continueTask();
+                            }
+                        })
+                        .pipe(TokenizedContentVersions.traverseTokens())
+                        .forEach(newTask()
+                                .thenDo(new ActionFunction() {
+                                    public void eval(TaskContext ctx) {
+                                        ctx.defineVariable("tokenName", ctx.resultAsNodes().get(0).get(TOKEN_NAME));
+                                        ctx.continueTask();
+                                    }
+                                })
+                                .traverse(WORD_INVERTED_INDEX_RELATION, II_TC, "{{tcId}}")
+                                .thenDo(new ActionFunction() {
+                                    public void eval(TaskContext ctx) {
+                                        int[] positions = PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray();
+                                        Arrays.sort(positions);
+                                        signature.add(ctx.variable("tcName").get(0) + " " + ctx.variable("i").get(0) + " "
+                                                + ctx.variable("tokenName").get(0) + " " + Arrays.toString(positions));
+                                        ctx.continueTask();
+                                    }
+                                })
+                        )
+                );
+    }
+
+    @Test
+    public void testSameAsSequential() {
+        initGraph();
+        final List<String> bulk = new ArrayList<String>();
+        final List<String> sequential = new ArrayList<String>();
+        Task task = newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .createNode()
+                .defineAsVar("bulkNode")
+                .declareVar("bulkNodes")
+                .addToVar("bulkNodes")
+                .addToVar("bulkNodes")
+                .addToVar("bulkNodes")
+                .inject(relations)
+                .defineAsVar("relations")
+                .inject(contents)
+                .defineAsVar("contents")
+                // the third entry updates the tokenized content created by the first one, in the same batch
+                .then(bulkUocTokenizeRelations("default", null, "my type", "bulkNodes", "relations", "contents", 3))
+                .createNode()
+                .defineAsVar("sequentialNode");
+        for (int k = 0; k < contents.length; k++) {
+            task.then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", contents[k]))
+                    .defineAsVar("tokenizer")
+                    .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "sequentialNode", new String[]{relations[k]}));
+        }
+        task.pipe(signature("bulkNode", bulk))
+                .pipe(signature("sequentialNode", sequential))
+                .execute(graph, null);
+        Collections.sort(bulk);
+        Collections.sort(sequential);
+        // text1 then text2 tokens, text1 holding the tokens of text11
+        assertEquals(8 + 6, sequential.size());
+        assertEquals(sequential, bulk);
+        removeGraph();
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task;
+
+import greycat.*;
+import meow.languageprocessing.ActionTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static greycat.Tasks.newTask;
+import static meow.languageprocessing.corpus.CorpusConstants.CORPUS_TO_TOKENIZEDCONTENTS_RELATION;
+import static meow.languageprocessing.corpus.actions.CorpusActions.getOrCreateCorpus;
+import static meow.languageprocessing.corpus.actions.CorpusActions.initializeCorpus;
+import static meow.languageprocessing.ngram.NgramConstants.NODE_TYPE_NGRAM_TOKENIZED_CONTENT;
+import static meow.languageprocessing.ngram.actions.NgramActions.initializeNgram;
+import static meow.tokens.TokensConstants.*;
+import static meow.tokens.actions.TokenActions.initializeVocabulary;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class IngestionPipelineTest extends ActionTest {
+
+    @Test
+    public void testPipeline() {
+        initGraph();
+        final long[] root = {-1};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(initializeNgram())
+                .then(initializeCorpus())
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        root[0] = ctx.resultAsNodes().get(0).id();
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+
+        IngestionPipeline pipeline = new IngestionPipeline(graph, "default", null, "myCorpus", true, 2, 4, 2);
+        pipeline.submit(new IngestionPipeline.Document(root[0], 0, 0, new String[]{"text1"}, new String[]{RelationTasksTest.text1}, "my type"));
+        pipeline.submit(new IngestionPipeline.Document(root[0], 0, 0, new String[]{"text2", "text3"}, new String[]{RelationTasksTest.text2, RelationTasksTest.text3}, "my type"));
+        List<Throwable> failures = pipeline.close();
+        assertEquals(0, failures.size());
+
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .lookup("" + root[0])
+                .traverse(TOKENIZE_CONTENT_RELATION)
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals(3, ctx.result().size());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .forEach(
+                        newTask()
+                                .traverse("plugin")
+                                .thenDo(new ActionFunction() {
+                                    public void eval(TaskContext ctx) {
+                                        assertEquals(1, ctx.result().size());
+                                        assertEquals(NODE_TYPE_NGRAM_TOKENIZED_CONTENT, ctx.resultAsNodes().get(0).get(NODE_TYPE));
+                                        counter[0]++;
+                                        ctx.continueTask();
+                                    }
+                                })
+                )
+                .then(getOrCreateCorpus("myCorpus"))
+                .traverse(CORPUS_TO_TOKENIZEDCONTENTS_RELATION)
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals(3, ctx.result().size());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(5, counter[0]);
+        removeGraph();
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task;
+
+import greycat.*;
+import meow.tokens.tokenization.TokenizerFactory;
+import org.junit.jupiter.api.Test;
+
+import static greycat.Tasks.newTask;
+import static meow.tokens.TokensConstants.ENTRY_POINT_INDEX;
+import static meow.tokens.TokensConstants.TOKENIZE_CONTENT_NAME;
+import static meow.tokens.actions.TokenActions.initializeVocabulary;
+import static meow.tokens.actions.TokenActions.phraseQuery;
+import static meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer;
+import static meow.tokens.actions.TokenActions.topKBm25;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QueryTaskTest extends TaskTest {
+
+    private void assertPhrase(String phrase, final String... expected) {
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(phraseQuery("default", null, phrase, null))
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals(expected.length, ctx.result().size());
+                        for (int i = 0; i < expected.length; i++) {
+                            assertEquals(expected[i], ctx.resultAsNodes().get(i).get(TOKENIZE_CONTENT_NAME));
+                        }
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+    }
+
+    @Test
+    public void testPhraseQuery() {
+        initGraph();
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text1))
+                .defineAsVar("tokenizer")
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text11))
+                .addToVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1", "text11"}))
+                .execute(graph, null);
+
+        assertPhrase("apple was looking", "text1", "text11");
+        assertPhrase("the cloud", "text1");
+        assertPhrase("looking at", "text11");
+        assertPhrase("cloud the");
+        assertPhrase("unknown token");
+        removeGraph();
+    }
+
+    @Test
+    public void testPhraseQueryAfterUpdate() {
+        initGraph();
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .execute(graph, null);
+        assertPhrase("the cloud", "text1");
+        assertPhrase("looking at");
+
+        // same world and time, only the invalidation done by the update keeps the cached postings right
+        newTask()
+                .travelInTime("0")
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text11))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .execute(graph, null);
+        assertPhrase("the cloud");
+        assertPhrase("looking at", "text1");
+        removeGraph();
+    }
+
+    @Test
+    public void testTopKBm25() {
+        initGraph();
+        final int[] counter = {0};
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text1))
+                .defineAsVar("tokenizer")
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text2))
+                .addToVar("tokenizer")
+                .then(tokenizeStringsUsingTokenizer("default", null, "false", RelationTasksTest.text11))
+                .addToVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1", "text2", "text11"}))
+                .then(topKBm25("default", null, "the cloud", 2, null))
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals(2, ctx.result().size());
+                        // "the" only appears, twice, in text1
+                        assertEquals("text1", ctx.resultAsNodes().get(0).get(TOKENIZE_CONTENT_NAME));
+                        assertEquals("text11", ctx.resultAsNodes().get(1).get(TOKENIZE_CONTENT_NAME));
+                        assertEquals(2, ctx.variable("scores").size());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+        removeGraph();
+    }
+
+    private Task updateText1(String time, String text) {
+        return newTask()
+                .travelInTime(time)
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}));
+    }
+
+    private void assertStatistics(String time, final long contents, final long totalLength, String query, final int hits) {
+        final int[] counter = {0};
+        newTask()
+                .travelInTime(time)
+                .pipe(CollectionStatistics.retrieveStatisticsNode())
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals(contents, CollectionStatistics.contentCount(ctx.resultAsNodes().get(0)));
+                        assertEquals(totalLength, CollectionStatistics.totalLength(ctx.resultAsNodes().get(0)));
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .then(topKBm25("default", null, query, 10, null))
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals(hits, ctx.result().size());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(2, counter[0]);
+    }
+
+    @Test
+    public void testStatisticsInTime() {
+        initGraph();
+        TokenizerFactory tf = new TokenizerFactory("");
+        int length1 = tf.create(RelationTasksTest.text1, null).getTokens().size();
+        int length2 = tf.create(RelationTasksTest.text2, null).getTokens().size();
+        int length3 = tf.create(RelationTasksTest.text3, null).getTokens().size();
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .pipe(updateText1("0", RelationTasksTest.text1))
+                .travelInTime("2")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", RelationTasksTest.text2))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text2"}))
+                .pipe(updateText1("4", RelationTasksTest.text3))
+                .execute(graph, null);
+
+        // the statistics and the ranking are those of the time of the query
+        assertStatistics("1", 1, length1, "orange", 0);
+        assertStatistics("3", 2, length1 + length2, "orange", 1);
+        assertStatistics("3", 2, length1 + length2, "cloud", 1);
+        assertStatistics("5", 2, length3 + length2, "cloud", 0);
+        removeGraph();
+    }
+
+}
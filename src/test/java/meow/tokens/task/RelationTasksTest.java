@@ -18,14 +18,16 @@ package meow.tokens.task;
 import greycat.*;
 import meow.tokens.tokenization.TokenizerFactory;
 import meow.tokens.tokenization.tokenizer.Tokenizer;
+import meow.utils.PositionPostingList;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
 import java.util.stream.IntStream;
 
 import static greycat.Tasks.newTask;
 import static greycat.Tasks.thenDo;
-import static meow.tokens.TokensConstants.ENTRY_POINT_INDEX;
-import static meow.tokens.TokensConstants.TOKENIZE_CONTENT_NAME;
+import static meow.tokens.TokensConstants.*;
+import static meow.tokens.actions.TokenActions.configureCheckpointInterval;
 import static meow.tokens.actions.TokenActions.initializeVocabulary;
 import static meow.tokens.actions.TokenActions.tokenizeStringsUsingTokenizer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -119,7 +121,7 @@ public class RelationTasksTest extends TaskTest {
                                         assertEquals("my type", ctx.resultAsNodes().get(0).get("type"));
                                         int i = (Integer) ctx.variable("i").get(0);
                                         System.out.println(i);
-                                        assert (IntStream.of((int[]) ctx.resultAsNodes().get(0).get("position")).anyMatch(x -> x == i));
+                                        assert (IntStream.of(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()).anyMatch(x -> x == i));
                                         counter[0]++;
                                         ctx.continueTask();
                                     }
@@ -191,7 +193,7 @@ public class RelationTasksTest extends TaskTest {
                                         assertEquals("my type", ctx.resultAsNodes().get(0).get("type"));
                                         int i = (Integer) ctx.variable("i").get(0) % 7;
                                         System.out.println(i);
-                                        assert (IntStream.of((int[]) ctx.resultAsNodes().get(0).get("position")).anyMatch(x -> x == i));
+                                        assert (IntStream.of(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()).anyMatch(x -> x == i));
                                         counter[0]++;
                                         ctx.continueTask();
                                     }
@@ -314,7 +316,7 @@ public class RelationTasksTest extends TaskTest {
                                         assertEquals("my type", ctx.resultAsNodes().get(0).get("type"));
                                         int i = (Integer) ctx.variable("i").get(0);
                                         System.out.println(i);
-                                        assert (IntStream.of((int[]) ctx.resultAsNodes().get(0).get("position")).anyMatch(x -> x == i));
+                                        assert (IntStream.of(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()).anyMatch(x -> x == i));
                                         counter[0]++;
                                         ctx.continueTask();
                                     }
@@ -595,7 +597,7 @@ public class RelationTasksTest extends TaskTest {
                                         assertEquals("my type", ctx.resultAsNodes().get(0).get("type"));
                                         int i = (Integer) ctx.variable("i").get(0) % 8;
                                         System.out.println(i);
-                                        assert (IntStream.of((int[]) ctx.resultAsNodes().get(0).get("position")).anyMatch(x -> x == i));
+                                        assert (IntStream.of(PositionPostingList.read(ctx.resultAsNodes().get(0)).toIntArray()).anyMatch(x -> x == i));
                                         counter[0]++;
                                         ctx.continueTask();
                                     }
@@ -746,4 +748,144 @@ public class RelationTasksTest extends TaskTest {
         removeGraph();
     }
 
+    @Test
+    public void testcreationParallelWithType() {
+        initGraph();
+        final int[] counter = {0};
+
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text2))
+                .addToVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodesPar("tokenizer", "nodevar", new String[]{"text1", "text2"}))
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        ctx.resultAsNodes().get(0).relation("tokenizedContents", new Callback<Node[]>() {
+                            public void on(Node[] result) {
+                                assertEquals(2, result.length);
+                            }
+                        });
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .defineAsVar("res")
+                .traverse("tokenizedContents", TOKENIZE_CONTENT_NAME, "text1")
+                .traverse("tokens")
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        // "was" is shared by both contents so it should be indexed by both
+                        assertEquals("was", ctx.resultAsNodes().get(2).get("name"));
+                        ctx.resultAsNodes().get(2).relation("invertedIndex", new Callback<Node[]>() {
+                            public void on(Node[] result) {
+                                assertEquals(2, result.length);
+                            }
+                        });
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .readVar("res")
+                .traverse("tokenizedContents", TOKENIZE_CONTENT_NAME, "text2")
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        assertEquals("my type", ctx.resultAsNodes().get(0).get("type"));
+                        ctx.resultAsNodes().get(0).relation("tokens", new Callback<Node[]>() {
+                            public void on(Node[] result) {
+                                assertEquals(6, result.length);
+                            }
+                        });
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(3, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testUnchangedContentIsSkipped() {
+        initGraph();
+        final int[] counter = {0};
+
+        newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .travelInTime("1")
+                .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", text1))
+                .defineAsVar("tokenizer")
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar")
+                .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}))
+                .traverse("tokenizedContents", TOKENIZE_CONTENT_NAME, "text1")
+                .thenDo(new ActionFunction() {
+                    public void eval(TaskContext ctx) {
+                        // same content, no new timepoint
+                        assertEquals(1, ctx.resultAsNodes().get(0).timeDephasing());
+                        counter[0]++;
+                        ctx.continueTask();
+                    }
+                })
+                .execute(graph, null);
+        assertEquals(1, counter[0]);
+        removeGraph();
+    }
+
+    @Test
+    public void testVersionsBetweenCheckpoints() {
+        initGraph();
+        final String[] versions = {text1, text11, text2, text3, text1, text11, text3};
+        final int[] counter = {0};
+        Task task = newTask()
+                .travelInTime("0")
+                .then(initializeVocabulary())
+                .then(configureCheckpointInterval(3))
+                .readGlobalIndex(ENTRY_POINT_INDEX, "name", "root")
+                .defineAsVar("nodevar");
+        for (int t = 0; t < versions.length; t++) {
+            task.travelInTime("" + t)
+                    .then(tokenizeStringsUsingTokenizer("default", null, "true", "my type", versions[t]))
+                    .defineAsVar("tokenizer")
+                    .pipe(RelationTask.updateOrCreateTokenizeRelationsToNodes("tokenizer", "nodevar", new String[]{"text1"}));
+        }
+        for (int t = 0; t < versions.length; t++) {
+            final int time = t;
+            final List<String> expected = new TokenizerFactory("").create(versions[t], null).getTokens();
+            task.travelInTime("" + t)
+                    .readVar("nodevar")
+                    .traverse(TOKENIZE_CONTENT_RELATION, TOKENIZE_CONTENT_NAME, "text1")
+                    .thenDo(new ActionFunction() {
+                        public void eval(TaskContext ctx) {
+                            // only every third version keeps its tokens, the others are replayed from their patch
+                            assertEquals(time % 3 == 0, ctx.resultAsNodes().get(0).get(TOKENIZE_CONTENT_TOKENS) != null);
+                            ctx.continueTask();
+                        }
+                    })
+                    .pipe(TokenizedContentVersions.traverseTokens())
+                    .thenDo(new ActionFunction() {
+                        public void eval(TaskContext ctx) {
+                            assertEquals(expected.size(), ctx.result().size());
+                            for (int k = 0; k < expected.size(); k++) {
+                                assertEquals(expected.get(k), ctx.resultAsNodes().get(k).get(TOKEN_NAME));
+                            }
+                            counter[0]++;
+                            ctx.continueTask();
+                        }
+                    });
+        }
+        task.execute(graph, null);
+        assertEquals(versions.length, counter[0]);
+        removeGraph();
+    }
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.tokens.task
+
+import meow.tokens.TokensConstants.TOKENIZE_CONTENT_CHECKPOINT_INTERVAL
+import meow.utils.MinimunEditDistance
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+
+class TokenizedContentVersionsTest {
+
+    private fun patch(former: LongArray, newer: LongArray): Pair<LongArray, LongArray> {
+        val keys = mutableListOf<Long>()
+        val values = mutableListOf<Long>()
+        val path = MinimunEditDistance(former.toTypedArray(), newer.toTypedArray()).path()
+        for (i in 0..path.size - 1) {
+            when (path[i].second) {
+                MinimunEditDistance.Modification.Suppression -> {
+                    keys.add(TokenizedContentVersions.suppressionKey(i))
+                    values.add(path[i].first)
+                }
+                MinimunEditDistance.Modification.Insertion -> {
+                    keys.add(TokenizedContentVersions.insertionKey(i))
+                    values.add(path[i].first)
+                }
+                else -> {
+                }
+            }
+        }
+        return Pair(keys.toLongArray(), values.toLongArray())
+    }
+
+    @Test
+    fun replay() {
+        val versions = arrayOf(
+                longArrayOf(1, 2, 3, 3, 4, 9),
+                longArrayOf(0, 1, 2, 3, 4, 9, 10),
+                longArrayOf(2, 3, 4),
+                longArrayOf(),
+                longArrayOf(5, 5, 5))
+        for (v in 1..versions.size - 1) {
+            val (keys, values) = patch(versions[v - 1], versions[v])
+            assertArrayEquals(versions[v], TokenizedContentVersions.applyPatch(versions[v - 1], keys, values))
+        }
+    }
+
+    @Test
+    fun checkpoint() {
+        assertTrue(TokenizedContentVersions.isCheckpoint(0, TOKENIZE_CONTENT_CHECKPOINT_INTERVAL))
+        assertTrue(TokenizedContentVersions.isCheckpoint(3, 3))
+        assertFalse(TokenizedContentVersions.isCheckpoint(4, 3))
+        assertTrue(TokenizedContentVersions.isCheckpoint(4, 1))
+    }
+}
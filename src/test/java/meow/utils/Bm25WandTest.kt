@@ -0,0 +1,61 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.Random
+
+
+class Bm25WandTest {
+
+    @Test
+    fun sameAsExhaustive() {
+        val random = Random(42)
+        val contents = 2000L
+        val lengths = LongArray(contents.toInt(), { 5L + random.nextInt(200) })
+        val average = lengths.average()
+        val terms = mutableListOf<Bm25Wand.Term>()
+        for (t in 0..3) {
+            val ids = (0..contents - 1).filter { random.nextInt(10 * (t + 1)) == 0 }.toLongArray()
+            val tfs = IntArray(ids.size, { 1 + random.nextInt(5) })
+            terms.add(Bm25Wand.Term(ids, tfs, Bm25Wand.idf(contents, ids.size), tfs.max() ?: 0, 1 + t % 2))
+        }
+
+        val exhaustive = HashMap<Long, Double>()
+        for (term in terms) {
+            for (i in 0..term.ids.size - 1) {
+                val id = term.ids[i]
+                exhaustive.put(id, (exhaustive[id] ?: 0.0) + term.weight * Bm25Wand.score(term.idf, term.tfs[i], lengths[id.toInt()], average))
+            }
+        }
+        val expected = exhaustive.entries.sortedByDescending { it.value }.take(10)
+
+        val hits = Bm25Wand.topK(terms, 10, average, { id -> lengths[id.toInt()] }, { true })
+        assertEquals(10, hits.size)
+        for (i in 0..9) {
+            assertEquals(expected[i].value, hits[i].score, 1e-9)
+        }
+    }
+
+    @Test
+    fun filter() {
+        val term = Bm25Wand.Term(longArrayOf(1, 2, 3), intArrayOf(3, 2, 1), Bm25Wand.idf(10, 3), 3, 1)
+        val hits = Bm25Wand.topK(listOf(term), 5, 10.0, { 10L }, { id -> id != 1L })
+        assertEquals(2, hits.size)
+        assertEquals(2L, hits[0].id)
+    }
+}
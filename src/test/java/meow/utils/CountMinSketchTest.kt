@@ -0,0 +1,59 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.*
+
+
+class CountMinSketchTest {
+
+    @Test
+    fun boundedOverestimation() {
+        val epsilon = 0.01
+        val sketch = CountMinSketch(CountMinSketch.width(epsilon), CountMinSketch.depth(0.01))
+        val random = Random(42)
+        val counts = HashMap<Long, Int>()
+        for (i in 0..19999) {
+            // a skewed distribution, like the one of ngrams
+            val key = (Math.abs(random.nextGaussian()) * 500).toLong() * -0x61c8864680b583ebL
+            counts.put(key, (counts[key] ?: 0) + 1)
+            sketch.add(key)
+        }
+        assertEquals(20000L, sketch.total)
+        var above = 0
+        for ((key, count) in counts) {
+            val estimate = sketch.estimate(key)
+            assertTrue(estimate >= count)
+            if (estimate > count + epsilon * sketch.total) above++
+        }
+        assertTrue(above <= counts.size * 0.01 + 1)
+    }
+
+    @Test
+    fun roundTrip() {
+        val sketch = CountMinSketch(64, 4)
+        sketch.add(12L, 3)
+        sketch.add(7L)
+        val copy = CountMinSketch(sketch.width, sketch.depth, sketch.counters.copyOf())
+        assertEquals(3, copy.estimate(12L))
+        assertEquals(1, copy.estimate(7L))
+        copy.clear()
+        assertEquals(0, copy.estimate(12L))
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+
+class EncodedPostingsTest {
+
+    @Test
+    fun roundTrip() {
+        val positions = IntArray(1000, { it * 7 + it / 3 })
+        val encoded = EncodedPostings.encode(positions)
+        assertEquals(1000, EncodedPostings.size(encoded))
+        assertArrayEquals(positions, EncodedPostings.decode(encoded))
+        assertEquals(0, EncodedPostings.decode(EncodedPostings.encode(IntArray(0))).size)
+    }
+
+    @Test
+    fun advanceTo() {
+        val positions = IntArray(1000, { it * 2 })
+        val iterator = EncodedPostings.iterator(EncodedPostings.encode(positions))
+        assertEquals(0, iterator.advanceTo(0))
+        assertEquals(2, iterator.advanceTo(1))
+        assertEquals(1000, iterator.advanceTo(999))
+        assertEquals(1000, iterator.advanceTo(1000))
+        assertEquals(1002, iterator.next())
+        assertEquals(1998, iterator.advanceTo(1998))
+        assertEquals(EncodedPostings.NO_MORE_POSITIONS, iterator.advanceTo(1999))
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import greycat.GraphBuilder
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+
+class InvertedIndexCacheTest {
+
+    @Test
+    fun putGetInvalidate() {
+        val graph = GraphBuilder().build()
+        val other = GraphBuilder().build()
+        val postings = InvertedIndexCache.Postings(mapOf(
+                Pair(7L, EncodedPostings.encode(intArrayOf(1, 4))),
+                Pair(3L, EncodedPostings.encode(intArrayOf(2)))))
+        InvertedIndexCache.put(graph, 0, 0, 42, postings)
+        assertTrue(postings === InvertedIndexCache.get(graph, 0, 0, 42))
+        assertNull(InvertedIndexCache.get(graph, 0, 1, 42))
+        assertNull(InvertedIndexCache.get(graph, 1, 0, 42))
+        assertNull(InvertedIndexCache.get(other, 0, 0, 42))
+        InvertedIndexCache.put(other, 0, 0, 42, InvertedIndexCache.Postings.EMPTY)
+        InvertedIndexCache.invalidate(graph, 42)
+        assertNull(InvertedIndexCache.get(graph, 0, 0, 42))
+        // the writes of a graph leave the entries of the others
+        assertTrue(InvertedIndexCache.Postings.EMPTY === InvertedIndexCache.get(other, 0, 0, 42))
+        InvertedIndexCache.clear(other)
+        assertNull(InvertedIndexCache.get(other, 0, 0, 42))
+    }
+
+    @Test
+    fun postings() {
+        val postings = InvertedIndexCache.Postings(mapOf(
+                Pair(7L, EncodedPostings.encode(intArrayOf(1, 4))),
+                Pair(3L, EncodedPostings.encode(intArrayOf(2)))))
+        assertArrayEquals(longArrayOf(3, 7), postings.ids())
+        assertEquals(2, postings.tf(7))
+        assertEquals(0, postings.tf(5))
+        assertEquals(3, postings.count())
+    }
+
+    @Test
+    fun snapshotsAreBounded() {
+        val graph = GraphBuilder().build()
+        for (time in 0..InvertedIndexCache.MAX_SNAPSHOTS_PER_ID.toLong()) {
+            InvertedIndexCache.put(graph, 0, time, 43, InvertedIndexCache.Postings.EMPTY)
+        }
+        assertNull(InvertedIndexCache.get(graph, 0, 0, 43))
+        assertTrue(InvertedIndexCache.Postings.EMPTY === InvertedIndexCache.get(graph, 0, 1, 43))
+        InvertedIndexCache.invalidate(graph, 43)
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.*
+
+
+class MyersDiffTest {
+
+    private fun assertValidPath(former: LongArray, newer: LongArray) {
+        val path = MyersDiff.path(former, newer)
+        assertArrayEquals(former, path.filter { it.second != MinimunEditDistance.Modification.Insertion }.map { it.first }.toLongArray())
+        assertArrayEquals(newer, path.filter { it.second != MinimunEditDistance.Modification.Suppression }.map { it.first }.toLongArray())
+        assertEquals(MinimunEditDistance(former.toTypedArray(), newer.toTypedArray()).editDistance(), path.count { it.second != MinimunEditDistance.Modification.Keep })
+    }
+
+    @Test
+    fun sameAsMatrix() {
+        assertValidPath(longArrayOf(1, 2, 3, 3, 4, 9), longArrayOf(1, 2, 3, 3, 4, 9))
+        assertValidPath(longArrayOf(1, 2, 3, 3, 4, 9), longArrayOf(6, 4, 2, 6, 7, 8))
+        assertValidPath(longArrayOf(), longArrayOf(6, 4, 2, 6, 7, 8))
+        assertValidPath(longArrayOf(6, 4, 2, 6, 7, 8), longArrayOf())
+        assertValidPath(longArrayOf(4, 1, 4), longArrayOf(3))
+    }
+
+    @Test
+    fun random() {
+        val random = Random(42)
+        for (t in 0..500) {
+            val former = LongArray(random.nextInt(40), { random.nextInt(6).toLong() })
+            val newer = LongArray(random.nextInt(40), { random.nextInt(6).toLong() })
+            assertValidPath(former, newer)
+        }
+    }
+
+    @Test
+    fun largeEdit() {
+        val former = LongArray(20000, { it.toLong() })
+        val newer = LongArray(20001, { if (it < 10000) it.toLong() else if (it == 10000) -1L else (it - 1).toLong() })
+        assertEquals(1, MyersDiff.editDistance(former, newer))
+    }
+
+    @Test
+    fun scriptTrimsPrefixAndSuffix() {
+        val former = longArrayOf(1, 2, 3, 4, 5, 6, 7)
+        val newer = longArrayOf(1, 2, 3, 9, 5, 6, 7, 8)
+        val script = MyersDiff.script(former, newer)
+        assertEquals(3, script.prefix)
+        assertEquals(0, script.suffix)
+        assertEquals(3, script.editDistance())
+        assertEquals(MyersDiff.path(former, newer), script.toPath())
+        assertEquals(3 + script.size, script.toPath().size)
+
+        val shifted = MyersDiff.script(longArrayOf(1, 2, 3, 4), longArrayOf(1, 9, 2, 3, 4))
+        assertEquals(1, shifted.prefix)
+        assertEquals(3, shifted.suffix)
+        assertEquals(4, shifted.size)
+        assertEquals(MinimunEditDistance.Modification.Insertion, shifted.op(0))
+        assertEquals(9L, shifted.id(0))
+        assertEquals(MinimunEditDistance.Modification.Keep, shifted.op(3))
+        assertEquals(4L, shifted.id(3))
+    }
+
+    @Test
+    fun boundedScript() {
+        val former = longArrayOf(1, 2, 3, 4, 5, 6, 7)
+        val newer = longArrayOf(1, 8, 3, 9, 5, 10, 7)
+        assertEquals(MyersDiff.script(former, newer).toPath(), MyersDiff.boundedScript(former, newer, 6).toPath())
+        assertFalse(MyersDiff.boundedScript(former, newer, 6).rewritten)
+
+        val replacement = MyersDiff.boundedScript(former, newer, 5)
+        assertTrue(replacement.rewritten)
+        assertEquals(1, replacement.prefix)
+        assertEquals(1, replacement.suffix)
+        assertEquals(10, replacement.editDistance())
+        val path = replacement.toPath()
+        assertArrayEquals(former, path.filter { it.second != MinimunEditDistance.Modification.Insertion }.map { it.first }.toLongArray())
+        assertArrayEquals(newer, path.filter { it.second != MinimunEditDistance.Modification.Suppression }.map { it.first }.toLongArray())
+        for (i in 0..4) assertEquals(MinimunEditDistance.Modification.Suppression, replacement.op(i))
+        for (i in 5..9) assertEquals(MinimunEditDistance.Modification.Insertion, replacement.op(i))
+    }
+
+    @Test
+    fun boundedScriptLimits() {
+        val random = Random(7)
+        for (i in 0..199) {
+            val former = LongArray(random.nextInt(30), { random.nextInt(4).toLong() })
+            val newer = LongArray(random.nextInt(30), { random.nextInt(4).toLong() })
+            val distance = MyersDiff.script(former, newer).editDistance()
+            for (limit in 0..distance + 1) {
+                val bounded = MyersDiff.boundedScript(former, newer, limit)
+                assertEquals(distance > limit, bounded.rewritten)
+                if (!bounded.rewritten) assertEquals(distance, bounded.editDistance())
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+
+class PositionPostingListTest {
+
+    @Test
+    fun append() {
+        val postings = PositionPostingList()
+        for (i in 0..9999) {
+            postings.add(i * 3)
+        }
+        assertEquals(10000, postings.size)
+        assertEquals(0, postings[0])
+        assertEquals(29997, postings[9999])
+    }
+
+    @Test
+    fun removeAndReplace() {
+        val postings = PositionPostingList(intArrayOf(1, 4, 7, 9))
+        assertTrue(postings.remove(4))
+        assertFalse(postings.remove(4))
+        assertArrayEquals(intArrayOf(1, 7, 9), postings.toIntArray())
+        postings.replace(1, 2)
+        assertArrayEquals(intArrayOf(2, 7, 9), postings.toIntArray())
+        postings.replace(2, 8)
+        assertArrayEquals(intArrayOf(7, 8, 9), postings.toIntArray())
+        postings.add(0)
+        assertArrayEquals(intArrayOf(0, 7, 8, 9), postings.toIntArray())
+        assertEquals(2, postings.indexOf(8))
+        assertEquals(-1, postings.indexOf(5))
+    }
+
+    @Test
+    fun shift() {
+        val postings = PositionPostingList(intArrayOf(9, 2, 5, 12))
+        assertArrayEquals(intArrayOf(2, 5, 9, 12), postings.toIntArray())
+        postings.shift(5, 3)
+        assertArrayEquals(intArrayOf(2, 8, 12, 15), postings.toIntArray())
+        postings.shift(12, -2)
+        assertArrayEquals(intArrayOf(2, 8, 10, 13), postings.toIntArray())
+        postings.shift(20, 1)
+        assertArrayEquals(intArrayOf(2, 8, 10, 13), postings.toIntArray())
+    }
+
+    @Test
+    fun removeFrom() {
+        val postings = PositionPostingList(intArrayOf(8, 1, 5, 3, 12))
+        postings.removeFrom(5)
+        assertArrayEquals(intArrayOf(1, 3), postings.toIntArray())
+        postings.add(6)
+        assertArrayEquals(intArrayOf(1, 3, 6), postings.toIntArray())
+        postings.removeFrom(0)
+        assertTrue(postings.isEmpty())
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2017 Matthieu Jimenez.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package meow.utils
+
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+
+class PostingIntersectionTest {
+
+    @Test
+    fun gallop() {
+        val sorted = LongArray(100, { it * 3L })
+        assertEquals(0, PostingIntersection.gallop(sorted, 0, -1))
+        assertEquals(34, PostingIntersection.gallop(sorted, 0, 100))
+        assertEquals(34, PostingIntersection.gallop(sorted, 20, 102))
+        assertEquals(100, PostingIntersection.gallop(sorted, 0, 1000))
+    }
+
+    @Test
+    fun intersect() {
+        val multiplesOf2 = LongArray(500, { it * 2L })
+        val multiplesOf3 = LongArray(300, { it * 3L })
+        val few = longArrayOf(6, 7, 12, 600, 996)
+        assertArrayEquals(longArrayOf(6, 12, 600, 996), PostingIntersection.intersect(listOf(multiplesOf2, multiplesOf3, few)))
+        assertEquals(0, PostingIntersection.intersect(listOf(multiplesOf2, LongArray(0))).size)
+    }
+
+    @Test
+    fun phrase() {
+        // "a b a b c" : a at 0 2, b at 1 3, c at 4
+        val a = intArrayOf(0, 2)
+        val b = intArrayOf(1, 3)
+        val c = intArrayOf(4)
+        fun iterators(vararg positions: IntArray) = Array(positions.size, { EncodedPostings.iterator(EncodedPostings.encode(positions[it])) })
+        assertEquals(2, PostingIntersection.firstPhrasePosition(iterators(a, b, c)))
+        assertEquals(0, PostingIntersection.firstPhrasePosition(iterators(a, b, a, b)))
+        assertEquals(EncodedPostings.NO_MORE_POSITIONS, PostingIntersection.firstPhrasePosition(iterators(b, a, c)))
+    }
+
+    @Test
+    fun skipGramOccurrences() {
+        // "a b a b c" : a at 0 2, b at 1 3, c at 4
+        val a = intArrayOf(0, 2)
+        val b = intArrayOf(1, 3)
+        val c = intArrayOf(4)
+        assertEquals(2, PostingIntersection.skipGramOccurrences(arrayOf(a, b), 0))
+        // (0,1) (2,3) (0,3)
+        assertEquals(3, PostingIntersection.skipGramOccurrences(arrayOf(a, b), 2))
+        // (2,3,4), then (0,1,4) and (0,3,4) skip two positions
+        assertEquals(1, PostingIntersection.skipGramOccurrences(arrayOf(a, b, c), 1))
+        assertEquals(3, PostingIntersection.skipGramOccurrences(arrayOf(a, b, c), 2))
+        assertEquals(0, PostingIntersection.skipGramOccurrences(arrayOf(c, a), 3))
+    }
+}